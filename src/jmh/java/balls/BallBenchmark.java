@@ -0,0 +1,69 @@
+package balls;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javafx.scene.paint.Paint;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Moves many balls one step, ball by ball through the {@link Ball} handles and
+ * all at once with {@link BallWorld#move()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class BallBenchmark {
+
+	@Param({ "1000", "10000", "100000", "1000000" })
+	int balls;
+
+	BallWorld world;
+	Ball[] handles;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		BallSimulation simulation = new BallSimulation(640, 480, new RandomSource(42));
+		world = simulation.getWorld();
+		handles = new Ball[balls];
+		Paint[] colors = simulation.getColors();
+		for (int i = 0; i < balls; i++) {
+			Ball b = world.newBall(colors[i % colors.length], 4 + 28 * random.nextDouble());
+			b.moveTo(640 * random.nextDouble(), 400 * random.nextDouble());
+			b.setSpeed(4 * random.nextDouble() - 2, -8 * random.nextDouble());
+			b.setAcceleration(0, 0.098);
+			b.setUpperLimitY(480 - b.getRadius());
+			b.setBounceFactor(1, 0.9);
+			handles[i] = b;
+		}
+	}
+
+	@Benchmark
+	public Ball[] ballMove() {
+		for (Ball b : handles) {
+			b.move();
+		}
+		return handles;
+	}
+
+	@Benchmark
+	public BallWorld worldMove() {
+		world.move();
+		return world;
+	}
+}
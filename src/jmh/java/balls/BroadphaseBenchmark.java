@@ -0,0 +1,83 @@
+package balls;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Compares the broadphases on the sizes of balls in {@link BallDemo}.
+ *
+ * In the demo a ball of radius 32 is added every 16 steps, and every ball
+ * explodes into 8 balls of half the radius after 200 steps, down to radius 4.
+ * All balls live equally long, so there are 8 times as many balls of each
+ * smaller size. The area grows with the number of balls, so that the balls are
+ * as dense as in the 640x480 demo, which holds about 7300 balls. Unlike in the
+ * demo, balls also bounce off the sides, so that they stay as dense during
+ * the whole run.
+ *
+ * Every invocation moves the balls one step and then finds all pairs, so the
+ * broadphases that keep state between steps are measured the way they are
+ * used.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class BroadphaseBenchmark {
+
+	@Param({ "grid", "sap", "tree" })
+	String broadphase;
+
+	@Param({ "1000", "10000", "100000" })
+	int balls;
+
+	BallWorld world;
+	Broadphase phase;
+	int pairs;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random random = new Random(42);
+		double scale = Math.sqrt(balls / 7300.0);
+		double width = 640 * scale;
+		double height = 480 * scale;
+		world = new BallWorld(balls);
+		for (int i = 0; i < balls; i++) {
+			// 1 of 585 balls has radius 32, 8 radius 16, 64 radius 8 and 512 radius 4
+			int size = random.nextInt(585);
+			double radius = size < 1 ? 32 : size < 9 ? 16 : size < 73 ? 8 : 4;
+			Ball b = world.newBall(Color.WHITE, radius);
+			b.moveTo(radius + (width - 2 * radius) * random.nextDouble(), (height - radius) * random.nextDouble());
+			b.setSpeed((64 / radius) * (random.nextDouble() - 0.5), -(128 / radius) * random.nextDouble());
+			b.setAcceleration(0, 0.098);
+			b.setLowerLimitX(radius);
+			b.setUpperLimitX(width - radius);
+			b.setUpperLimitY(height - radius);
+		}
+		phase = Broadphase.forName(broadphase);
+	}
+
+	@Benchmark
+	public int moveAndFindPairs() {
+		world.move();
+		pairs = 0;
+		phase.findPairs(world, (a, b) -> pairs++);
+		return pairs;
+	}
+}
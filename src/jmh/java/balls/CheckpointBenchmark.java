@@ -0,0 +1,73 @@
+package balls;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Saves and restores a checkpoint of a world of falling balls with
+ * {@link Checkpoint}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Xmx4g" })
+public class CheckpointBenchmark {
+
+	@Param({ "1000000" })
+	int balls;
+
+	BallSimulation simulation;
+	BallSimulation restored;
+	Path file;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		simulation = new BallSimulation(640, 480, new RandomSource(42));
+		BallWorld world = simulation.getWorld();
+		RandomSource random = new RandomSource(43);
+		for (int i = 0; i < balls; i++) {
+			Ball b = world.newBall(simulation.getColors()[random.nextInt(64)], 4);
+			b.moveTo(640 * random.nextDouble(), 480 * random.nextDouble());
+			b.setSpeed(4 * random.nextDouble() - 2, -8 * random.nextDouble());
+			b.setAcceleration(0, 0.098);
+		}
+		restored = new BallSimulation(640, 480, new RandomSource(44));
+		file = Files.createTempFile("balls", ".checkpoint");
+		Checkpoint.save(simulation, file);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public Path save() throws IOException {
+		Checkpoint.save(simulation, file);
+		return file;
+	}
+
+	@Benchmark
+	public BallSimulation restore() throws IOException {
+		Checkpoint.restore(restored, file);
+		return restored;
+	}
+}
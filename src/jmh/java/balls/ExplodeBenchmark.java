@@ -0,0 +1,57 @@
+package balls;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Explodes one ball, with {@link Ball#explode(RandomSource)} creating new balls and
+ * with {@link Ball#explodeInto(BallWorld, RandomSource)} reusing recycled ones.
+ * Run with {@code -prof gc} to see the allocation per explosion.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class ExplodeBenchmark {
+
+	RandomSource random;
+	Ball ball;
+	BallWorld world;
+
+	@Setup
+	public void setUp() {
+		random = new RandomSource(42);
+		ball = new Ball(Color.RED, 32);
+		ball.moveTo(320, 240);
+		world = new BallWorld();
+		world.newBall(Color.RED, 32);
+	}
+
+	@Benchmark
+	public Ball[] explode() {
+		return ball.explode(random);
+	}
+
+	@Benchmark
+	public BallWorld explodeInto() {
+		world.get(0).explodeInto(world, random);
+		while (world.size() > 1) {
+			world.recycle(world.get(world.size() - 1));
+		}
+		return world;
+	}
+}
@@ -0,0 +1,65 @@
+package balls;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Calls {@link Motion#move()} once for each of many motions, with motions that
+ * never reach a limit and with motions that bounce between two close limits.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class MotionBenchmark {
+
+	@Param({ "1000", "10000", "100000", "1000000" })
+	int motions;
+
+	Motion[] free;
+	Motion[] bouncing;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		free = new Motion[motions];
+		bouncing = new Motion[motions];
+		for (int i = 0; i < motions; i++) {
+			free[i] = new Motion(480 * random.nextDouble(), 10 * random.nextDouble() - 5, 0);
+			// speeds are large compared to the limits, so most moves bounce
+			bouncing[i] = new Motion(10 * random.nextDouble(), 20 * random.nextDouble() - 10, 0.098);
+			bouncing[i].setLowerLimit(0);
+			bouncing[i].setUpperLimit(10);
+		}
+	}
+
+	@Benchmark
+	public Motion[] moveWithoutBounce() {
+		for (Motion m : free) {
+			m.move();
+		}
+		return free;
+	}
+
+	@Benchmark
+	public Motion[] moveWithBounce() {
+		for (Motion m : bouncing) {
+			m.move();
+		}
+		return bouncing;
+	}
+}
@@ -0,0 +1,73 @@
+package balls;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Draws a 1280x720 frame of balls with {@link PixelRenderer}, on one thread
+ * and on several
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class PixelRendererBenchmark {
+
+	@Param({ "10000", "100000" })
+	int balls;
+
+	@Param({ "1", "4" })
+	int parallelism;
+
+	PixelRenderer renderer;
+	float[] x;
+	float[] y;
+	float[] radius;
+	int[] colors;
+
+	@Setup
+	public void setUp() {
+		renderer = new PixelRenderer(BallSimulation.createColors());
+		renderer.setParallelism(parallelism);
+		RandomSource random = new RandomSource(42);
+		x = new float[balls];
+		y = new float[balls];
+		radius = new float[balls];
+		colors = new int[balls];
+		for (int i = 0; i < balls; i++) {
+			x[i] = (float) (1280 * random.nextDouble());
+			y[i] = (float) (720 * random.nextDouble());
+			radius[i] = random.nextInt(8) == 0 ? 16 : 2 + random.nextInt(6);
+			colors[i] = random.nextInt(64);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		renderer.shutdown();
+	}
+
+	@Benchmark
+	public PixelRenderer render() {
+		renderer.begin(1280, 720);
+		for (int i = 0; i < balls; i++) {
+			renderer.add(colors[i], x[i], y[i], radius[i]);
+		}
+		renderer.render();
+		return renderer;
+	}
+}
@@ -0,0 +1,77 @@
+package balls;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.paint.Paint;
+
+/**
+ * Runs {@link BallSimulation#step()} on a world with the given number of balls.
+ *
+ * The balls have random ages, so explosions happen in every step. One in eight
+ * balls is large enough to explode into 8 new balls, and the rest just
+ * disappear, so the number of balls stays about the same for the first 200
+ * steps. Every iteration therefore starts from a new world and runs
+ * {@value #STEPS} steps, and the score is the time for all of them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = SimulationBenchmark.STEPS)
+@Measurement(iterations = 10, batchSize = SimulationBenchmark.STEPS)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class SimulationBenchmark {
+
+	static final int STEPS = 100;
+
+	@Param({ "1000", "10000", "100000", "1000000" })
+	int balls;
+
+	@Param({ "1" })
+	int parallelism;
+
+	BallSimulation simulation;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		Random random = new Random(42);
+		simulation = new BallSimulation(640, 480, new RandomSource(42));
+		simulation.setMaxNumberOfBalls(2 * balls);
+		simulation.setParallelism(parallelism);
+		BallWorld world = simulation.getWorld();
+		Paint[] colors = simulation.getColors();
+		for (int i = 0; i < balls; i++) {
+			Ball b = world.newBall(colors[random.nextInt(colors.length)], i % 8 == 0 ? 8 : 4);
+			b.moveTo(640 * random.nextDouble(), 400 * random.nextDouble());
+			b.setSpeed(4 * random.nextDouble() - 2, -8 * random.nextDouble());
+			b.setAcceleration(0, 0.098);
+			b.setUpperLimitY(480 - b.getRadius());
+			world.setSteps(i, random.nextInt(200));
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		simulation.shutdown();
+	}
+
+	@Benchmark
+	public BallSimulation step() {
+		simulation.step();
+		return simulation;
+	}
+}
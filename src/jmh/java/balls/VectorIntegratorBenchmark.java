@@ -0,0 +1,72 @@
+package balls;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares one axis step of many motions with the scalar code in
+ * {@link BallWorld} and with {@link VectorIntegrator}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class VectorIntegratorBenchmark {
+
+	@Param({ "10000", "100000", "1000000" })
+	int motions;
+
+	double[] position;
+	double[] speed;
+	double[] acceleration;
+	double[] lowerLimit;
+	double[] upperLimit;
+	double[] bounceFactor;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		position = new double[motions];
+		speed = new double[motions];
+		acceleration = new double[motions];
+		lowerLimit = new double[motions];
+		upperLimit = new double[motions];
+		bounceFactor = new double[motions];
+		for (int i = 0; i < motions; i++) {
+			position[i] = 480 * random.nextDouble();
+			speed[i] = 10 * random.nextDouble() - 5;
+			acceleration[i] = 0.098;
+			lowerLimit[i] = 0;
+			upperLimit[i] = 480;
+			bounceFactor[i] = 0.9;
+		}
+	}
+
+	@Benchmark
+	public double[] scalar() {
+		for (int i = 0; i < motions; i++) {
+			BallWorld.moveAxis(position, speed, acceleration, lowerLimit, upperLimit, bounceFactor, i);
+		}
+		return position;
+	}
+
+	@Benchmark
+	public double[] vector() {
+		VectorIntegrator.move(position, speed, acceleration, lowerLimit, upperLimit, bounceFactor, 0, motions);
+		return position;
+	}
+}
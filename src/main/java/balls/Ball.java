@@ -1,13 +1,8 @@
 package balls;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
-import javafx.scene.paint.Color;
-import javafx.scene.paint.CycleMethod;
 import javafx.scene.paint.Paint;
-import javafx.scene.paint.RadialGradient;
-import javafx.scene.paint.Stop;
-import java.lang.Math;
 
 /**
  * A class to represent bouncing balls
@@ -15,18 +10,17 @@ import java.lang.Math;
  * Balls move according to speed and acceleration in both x and y directions.
  * One can set a limit to the movement (like floor ceiling or walls) such that
  * balls will not go outside these limits.
+ *
+ * The state of a ball is stored in a slot of a {@link BallWorld}, a Ball object
+ * is only a handle to that slot. A ball created with the constructor gets a
+ * world of its own, and is moved to another world by {@link BallWorld#add(Ball)}.
  */
 public class Ball {
 
-	/** Color of the ball's surface */
-	private Paint color;
-	/** The ball's position and speed in x direction. */
-	private Motion xMotion = new Motion();
-	/** The ball's position and speed in y direction. */
-	private Motion yMotion = new Motion();
-	/** Number of steps taken */
-	private int steps = 0;
-	private double radius = 0.0;
+	/** The world holding the state of this ball */
+	private BallWorld world;
+	/** Index of this ball's slot in {@link #world} */
+	private int slot;
 
 	/**
 	 * Create a new ball with position and velocity (0,0)
@@ -37,34 +31,71 @@ public class Ball {
 	 *               The radius of the ball
 	 */
 	public Ball(Paint color, double radius) {
-		this.color = color;
-		this.radius = radius;
+		this(new BallWorld(1), color, radius);
+	}
 
-		if (radius < 0)
-			throw new IllegalArgumentException("Radius should not be negative");
+	/**
+	 * Create a new ball with position and velocity (0,0) in the given world
+	 * 
+	 * @param world
+	 *               The world to store the ball in
+	 * @param color
+	 *               The color of the ball
+	 * @param radius
+	 *               The radius of the ball
+	 */
+	Ball(BallWorld world, Paint color, double radius) {
+		world.create(this, color, radius);
+	}
 
+	/**
+	 * Creates a handle for a ball that is already in a slot of a world
+	 */
+	Ball(BallWorld world, int slot) {
+		bind(world, slot);
+	}
+
+	/**
+	 * Points this handle to another slot
+	 */
+	void bind(BallWorld world, int slot) {
+		this.world = world;
+		this.slot = slot;
+	}
+
+	/**
+	 * @return The world holding this ball
+	 */
+	public BallWorld getWorld() {
+		return world;
+	}
+
+	/**
+	 * @return The index of this ball in {@link #getWorld()}
+	 */
+	public int getSlot() {
+		return slot;
 	}
 
 	/**
 	 * @return Current X position of the Ball
 	 */
 	public double getX() {
-		return xMotion.getPosition();
+		return world.getX(slot);
 	}
 
 	/**
 	 * @return Current Y position of the Ball
 	 */
 	public double getY() {
-		return yMotion.getPosition();
-
+		return world.getY(slot);
 	}
 
 	/**
 	 * @return The ball's radius
 	 */
 	public double getRadius() {
-		return radius;
+		return world.getRadius(slot);
 	}
 
 	/**
@@ -85,7 +116,7 @@ public class Ball {
 	 * @return Paint/color for the ball
 	 */
 	public Paint getColor() {
-		return color;
+		return world.getColor(slot);
 	}
 
 	/**
@@ -94,7 +125,17 @@ public class Ball {
 	 * @return
 	 */
 	public int getSteps() {
-		return steps;
+		return world.getSteps(slot);
+	}
+
+	/**
+	 * Number of explosions this ball came from, 0 for a ball that is not a
+	 * fragment of another
+	 * 
+	 * @return
+	 */
+	public int getGeneration() {
+		return world.getGeneration(slot);
 	}
 
 	/**
@@ -109,9 +150,8 @@ public class Ball {
 	 *             New Y position
 	 */
 	public void moveTo(double newX, double newY) {
-		// TODO
-		xMotion.setPosition(newX);
-		yMotion.setPosition(newY);
+		world.setPosition(slot, newX, newY);
+		world.wake(slot);
 	}
 
 	/**
@@ -120,7 +160,7 @@ public class Ball {
 	 * @return Current X movement
 	 */
 	public double getDeltaX() {
-		return this.xMotion.getSpeed();
+		return world.getSpeedX(slot);
 	}
 
 	/**
@@ -129,7 +169,7 @@ public class Ball {
 	 * @return Current Y movement
 	 */
 	public double getDeltaY() {
-		return this.yMotion.getSpeed();
+		return world.getSpeedY(slot);
 	}
 
 	/**
@@ -139,34 +179,95 @@ public class Ball {
 	 * (deltaX,deltaY).
 	 */
 	public void move() {
-		// TODO
-		// Hint: examine which methods there are in the class Motion
-		// maybe you don't have to do as much as you think.
-		steps++;
-		xMotion.move();
-		yMotion.move();
+		world.move(slot);
+	}
+
+	/**
+	 * Performs many time steps at once, with the same result as calling
+	 * {@link #move()} that many times, up to rounding. The time taken does not
+	 * depend on the number of steps, only on the number of bounces.
+	 *
+	 * @param steps - number of time steps, at least 0
+	 */
+	public void advance(long steps) {
+		world.advance(slot, steps);
 	}
 
 	/**
 	 * This method makes one ball explode into 8 smaller balls with half the radius
 	 * The new balls may have different speed and direction
 	 * 
+	 * The new balls share one world of their own.
+	 * 
 	 * @return the new balls after the explosion
 	 */
 	public Ball[] explode() {
-		// TODO
+		return explode(RandomSource.shared());
+	}
+
+	/**
+	 * Same as {@link #explode()}, but the speeds of the new balls are drawn from
+	 * the given random source, so that explosions can be repeated.
+	 * 
+	 * @param source
+	 * @return the new balls after the explosion
+	 */
+	public Ball[] explode(RandomSource source) {
+		SplittableRandom random = source.current();
+		BallWorld fragments = new BallWorld(8);
+		Paint color = getColor();
+		double radius = getRadius();
 		Ball[] balls = new Ball[8];
 		for (int i = 0; i < 8; i++){
-			balls[i] = new Ball(color, radius / 2);
-			balls[i].xMotion.setPosition(getX());
-			balls[i].yMotion.setPosition(getY());
-			double xRand = Math.random();
-			double yRand = Math.random();
+			balls[i] = fragments.newBall(color, radius / 2);
+			fragments.setGeneration(balls[i].getSlot(), getGeneration() + 1);
+			balls[i].moveTo(getX(), getY());
+			double xRand = random.nextDouble();
+			double yRand = random.nextDouble();
 			balls[i].setSpeed(xRand, yRand);
 		}
 		return balls;
 	}
 
+	/**
+	 * Same as {@link #explode(RandomSource)}, but the new balls are created directly
+	 * in the given world, reusing recycled balls of that world when possible.
+	 * This ball is left as it is, and should normally be
+	 * {@link BallWorld#recycle(Ball) recycled} by the caller.
+	 * 
+	 * @param world  - the world to add the new balls to
+	 * @param source - source of the speeds of the new balls
+	 */
+	public void explodeInto(BallWorld world, RandomSource source) {
+		explodeInto(world, source, 8);
+	}
+
+	/**
+	 * Same as {@link #explodeInto(BallWorld, RandomSource)}, but only the
+	 * first {@code count} of the 8 new balls are made, like when there is not
+	 * room for all of them
+	 * 
+	 * @param world  - the world to add the new balls to
+	 * @param source - source of the speeds of the new balls
+	 * @param count  - number of new balls, from 0 to 8
+	 */
+	public void explodeInto(BallWorld world, RandomSource source, int count) {
+		if (count < 0 || count > 8)
+			throw new IllegalArgumentException("An explosion makes 0 to 8 balls");
+		SplittableRandom random = source.current();
+		double x = getX();
+		double y = getY();
+		double radius = getRadius() / 2;
+		int colorIndex = world == this.world ? world.getColorIndex(slot) : world.colorIndexOf(getColor());
+		int generation = getGeneration() + 1;
+		for (int i = 0; i < count; i++) {
+			Ball b = world.newBall(colorIndex, radius);
+			world.setGeneration(b.getSlot(), generation);
+			b.moveTo(x, y);
+			b.setSpeed(random.nextDouble(), random.nextDouble());
+		}
+	}
+
 	/**
 	 * Acceleration changes the speed of this ball every time move is called.
 	 * This method sets the acceleration in both x and y direction to a given value.
@@ -176,9 +277,8 @@ public class Ball {
 	 * @param yAcceleration The extra speed along the y-axis
 	 */
 	public void setAcceleration(double xAcceleration, double yAcceleration) {
-		// TODO
-		xMotion.setAcceleration(xAcceleration);
-		yMotion.setAcceleration(yAcceleration);
+		world.setAcceleration(slot, xAcceleration, yAcceleration);
+		world.wake(slot);
 	}
 
 	/**
@@ -190,9 +290,8 @@ public class Ball {
 	 * @param yAcceleration
 	 */
 	public void accelerate(double xAcceleration, double yAcceleration) {
-		// TODO
-		xMotion.accelerate(xAcceleration);
-		yMotion.accelerate(yAcceleration);
+		world.setSpeed(slot, getDeltaX() + xAcceleration, getDeltaY() + yAcceleration);
+		world.wake(slot);
 	}
 
 	/**
@@ -200,11 +299,9 @@ public class Ball {
 	 * Both speed and acceleration will be sat to 0
 	 */
 	public void halt() {
-		// TODO
-		xMotion.setSpeed(0);
-		xMotion.setAcceleration(0);
-		yMotion.setSpeed(0);
-		yMotion.setAcceleration(0);
+		world.setSpeed(slot, 0, 0);
+		world.setAcceleration(slot, 0, 0);
+		world.wake(slot);
 	}
 
 	/**
@@ -215,8 +312,22 @@ public class Ball {
 	 * @param ySpeed - speed in y direction
 	 */
 	public void setSpeed(double xSpeed, double ySpeed) {
-		xMotion.setSpeed(xSpeed);
-		yMotion.setSpeed(ySpeed);
+		world.setSpeed(slot, xSpeed, ySpeed);
+		world.wake(slot);
+	}
+
+	/**
+	 * Sets the bounce factor in both x and y direction.
+	 * See {@link Motion#setBounceFactor(double)}.
+	 * 
+	 * @param xBounceFactor - bounce factor at the x limits
+	 * @param yBounceFactor - bounce factor at the y limits
+	 */
+	public void setBounceFactor(double xBounceFactor, double yBounceFactor) {
+		if (xBounceFactor < 0 || yBounceFactor < 0)
+			throw new IllegalArgumentException("Bounce factor must > 0");
+
+		world.setBounceFactor(slot, xBounceFactor, yBounceFactor);
 	}
 
 	/**
@@ -226,7 +337,7 @@ public class Ball {
 	 * @param limit
 	 */
 	public void setLowerLimitX(double limit) {
-		xMotion.setLowerLimit(limit);
+		world.setLowerLimitX(slot, limit);
 	}
 
 	/**
@@ -236,7 +347,7 @@ public class Ball {
 	 * @param limit
 	 */
 	public void setLowerLimitY(double limit) {
-		yMotion.setLowerLimit(limit);
+		world.setLowerLimitY(slot, limit);
 	}
 
 	/**
@@ -246,7 +357,7 @@ public class Ball {
 	 * @param limit
 	 */
 	public void setUpperLimitX(double limit) {
-		xMotion.setUpperLimit(limit);
+		world.setUpperLimitX(slot, limit);
 	}
 
 	/**
@@ -256,6 +367,6 @@ public class Ball {
 	 * @param limit
 	 */
 	public void setUpperLimitY(double limit) {
-		yMotion.setUpperLimit(limit);
+		world.setUpperLimitY(slot, limit);
 	}
 }
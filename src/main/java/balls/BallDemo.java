@@ -1,8 +1,10 @@
 package balls;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 import javafx.animation.AnimationTimer;
 import javafx.application.Application;
@@ -10,11 +12,9 @@ import javafx.scene.Group;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.paint.Color;
-import javafx.scene.paint.CycleMethod;
 import javafx.scene.paint.Paint;
-import javafx.scene.paint.RadialGradient;
-import javafx.scene.paint.Stop;
 import javafx.stage.Stage;
 
 /**
@@ -22,6 +22,28 @@ import javafx.stage.Stage;
  * All balls move and are affected by gravity.
  * When balls hit the floor they bounce back up.
  * New balls are generated at regular time intervals.
+ * The balls are simulated by a {@link BallSimulation} on a
+ * {@link SimulationThread}, this class only shows the latest {@link Snapshot}.
+ *
+ * With the system property {@code balls.replay} set to a recording made with
+ * {@code balls.record}, the recording is played back instead of simulating.
+ * Space pauses and plays, the left and right arrows jump a second (ten with
+ * shift), the up and down arrows change the speed and home goes to the
+ * start.
+ *
+ * With the system property {@code balls.renderer} set to {@code pixels},
+ * balls are drawn into an image by a {@link PixelRenderer} on all cores
+ * instead of one by one on the canvas.
+ *
+ * Small balls are drawn with less detail, see {@link DetailLevels}. The
+ * system property {@code balls.lod} sets the largest radius drawn as a
+ * pixel, as a flat disc and from a sprite, for example {@code 1,4,64}, or
+ * {@code full} to draw every ball with the full gradient.
+ *
+ * The system property {@code balls.lifetimes} sets how many steps new balls,
+ * their fragments and so on live before they explode, for example
+ * {@code 200,100}, and {@code balls.budget} limits the number of balls with
+ * a {@link ParticleBudget}, for example {@code 20000,1000,off_screen}.
  *
  * @author Martin Vatshelle and Anya
  *
@@ -30,10 +52,53 @@ public class BallDemo extends Application {
 
 	private AnimationTimer timer;
 	private Canvas canvas;
-	private List<Ball> balls = new ArrayList<Ball>();
-	private Random random = new Random();
-	private int stepCount = 0;
-	private int maxNumberOfBalls = 2000;
+	private BallSimulation simulation;
+	private SimulationThread simulationThread;
+	/**
+	 * Pre-rendered balls, null if balls are drawn with gradient fills. Set the
+	 * system property {@code balls.sprites} to false to turn it off.
+	 */
+	private SpriteAtlas sprites;
+	/** Draws the balls into an image, null if they are drawn on the canvas */
+	private PixelRenderer pixels;
+	/** Colors of the simulation, color i has color index i */
+	private Paint[] colors;
+	/** Decides which balls are drawn with less detail */
+	private DetailLevels detailLevels;
+	/** Flat color of each color index, for small balls */
+	private Color[] flatColors;
+	/**
+	 * Small balls of the frame for each color index as x, y and radius, drawn
+	 * together after the other balls so the fill is set once per color. A
+	 * radius of 0 is a ball drawn as a pixel.
+	 */
+	private double[][] batches;
+	private int[] batchSizes;
+	/** Decides how many steps to take and which frames to draw */
+	private FrameGovernor governor = new FrameGovernor(60, 60);
+	/** Step and alpha of the last frame drawn, to skip frames with no change */
+	private int drawnStep = -1;
+	private double drawnAlpha;
+	/** Times steps and frames, and shows them through JMX */
+	private SimulationMetrics metrics = new SimulationMetrics();
+	/**
+	 * Prints the metrics every few seconds, null if they are not printed. Set
+	 * the system property {@code balls.report} to the number of seconds
+	 * between lines to turn it on.
+	 */
+	private MetricsReporter reporter;
+	/**
+	 * Records the run, null if it is not recorded. Set the system property
+	 * {@code balls.record} to a file name to turn it on.
+	 */
+	private Recorder recorder;
+	/** Plays a recording, null if the balls are simulated */
+	private ReplayPlayer player;
+	private Stage stage;
+	/** Time of the last replay frame, 0 before the first */
+	private long replayTime;
+	/** Whether the replay has been moved by a key since the last frame */
+	private boolean replayMoved;
 
 	@Override
 	public void start(Stage stage) throws Exception {
@@ -49,8 +114,35 @@ public class BallDemo extends Application {
 		// canvas.setEffect(new BoxBlur());
 		root.getChildren().add(canvas);
 
-		// creates 10 initial balls
-		setup();
+		this.stage = stage;
+		colors = BallSimulation.createColors();
+		detailLevels = DetailLevels.parse(System.getProperty("balls.lod", "default"));
+		flatColors = new Color[colors.length];
+		batches = new double[colors.length][48];
+		batchSizes = new int[colors.length];
+		for (int c = 0; c < colors.length; c++) {
+			flatColors[c] = DetailLevels.flatColor(colors[c]);
+		}
+		if (Boolean.parseBoolean(System.getProperty("balls.sprites", "true")))
+			sprites = new SpriteAtlas(colors);
+		if ("pixels".equals(System.getProperty("balls.renderer", "canvas"))) {
+			pixels = new PixelRenderer(colors);
+			pixels.setDetailLevels(detailLevels);
+			pixels.setParallelism(Runtime.getRuntime().availableProcessors());
+		}
+		metrics.register();
+		String replay = System.getProperty("balls.replay");
+		if (replay != null) {
+			player = new ReplayPlayer(new RecordingReader(Path.of(replay)), 60);
+			scene.setOnKeyPressed(this::replayKey);
+		} else {
+			startSimulation(width, height);
+		}
+		int reportSeconds = Integer.getInteger("balls.report", 0);
+		if (reportSeconds > 0) {
+			reporter = new MetricsReporter(metrics, System.out);
+			reporter.start(reportSeconds, TimeUnit.SECONDS);
+		}
 
 		// create an timer used to refresh the canvas
 		timer = new BallDemoTimer(this);
@@ -63,145 +155,249 @@ public class BallDemo extends Application {
 	}
 
 	/**
-	 * add 10 initial balls to start off the simulation
+	 * Creates the simulation and starts running it
 	 */
-	private void setup() {
-		for (int i = 0; i < 10; i++) {
-			newBall();
+	private void startSimulation(double width, double height) throws IOException {
+		// the simulation is seeded from the system property balls.seed if it is set
+		Long seed = Long.getLong("balls.seed");
+		simulation = new BallSimulation(width, height, seed == null ? new RandomSource() : new RandomSource(seed));
+		simulation.setParallelism(Integer.getInteger("balls.parallelism", 1));
+		simulation.setMaxNumberOfBalls(Integer.getInteger("balls.max", 2000));
+		simulation.setBroadphase(Broadphase.forName(System.getProperty("balls.broadphase", "grid")));
+		simulation.setCollisionsEnabled(Boolean.getBoolean("balls.collisions"));
+		simulation.setSleepEnabled(Boolean.getBoolean("balls.sleep"));
+		String lifetimes = System.getProperty("balls.lifetimes");
+		if (lifetimes != null)
+			simulation.setLifetimes(BallSimulation.parseLifetimes(lifetimes));
+		String budget = System.getProperty("balls.budget");
+		if (budget != null)
+			simulation.setBudget(ParticleBudget.parse(budget));
+		simulation.setMetrics(metrics);
+		canvas.widthProperty().addListener((obs, old, w) -> resize(w.doubleValue(), canvas.getHeight()));
+		canvas.heightProperty().addListener((obs, old, h) -> resize(canvas.getWidth(), h.doubleValue()));
+
+		// creates 10 initial balls
+		simulation.setup();
+		simulationThread = new SimulationThread(simulation, governor);
+		String recording = System.getProperty("balls.record");
+		if (recording != null) {
+			recorder = new Recorder(Path.of(recording));
+			simulationThread.setRecorder(recorder);
 		}
+		simulationThread.start();
 	}
 
-	/**
-	 * Add a new ball to the canvas
-	 * All balls are affected by gravity and they bounce against the bottom.
-	 * 
-	 * @param ball
-	 */
-	public void addBall(Ball ball) {
-		ball.setAcceleration(0, 0.098f);
-		ball.setUpperLimitY(canvas.getHeight() - ball.getRadius());
-		balls.add(ball);
+	@Override
+	public void stop() throws InterruptedException, IOException {
+		timer.stop();
+		if (reporter != null)
+			reporter.stop();
+		if (simulationThread != null) {
+			simulationThread.stop();
+			simulation.shutdown();
+		}
+		metrics.unregister();
+		if (recorder != null)
+			recorder.close();
+		if (player != null)
+			player.getFrame().close();
+		if (pixels != null)
+			pixels.shutdown();
 	}
 
 	/**
-	 * Remove a ball from the canvas
-	 * 
-	 * @param ball
+	 * Changes the size of the simulated area between two steps
 	 */
-	public void removeBall(Ball ball) {
-		balls.remove(ball);
+	private void resize(double width, double height) {
+		simulationThread.execute(() -> simulation.setSize(width, height));
 	}
 
 	/**
-	 * Makes a ball explode into many small balls
-	 * 
-	 * @param ball
+	 * Re-draws every ball on the canvas from the latest snapshot, part of the
+	 * way from where the balls were in the snapshot before. Frames where
+	 * nothing has moved are skipped, and so are frames the governor gives up
+	 * to keep up.
 	 */
-	public void addExplosion(Ball ball) {
-		balls.remove(ball);
-		Ball[] newBalls = ball.explode();
-		if (balls.size() < maxNumberOfBalls) { // avoid too many balls to be on the screen
-			for (Ball b : newBalls) {
-				if (ball.getRadius() > 4)
-					addBall(b);
-			}
+	protected void draw() {
+		if (player != null) {
+			drawReplay();
+			return;
 		}
+		long start = System.nanoTime();
+		Snapshot balls = simulationThread.acquireSnapshot();
+		double alpha = balls.getAlpha(start);
+		boolean changed = balls.getStepCount() != drawnStep || alpha != drawnAlpha;
+		if (!governor.shouldDraw(changed))
+			return;
+		drawnStep = balls.getStepCount();
+		drawnAlpha = alpha;
+		metrics.beginFrame();
+
+		GraphicsContext context = beginDraw();
+		for (int i = balls.size() - 1; i >= 0; i--) {
+			drawBall(context, balls.getColorIndex(i), balls.getX(i, alpha), balls.getY(i, alpha), balls.getRadius(i));
+		}
+		endDraw(context);
+		metrics.endFrame(balls.size());
+		governor.drawTaken(System.nanoTime() - start);
 	}
 
 	/**
-	 * Create a new ball of size 32 and adds it to the BallDemo
-	 * The color will be random
-	 * The ball is centrally located on the lower part of the canvas
-	 * The speed will be random in both x and y direction
+	 * Moves the replay forward by the time since the last frame and draws the
+	 * frame it is at, straight from the recording
 	 */
-	private void newBall() {
-		newBall(canvas.getWidth() / 2, canvas.getHeight() - 32, 32);
+	private void drawReplay() {
+		long start = System.nanoTime();
+		boolean changed;
+		try {
+			changed = player.update(replayTime == 0 ? 0 : start - replayTime) || replayMoved || replayTime == 0;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		replayTime = start;
+		replayMoved = false;
+		if (!governor.shouldDraw(changed))
+			return;
+		metrics.beginFrame();
+
+		RecordingReader balls = player.getFrame();
+		GraphicsContext context = beginDraw();
+		for (int i = balls.size() - 1; i >= 0; i--) {
+			drawBall(context, balls.getColorIndex(i), balls.getX(i), balls.getY(i), balls.getRadius(i));
+		}
+		endDraw(context);
+		stage.setTitle(String.format("Replay: step %d of %d, %.0fx%s", player.getStep(),
+				balls.getLastStep(), player.getSpeed(), player.isPaused() ? ", paused" : ""));
+		metrics.endFrame(balls.size());
+		governor.drawTaken(System.nanoTime() - start);
 	}
 
 	/**
-	 * Creates a new ball and adds it to the BallDemo
-	 * The speed will be random in both x and y direction
-	 * The color will be random
-	 * 
-	 * @param x    - x position of the ball
-	 * @param y    - y position of the ball
-	 * @param size - radius of the ball
+	 * Clears the canvas, and starts a frame of the pixel renderer if it is used
 	 */
-	private void newBall(double x, double y, double size) {
-		Paint paint = getRandomColor();
-		Ball b = new Ball(paint, size);
-		b.moveTo(x, y);
-		b.setSpeed((128 / size) * (random.nextDouble() - 0.5), -(256 / size) * random.nextDouble() - 5);
-		addBall(b);
+	private GraphicsContext beginDraw() {
+		GraphicsContext context = canvas.getGraphicsContext2D();
+		context.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+		if (pixels != null)
+			pixels.begin((int) Math.ceil(canvas.getWidth()), (int) Math.ceil(canvas.getHeight()));
+		return context;
 	}
 
 	/**
-	 * Returns a random color
-	 * 
-	 * @return
+	 * Draws the small balls of the frame, one color at a time, or shows the
+	 * balls drawn by the pixel renderer if it is used
 	 */
-	private Paint getRandomColor() {
-		Color color = Color.RED.deriveColor(64 * random.nextDouble() - 32.0, 1.0, 1.0, .7);
-		Color white = color.deriveColor(0.0, .33, 3.0, 2.0);
-		Paint paint = new RadialGradient(0.0, 0.0, 0.3, 0.3, .6, true, CycleMethod.NO_CYCLE, new Stop(0.0, white),
-				new Stop(1.0, (Color) color));
-		return paint;
+	private void endDraw(GraphicsContext context) {
+		if (pixels != null) {
+			pixels.draw(context);
+			return;
+		}
+		for (int c = 0; c < colors.length; c++) {
+			if (batchSizes[c] == 0)
+				continue;
+			context.setFill(flatColors[c]);
+			double[] batch = batches[c];
+			for (int k = 0; k < batchSizes[c]; k += 3) {
+				double r = batch[k + 2];
+				if (r == 0)
+					context.fillRect(Math.floor(batch[k]), Math.floor(batch[k + 1]), 1, 1);
+				else
+					context.fillOval(batch[k] - r, batch[k + 1] - r, 2 * r, 2 * r);
+			}
+			batchSizes[c] = 0;
+		}
 	}
 
 	/**
-	 * Moves all balls one step forward
-	 * Generates new balls at regular intervals
+	 * Draws one ball, centered on (x, y)
 	 */
-	protected void step() {
-		for (Ball b : new ArrayList<>(balls)) {
-			// b.accelerate(0, 0.098f); // all balls are affected by gravity
-			b.move();
-
-			// after a 200 steps a ball will explode
-			if (b.getSteps() >= 200)
-				addExplosion(b);
-
-		}
-		// every 16th step a new ball is added
-		if (stepCount % 16 == 0) {
-			newBall();
+	private void drawBall(GraphicsContext context, int colorIndex, double x, double y, double r) {
+		if (pixels != null) {
+			pixels.add(colorIndex, x, y, r);
+			return;
 		}
-
-		// every 100th step number of balls are printed
-		if (stepCount % 100 == 0) {
-			System.out.println("Number of balls: " + balls.size());
+		switch (detailLevels.levelOf(r)) {
+		case POINT:
+			batch(colorIndex, x, y, 0);
+			return;
+		case FLAT:
+			batch(colorIndex, x, y, r);
+			return;
+		case SPRITE:
+			if (sprites != null && sprites.hasSprite(colorIndex, r)) {
+				sprites.draw(context, colorIndex, x, y, r);
+				return;
+			}
+			break;
+		default:
+			break;
 		}
+		double w = r * 2;
+		double h = r * 2;
+		double xPos = x - w / 2.0;
+		double yPos = y - h / 2.0;
+		context.setFill(colors[colorIndex]);
+		context.fillOval(xPos, yPos, w, h);
+	}
 
-		stepCount++;
+	/**
+	 * Keeps a small ball to be drawn with the others of its color at the end
+	 * of the frame
+	 */
+	private void batch(int colorIndex, double x, double y, double r) {
+		double[] batch = batches[colorIndex];
+		int size = batchSizes[colorIndex];
+		if (size == batch.length)
+			batch = batches[colorIndex] = Arrays.copyOf(batch, 2 * size);
+		batch[size] = x;
+		batch[size + 1] = y;
+		batch[size + 2] = r;
+		batchSizes[colorIndex] = size + 3;
 	}
 
 	/**
-	 * Re-draws every ball on the canvas
+	 * Controls the replay with the keyboard
 	 */
-	protected void draw() {
-		GraphicsContext context = canvas.getGraphicsContext2D();
-		context.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
-		for (int i = balls.size() - 1; i >= 0; i--) {
-			Ball b = balls.get(i);
-			double w = b.getWidth();
-			double h = b.getHeight();
-			double xPos = b.getX() - w / 2.0;
-			double yPos = b.getY() - h / 2.0;
-			context.save();
-			context.setFill(b.getColor());
-			context.fillOval(xPos, yPos, w, h);
-			context.restore();
+	private void replayKey(KeyEvent event) {
+		int jump = event.isShiftDown() ? 600 : 60;
+		try {
+			switch (event.getCode()) {
+			case SPACE:
+				if (player.isPaused() || player.isFinished())
+					player.play();
+				else
+					player.pause();
+				break;
+			case RIGHT:
+				player.seek(player.getStep() + jump);
+				break;
+			case LEFT:
+				player.seek(player.getStep() - jump);
+				break;
+			case UP:
+				player.setSpeed(Math.min(ReplayPlayer.MAX_SPEED, 2 * player.getSpeed()));
+				break;
+			case DOWN:
+				player.setSpeed(Math.max(ReplayPlayer.MIN_SPEED, player.getSpeed() / 2));
+				break;
+			case HOME:
+				player.seek(0);
+				break;
+			default:
+				return;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
+		replayMoved = true;
 	}
 }
 
 /**
- * Class for calling the {@link #BallDemo.draw()} method 60 times per second
+ * Class for calling the {@link #BallDemo.draw()} method for every frame. The
+ * balls are stepped by the simulation thread.
  */
 class BallDemoTimer extends AnimationTimer {
-	private long nanosPerStep = 1000_000_000L / 60L;
-	private long timeBudget = nanosPerStep;
-	private long lastUpdateTime = 0L;
 	private BallDemo balldemo;
 
 	public BallDemoTimer(BallDemo balldemo) {
@@ -210,15 +406,6 @@ class BallDemoTimer extends AnimationTimer {
 
 	@Override
 	public void handle(long now) {
-		if (lastUpdateTime > 0) {
-			timeBudget = Math.min(timeBudget + (now - lastUpdateTime), 10 * nanosPerStep);
-		}
-		lastUpdateTime = now;
-
-		while (timeBudget >= nanosPerStep) {
-			timeBudget = timeBudget - nanosPerStep;
-			balldemo.step();
-		}
 		balldemo.draw();
 	}
 }
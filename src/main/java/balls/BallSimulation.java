@@ -0,0 +1,579 @@
+package balls;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import javafx.scene.paint.Color;
+import javafx.scene.paint.CycleMethod;
+import javafx.scene.paint.Paint;
+import javafx.scene.paint.RadialGradient;
+import javafx.scene.paint.Stop;
+
+/**
+ * The ball simulation shown by {@link BallDemo}, without any graphics.
+ * All balls move and are affected by gravity.
+ * When balls hit the floor they bounce back up.
+ * New balls are generated at regular time intervals, and balls explode into
+ * smaller balls after a while.
+ *
+ * How long a ball lives can be set for each generation, see
+ * {@link #setLifetimes(int...)}. A ball is put in a {@link TimingWheel} for
+ * the step where it explodes when it is added, so a step only looks at the
+ * balls that explode in it. The step is worked out from the steps counter of
+ * the ball, so a ball that is moved outside of {@link #step()}, or added to
+ * the world directly, explodes at the step it was due at when it was added.
+ *
+ * The simulation owns the {@link BallWorld} and the size of the area the
+ * balls live in, so it can be run without a window, e.g. by
+ * {@link HeadlessMain}.
+ */
+public class BallSimulation {
+
+	/** Number of distinct colors balls are drawn with */
+	public static final int NUMBER_OF_COLORS = 64;
+	/** Number of steps a ball lives before it explodes, by default */
+	public static final int EXPLOSION_AGE = 200;
+
+	private BallWorld balls = new BallWorld();
+	/** Source of all randomness in the simulation */
+	private RandomSource random;
+	/** Number of threads moving balls, 1 means moving on the calling thread */
+	private int parallelism = 1;
+	private ForkJoinPool pool;
+	private int stepCount = 0;
+	private int maxNumberOfBalls = 2000;
+	/** Number of steps between new balls */
+	private int spawnInterval = 16;
+	private double width;
+	private double height;
+	private Paint[] colors = createColors();
+	/** Makes balls bounce off each other, null if balls pass through each other */
+	private CollisionSystem collisions;
+	/** Finds the balls that may collide */
+	private Broadphase broadphase = new UniformGrid();
+	/** Times the steps, null if they are not timed */
+	private SimulationMetrics metrics;
+	private long ballsCreated;
+	private long ballsExploded;
+	/** Number of steps balls of each generation live, the last for all later */
+	private int[] lifetimes = { EXPLOSION_AGE };
+	/** Balls by the step they explode at, null when it must be built again */
+	private TimingWheel explosions;
+	/** Number of balls created in the world when {@link #explosions} was up to date */
+	private int scheduledIds;
+	/** True between moving the balls and the end of a step */
+	private boolean moved;
+	// slots of the balls exploding in a step
+	private int[] exploding = new int[16];
+	/** Limits the number of balls, null to only use {@link #maxNumberOfBalls} */
+	private ParticleBudget budget;
+
+	/**
+	 * Creates an empty simulation with a random seed
+	 *
+	 * @param width  - width of the area
+	 * @param height - height of the area, the floor is at this y position
+	 */
+	public BallSimulation(double width, double height) {
+		this(width, height, new RandomSource());
+	}
+
+	/**
+	 * Creates an empty simulation where all random choices are made from the
+	 * given source, so that the same seed gives the same simulation
+	 *
+	 * @param width  - width of the area
+	 * @param height - height of the area, the floor is at this y position
+	 * @param random - the random source
+	 */
+	public BallSimulation(double width, double height, RandomSource random) {
+		this.width = width;
+		this.height = height;
+		this.random = random;
+		// color index i of the world is colors[i]
+		for (Paint color : colors) {
+			balls.colorIndexOf(color);
+		}
+	}
+
+	/**
+	 * add 10 initial balls to start off the simulation
+	 */
+	public void setup() {
+		for (int i = 0; i < 10; i++) {
+			newBall();
+		}
+	}
+
+	/**
+	 * @return the world holding all balls
+	 */
+	public BallWorld getWorld() {
+		return balls;
+	}
+
+	/**
+	 * @return the source of all random choices of the simulation
+	 */
+	public RandomSource getRandomSource() {
+		return random;
+	}
+
+	/**
+	 * @return the colors used by the simulation, color i has color index i in
+	 *         {@link #getWorld()}
+	 */
+	public Paint[] getColors() {
+		return colors.clone();
+	}
+
+	/**
+	 * @return number of steps taken
+	 */
+	public int getStepCount() {
+		return stepCount;
+	}
+
+	public double getWidth() {
+		return width;
+	}
+
+	public double getHeight() {
+		return height;
+	}
+
+	/**
+	 * Changes the size of the area. Balls already in the world keep their
+	 * floor, new balls get a floor at the new height.
+	 *
+	 * @param width
+	 * @param height
+	 */
+	public void setSize(double width, double height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	public int getMaxNumberOfBalls() {
+		return maxNumberOfBalls;
+	}
+
+	/**
+	 * Sets the number of balls above which exploding balls just disappear.
+	 * It is not used while a {@link ParticleBudget} is set.
+	 *
+	 * @param maxNumberOfBalls
+	 */
+	public void setMaxNumberOfBalls(int maxNumberOfBalls) {
+		this.maxNumberOfBalls = maxNumberOfBalls;
+	}
+
+	public int getSpawnInterval() {
+		return spawnInterval;
+	}
+
+	/**
+	 * Sets how often new balls are added
+	 *
+	 * @param spawnInterval - number of steps between new balls, at least 1
+	 */
+	public void setSpawnInterval(int spawnInterval) {
+		if (spawnInterval < 1)
+			throw new IllegalArgumentException("Spawn interval must be at least 1");
+		this.spawnInterval = spawnInterval;
+	}
+
+	/**
+	 * Sets the number of threads used to move the balls in {@link #step()}.
+	 * The simulation gives the same result for every parallelism, with
+	 * parallelism 1 being the sequential reference.
+	 *
+	 * @param parallelism - number of threads, at least 1
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		if (pool != null)
+			pool.shutdown();
+		this.parallelism = parallelism;
+		pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+	}
+
+	/**
+	 * @return number of threads used to move the balls
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Turns bouncing between balls on or off. It is off by default, then balls
+	 * only bounce off the floor.
+	 *
+	 * @param enabled
+	 */
+	public void setCollisionsEnabled(boolean enabled) {
+		collisions = enabled ? new CollisionSystem(broadphase) : null;
+	}
+
+	public boolean isCollisionsEnabled() {
+		return collisions != null;
+	}
+
+	public Broadphase getBroadphase() {
+		return broadphase;
+	}
+
+	/**
+	 * Sets how balls that may collide are found. It can be changed at any
+	 * time, also while collisions are enabled.
+	 *
+	 * @param broadphase
+	 */
+	public void setBroadphase(Broadphase broadphase) {
+		this.broadphase = broadphase;
+		if (collisions != null)
+			collisions = new CollisionSystem(broadphase);
+	}
+
+	public boolean isSleepEnabled() {
+		return balls.isSleepEnabled();
+	}
+
+	/**
+	 * Turns putting balls that have come to rest to sleep on or off, see
+	 * {@link BallWorld#setSleepEnabled(boolean)}. It is off by default.
+	 *
+	 * @param enabled
+	 */
+	public void setSleepEnabled(boolean enabled) {
+		balls.setSleepEnabled(enabled);
+	}
+
+	/**
+	 * Sets how many steps balls live before they explode
+	 *
+	 * @param lifetimes - number of steps for new balls, for their fragments,
+	 *                  for the fragments of those and so on, each at least 1.
+	 *                  Later generations live as long as the last one given.
+	 */
+	public void setLifetimes(int... lifetimes) {
+		if (lifetimes.length == 0)
+			throw new IllegalArgumentException("At least one lifetime is needed");
+		for (int lifetime : lifetimes) {
+			if (lifetime < 1)
+				throw new IllegalArgumentException("Lifetimes must be at least 1");
+		}
+		this.lifetimes = lifetimes.clone();
+		explosions = null;
+	}
+
+	/**
+	 * Reads lifetimes for {@link #setLifetimes(int...)} from a string, so
+	 * they can be chosen on the command line
+	 *
+	 * @param lifetimes - numbers of steps separated by commas, like "200,100"
+	 * @return the lifetimes
+	 */
+	static int[] parseLifetimes(String lifetimes) {
+		String[] parts = lifetimes.split(",");
+		int[] steps = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			steps[i] = Integer.parseInt(parts[i].trim());
+		}
+		return steps;
+	}
+
+	/**
+	 * @param generation - 0 for new balls, 1 for their fragments and so on
+	 * @return number of steps balls of the generation live before they explode
+	 */
+	public int getLifetime(int generation) {
+		return lifetimes[Math.min(generation, lifetimes.length - 1)];
+	}
+
+	public ParticleBudget getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Sets a budget that decides how many fragments and new balls are made.
+	 * The max number of balls still applies while it is below the cap of the
+	 * budget, so a {@link FrameGovernor} can keep lowering it.
+	 *
+	 * @param budget - the budget, or null to use the max number of balls
+	 */
+	public void setBudget(ParticleBudget budget) {
+		this.budget = budget;
+	}
+
+	public SimulationMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Sets where the times of the phases of each step are recorded
+	 *
+	 * @param metrics - the metrics, or null to not time steps
+	 */
+	public void setMetrics(SimulationMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return number of balls created so far, including fragments of
+	 *         explosions
+	 */
+	public long getBallsCreated() {
+		return ballsCreated;
+	}
+
+	/**
+	 * @return number of balls exploded so far
+	 */
+	public long getBallsExploded() {
+		return ballsExploded;
+	}
+
+	/**
+	 * Sets the number of steps taken, used by {@link KineticSimulation} which
+	 * takes the steps itself
+	 */
+	void setStepCount(int stepCount) {
+		this.stepCount = stepCount;
+		explosions = null;
+	}
+
+	/**
+	 * Replaces the world and the counters, used by {@link Checkpoint}
+	 */
+	void restore(BallWorld world, int stepCount, long ballsCreated, long ballsExploded) {
+		world.setSleepThresholds(balls.getSleepSteps(), balls.getSleepDistance(), balls.getSleepSpeed());
+		if (balls.isSleepEnabled())
+			world.setSleepEnabled(true);
+		balls = world;
+		explosions = null;
+		this.stepCount = stepCount;
+		this.ballsCreated = ballsCreated;
+		this.ballsExploded = ballsExploded;
+	}
+
+	/**
+	 * Stops the threads used for moving balls
+	 */
+	public void shutdown() {
+		setParallelism(1);
+	}
+
+	/**
+	 * Add a new ball to the simulation
+	 * All balls are affected by gravity and they bounce against the bottom.
+	 *
+	 * @param ball
+	 */
+	public void addBall(Ball ball) {
+		balls.add(ball);
+		initBall(ball);
+	}
+
+	/**
+	 * Sets gravity and the floor for a ball in the world
+	 *
+	 * @param ball
+	 */
+	private void initBall(Ball ball) {
+		ball.setAcceleration(0, 0.098f);
+		ball.setUpperLimitY(height - ball.getRadius());
+		if (explosions != null) {
+			scheduleExplosion(ball.getSlot());
+			scheduledIds++;
+		}
+	}
+
+	/**
+	 * Puts a ball in {@link #explosions} for the step where it is old enough
+	 * to explode
+	 */
+	private void scheduleExplosion(int slot) {
+		// the first step the ball is moved in
+		long first = moved ? stepCount + 1L : stepCount;
+		long remaining = getLifetime(balls.getGeneration(slot)) - 1L - balls.getSteps(slot);
+		explosions.schedule(slot, (int) Math.min(Integer.MAX_VALUE, first + Math.max(0, remaining)));
+	}
+
+	/**
+	 * Builds {@link #explosions} again from all balls in the world, when
+	 * balls have been added to the world or steps taken without this
+	 * simulation knowing
+	 */
+	private void checkExplosions() {
+		if (explosions != null && explosions.getWorld() == balls && explosions.getCurrentStep() == stepCount
+				&& scheduledIds == balls.getNextId())
+			return;
+		explosions = new TimingWheel(balls, stepCount);
+		for (int slot = 0; slot < balls.size(); slot++) {
+			scheduleExplosion(slot);
+		}
+		scheduledIds = balls.getNextId();
+	}
+
+	/**
+	 * Remove a ball from the simulation
+	 *
+	 * @param ball
+	 */
+	public void removeBall(Ball ball) {
+		balls.remove(ball);
+	}
+
+	/**
+	 * Makes a ball explode into many small balls
+	 *
+	 * @param ball
+	 */
+	public void addExplosion(Ball ball) {
+		boolean inWorld = ball.getWorld() == balls;
+		int remaining = inWorld ? balls.getLiveCount() - 1 : balls.getLiveCount();
+		// avoid too many balls to be on the screen
+		if (ball.getRadius() > 4 && (budget != null || remaining < maxNumberOfBalls)) {
+			int count = budget == null ? 8 : budget.admit(balls, 8, remaining, maxNumberOfBalls, ball, width, height);
+			int first = balls.size();
+			ball.explodeInto(balls, random, count);
+			for (int i = first; i < balls.size(); i++) {
+				initBall(balls.get(i));
+			}
+			ballsCreated += balls.size() - first;
+		}
+		ballsExploded++;
+		// the exploded ball is recycled into the fragments of later explosions
+		if (inWorld)
+			balls.recycle(ball);
+	}
+
+	/**
+	 * Create a new ball of size 32 and adds it to the simulation
+	 * The color will be random
+	 * The ball is centrally located on the lower part of the area
+	 * The speed will be random in both x and y direction
+	 */
+	void newBall() {
+		if (budget != null && budget.admit(balls, 1, balls.getLiveCount(), maxNumberOfBalls, null, width, height) == 0)
+			return;
+		newBall(width / 2, height - 32, 32);
+	}
+
+	/**
+	 * Creates a new ball and adds it to the simulation
+	 * The speed will be random in both x and y direction
+	 * The color will be random
+	 *
+	 * @param x    - x position of the ball
+	 * @param y    - y position of the ball
+	 * @param size - radius of the ball
+	 */
+	private void newBall(double x, double y, double size) {
+		SplittableRandom random = this.random.current();
+		Paint paint = getRandomColor(random);
+		Ball b = balls.newBall(paint, size);
+		b.moveTo(x, y);
+		b.setSpeed((128 / size) * (random.nextDouble() - 0.5), -(256 / size) * random.nextDouble() - 5);
+		initBall(b);
+		ballsCreated++;
+	}
+
+	/**
+	 * Returns a random color
+	 *
+	 * @param random - the stream of the calling thread
+	 * @return
+	 */
+	private Paint getRandomColor(SplittableRandom random) {
+		return colors[random.nextInt(NUMBER_OF_COLORS)];
+	}
+
+	/**
+	 * Creates the palette of ball colors.
+	 * The hues are spread evenly around red, so that the palette of the
+	 * {@link BallWorld} stays small no matter how many balls are created.
+	 * Color index i of every simulation is color i of this palette.
+	 *
+	 * @return
+	 */
+	static Paint[] createColors() {
+		Paint[] colors = new Paint[NUMBER_OF_COLORS];
+		for (int i = 0; i < NUMBER_OF_COLORS; i++) {
+			double hueShift = 64 * (i + 0.5) / NUMBER_OF_COLORS - 32.0;
+			Color color = Color.RED.deriveColor(hueShift, 1.0, 1.0, .7);
+			Color white = color.deriveColor(0.0, .33, 3.0, 2.0);
+			colors[i] = new RadialGradient(0.0, 0.0, 0.3, 0.3, .6, true, CycleMethod.NO_CYCLE, new Stop(0.0, white),
+					new Stop(1.0, color));
+		}
+		return colors;
+	}
+
+	/**
+	 * Moves all balls one step forward
+	 * Generates new balls at regular intervals
+	 */
+	public void step() {
+		// balls are moved in parallel, but explosions and new balls are handled
+		// afterwards on this thread in slot order, so the outcome is the same
+		// for every parallelism
+		if (metrics != null)
+			metrics.beginStep();
+		checkExplosions();
+		if (budget != null)
+			budget.beginStep();
+		balls.beginStep();
+		if (pool != null)
+			balls.move(pool, parallelism);
+		else
+			balls.move();
+		endPhase(SimulationMetrics.Phase.INTEGRATE);
+		if (collisions != null)
+			collisions.collide(balls);
+		endPhase(SimulationMetrics.Phase.COLLIDE);
+
+		// balls explode when they have lived their lifetime, in slot order
+		// exploding balls keep their slots until the end of the step and their
+		// fragments are added at the end
+		moved = true;
+		int due = explosions.advance();
+		int count = 0;
+		for (int i = 0; i < due; i++) {
+			int slot = explosions.getDue(i);
+			if (balls.getSteps(slot) < getLifetime(balls.getGeneration(slot))) {
+				scheduleExplosion(slot);
+				continue;
+			}
+			if (count == exploding.length)
+				exploding = Arrays.copyOf(exploding, 2 * count);
+			exploding[count++] = slot;
+		}
+		Arrays.sort(exploding, 0, count);
+		for (int i = 0; i < count; i++) {
+			// a ball may have been evicted to make room for fragments
+			Ball ball = balls.get(exploding[i]);
+			if (ball != null)
+				addExplosion(ball);
+		}
+		endPhase(SimulationMetrics.Phase.EXPLODE);
+		// every 16th step (by default) a new ball is added
+		if (stepCount % spawnInterval == 0) {
+			newBall();
+		}
+		balls.endStep();
+		endPhase(SimulationMetrics.Phase.SPAWN);
+
+		moved = false;
+		stepCount++;
+		if (metrics != null)
+			metrics.endStep(stepCount, balls.getLiveCount(), ballsCreated, ballsExploded);
+	}
+
+	private void endPhase(SimulationMetrics.Phase phase) {
+		if (metrics != null)
+			metrics.endPhase(phase);
+	}
+}
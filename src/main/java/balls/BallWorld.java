@@ -0,0 +1,987 @@
+package balls;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javafx.scene.paint.Paint;
+
+/**
+ * A store for many balls kept as a structure of arrays.
+ * Every property of a ball (position, speed, acceleration, limits, bounce
+ * factor, radius, step counter and color) lives in its own primitive array,
+ * and a ball is identified by its slot index in these arrays.
+ * {@link Ball} objects are handles that read and write one such slot.
+ * Every ball also gets an id when it is created, which stays the same when
+ * the ball is moved to another slot.
+ *
+ * Missing limits are stored as negative/positive infinity, which makes the
+ * bounce checks in {@link Motion} hold without separate flags.
+ * Colors are stored as an index into a palette of distinct {@link Paint}s.
+ *
+ * Removing a ball moves the ball in the last slot into its place, so the
+ * order of the balls is not kept. Between {@link #beginStep()} and
+ * {@link #endStep()} removals are only marked, and the slots are freed at the
+ * end of the step. This makes it safe to remove balls while looping over the
+ * slots, and new balls are always added after the existing ones.
+ *
+ * With sleep turned on, see {@link #setSleepEnabled(boolean)}, balls that
+ * have stayed in about the same place with about no speed for a while, like
+ * balls resting on a floor, are put to sleep. Sleeping balls keep counting
+ * steps but are not moved, and do not collide with each other. They wake up
+ * when their speed, position or acceleration is set through {@link Ball}, or
+ * when an awake ball runs into them.
+ */
+public class BallWorld {
+
+	private int size = 0;
+	private Ball[] handles;
+	/** Handles of recycled balls, reused by new balls */
+	private Ball[] freeHandles = new Ball[16];
+	private int freeCount = 0;
+	private double[] x;
+	private double[] y;
+	private double[] speedX;
+	private double[] speedY;
+	private double[] accelerationX;
+	private double[] accelerationY;
+	private double[] lowerLimitX;
+	private double[] upperLimitX;
+	private double[] lowerLimitY;
+	private double[] upperLimitY;
+	private double[] bounceFactorX;
+	private double[] bounceFactorY;
+	private double[] radius;
+	private int[] steps;
+	private int[] colorIndex;
+	private int[] ids;
+	/** Number of explosions each ball came from, 0 for a ball that is no fragment */
+	private int[] generations;
+	/** Id of the next ball created in this world */
+	private int nextId = 0;
+	/**
+	 * Step of the simulation that the position and speed of each ball belong
+	 * to, for balls that are moved lazily by a {@link KineticSimulation}
+	 */
+	private int[] times;
+	/** Number of steps each ball has stayed still, asleep from {@link #sleepSteps} on */
+	private int[] stillSteps;
+	/** Where each ball was when it last moved more than {@link #sleepDistance} */
+	private double[] restX;
+	private double[] restY;
+
+	/** Default number of still steps before a ball falls asleep */
+	public static final int DEFAULT_SLEEP_STEPS = 30;
+	/** Default distance a ball may move and still be still */
+	public static final double DEFAULT_SLEEP_DISTANCE = 0.25;
+	/** Default speed a ball may have and still be still */
+	public static final double DEFAULT_SLEEP_SPEED = 0.25;
+
+	private boolean sleepEnabled = false;
+	private int sleepSteps = DEFAULT_SLEEP_STEPS;
+	private double sleepDistance = DEFAULT_SLEEP_DISTANCE;
+	private double sleepSpeed = DEFAULT_SLEEP_SPEED;
+
+	/** Whether removals are deferred to {@link #endStep()} */
+	private boolean inStep = false;
+	/** Slots marked for removal at the end of the step */
+	private boolean[] removed;
+	private int removedCount = 0;
+	private int firstRemoved;
+	private int lastRemoved;
+
+	/**
+	 * Whether {@link #move()} can use {@link VectorIntegrator}, which needs the
+	 * JVM to be started with {@code --add-modules jdk.incubator.vector}
+	 */
+	private static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+	/** Smallest number of balls worth moving as a separate task */
+	private static final int MIN_CHUNK_SIZE = 4096;
+
+	/** Distinct colors used by balls in this world */
+	private List<Paint> palette = new ArrayList<>();
+	private Map<Paint, Integer> paletteIndex = new HashMap<>();
+
+	/**
+	 * Creates an empty world
+	 */
+	public BallWorld() {
+		this(16);
+	}
+
+	/**
+	 * Creates an empty world with room for the given number of balls before
+	 * the arrays have to grow.
+	 *
+	 * @param capacity - initial capacity
+	 */
+	public BallWorld(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive");
+		handles = new Ball[capacity];
+		x = new double[capacity];
+		y = new double[capacity];
+		speedX = new double[capacity];
+		speedY = new double[capacity];
+		accelerationX = new double[capacity];
+		accelerationY = new double[capacity];
+		lowerLimitX = new double[capacity];
+		upperLimitX = new double[capacity];
+		lowerLimitY = new double[capacity];
+		upperLimitY = new double[capacity];
+		bounceFactorX = new double[capacity];
+		bounceFactorY = new double[capacity];
+		radius = new double[capacity];
+		steps = new int[capacity];
+		colorIndex = new int[capacity];
+		ids = new int[capacity];
+		generations = new int[capacity];
+		times = new int[capacity];
+		stillSteps = new int[capacity];
+		restX = new double[capacity];
+		restY = new double[capacity];
+		removed = new boolean[capacity];
+	}
+
+	/**
+	 * @return Number of balls in this world
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return Number of balls in this world that are not marked for removal
+	 */
+	public int getLiveCount() {
+		return size - removedCount;
+	}
+
+	/**
+	 * Returns the handle for the ball in the given slot.
+	 * During a step this is null for slots marked for removal.
+	 *
+	 * @param slot
+	 * @return the ball
+	 */
+	public Ball get(int slot) {
+		checkSlot(slot);
+		return handles[slot];
+	}
+
+	/**
+	 * Creates a new ball at position and speed (0,0) in this world
+	 *
+	 * @param color  - the color of the ball
+	 * @param radius - the radius of the ball
+	 * @return a handle to the new ball
+	 */
+	public Ball newBall(Paint color, double radius) {
+		if (freeCount == 0)
+			return new Ball(this, color, radius);
+		return newBall(colorIndexOf(color), radius);
+	}
+
+	/**
+	 * Creates a new ball with a color from the palette, reusing a recycled
+	 * handle if there is one.
+	 *
+	 * @param colorIndex - palette index of the color of the ball
+	 * @param radius     - the radius of the ball
+	 * @return a handle to the new ball
+	 */
+	Ball newBall(int colorIndex, double radius) {
+		if (freeCount == 0)
+			return new Ball(this, palette.get(colorIndex), radius);
+		Ball ball = freeHandles[--freeCount];
+		freeHandles[freeCount] = null;
+		create(ball, colorIndex, radius);
+		return ball;
+	}
+
+	/**
+	 * Stores a new ball in this world and binds the handle to its slot
+	 */
+	void create(Ball ball, Paint color, double radius) {
+		create(ball, colorIndexOf(color), radius);
+	}
+
+	private void create(Ball ball, int colorIndex, double radius) {
+		if (radius < 0)
+			throw new IllegalArgumentException("Radius should not be negative");
+		int slot = allocate();
+		handles[slot] = ball;
+		this.radius[slot] = radius;
+		this.colorIndex[slot] = colorIndex;
+		ball.bind(this, slot);
+	}
+
+	/**
+	 * Moves a ball into this world.
+	 * The state of the ball is copied into a new slot, the ball is removed from
+	 * the world it was in before, and the handle is updated to point to the new
+	 * slot.
+	 *
+	 * @param ball
+	 */
+	public void add(Ball ball) {
+		BallWorld from = ball.getWorld();
+		if (from == this)
+			throw new IllegalArgumentException("Ball is already in this world");
+		int src = ball.getSlot();
+		int slot = allocate();
+		copySlot(from, src, slot);
+		from.removeSlot(src);
+		handles[slot] = ball;
+		ball.bind(this, slot);
+	}
+
+	/**
+	 * Removes a ball from this world.
+	 * The removed ball keeps its state in a world of its own.
+	 *
+	 * @param ball
+	 * @return true if the ball was in this world
+	 */
+	public boolean remove(Ball ball) {
+		if (ball.getWorld() != this)
+			return false;
+		new BallWorld(1).add(ball);
+		return true;
+	}
+
+	/**
+	 * Removes a ball from this world and keeps its handle for reuse by a later
+	 * {@link #newBall(Paint, double)}. Unlike {@link #remove(Ball)} this does
+	 * not allocate, but the handle must not be used after this call.
+	 *
+	 * @param ball
+	 */
+	public void recycle(Ball ball) {
+		if (ball.getWorld() != this)
+			throw new IllegalArgumentException("Ball is not in this world");
+		removeSlot(ball.getSlot());
+		ball.bind(null, -1);
+		if (freeCount == freeHandles.length)
+			freeHandles = Arrays.copyOf(freeHandles, freeCount * 2);
+		freeHandles[freeCount++] = ball;
+	}
+
+	/**
+	 * Starts a step. Until {@link #endStep()} is called, removed balls keep
+	 * their slots and are only marked for removal.
+	 */
+	public void beginStep() {
+		inStep = true;
+	}
+
+	/**
+	 * @return true between {@link #beginStep()} and {@link #endStep()}
+	 */
+	boolean isInStep() {
+		return inStep;
+	}
+
+	/**
+	 * Ends a step and frees the slots of the balls removed during the step
+	 */
+	public void endStep() {
+		inStep = false;
+		if (removedCount == 0)
+			return;
+		// going from the back means the last slot is never a marked one
+		for (int i = lastRemoved; i >= firstRemoved; i--) {
+			if (removed[i]) {
+				removed[i] = false;
+				swapRemove(i);
+			}
+		}
+		removedCount = 0;
+	}
+
+	/**
+	 * Moves every ball in this world one step forward
+	 */
+	public void move() {
+		move(0, size);
+	}
+
+	/**
+	 * Moves every ball in this world one step forward, split into at most
+	 * {@code chunks} tasks running on the given pool.
+	 * Balls do not affect each other while moving, so the result is exactly
+	 * the same as {@link #move()} no matter how the balls are split.
+	 *
+	 * @param pool   - the pool to run the tasks on
+	 * @param chunks - the number of tasks to split the balls into
+	 */
+	public void move(ForkJoinPool pool, int chunks) {
+		int n = size;
+		int chunkSize = Math.max(MIN_CHUNK_SIZE, (n + chunks - 1) / chunks);
+		if (chunkSize >= n) {
+			move(0, n);
+			return;
+		}
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (int from = 0; from < n; from += chunkSize) {
+			int start = from;
+			int end = Math.min(n, from + chunkSize);
+			tasks.add(ForkJoinTask.adapt(() -> move(start, end)));
+		}
+		pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+	}
+
+	/**
+	 * Moves the balls in slot {@code from} up to (not including) {@code to} one
+	 * step forward
+	 */
+	private void move(int from, int to) {
+		if (!sleepEnabled) {
+			moveAwake(from, to);
+			return;
+		}
+		// sleeping balls only count the step, the runs of awake balls between
+		// them are moved as usual
+		int i = from;
+		while (i < to) {
+			if (stillSteps[i] >= sleepSteps) {
+				steps[i]++;
+				i++;
+				continue;
+			}
+			int end = i + 1;
+			while (end < to && stillSteps[end] < sleepSteps) {
+				end++;
+			}
+			moveAwake(i, end);
+			for (int k = i; k < end; k++) {
+				updateSleep(k);
+			}
+			i = end;
+		}
+	}
+
+	private void moveAwake(int from, int to) {
+		if (!VECTORIZED) {
+			for (int i = from; i < to; i++) {
+				move(i);
+			}
+			return;
+		}
+		for (int i = from; i < to; i++) {
+			steps[i]++;
+		}
+		VectorIntegrator.move(x, speedX, accelerationX, lowerLimitX, upperLimitX, bounceFactorX, from, to);
+		VectorIntegrator.move(y, speedY, accelerationY, lowerLimitY, upperLimitY, bounceFactorY, from, to);
+	}
+
+	/**
+	 * Counts a still step for a ball that has just moved, or starts counting
+	 * again from where it is now. A ball that has been still long enough is
+	 * put to sleep, without speed.
+	 */
+	private void updateSleep(int slot) {
+		if (Math.abs(x[slot] - restX[slot]) > sleepDistance || Math.abs(y[slot] - restY[slot]) > sleepDistance
+				|| Math.abs(speedX[slot]) > sleepSpeed || Math.abs(speedY[slot]) > sleepSpeed) {
+			stillSteps[slot] = 0;
+			restX[slot] = x[slot];
+			restY[slot] = y[slot];
+			return;
+		}
+		if (++stillSteps[slot] == sleepSteps) {
+			speedX[slot] = 0;
+			speedY[slot] = 0;
+		}
+	}
+
+	/**
+	 * Moves the ball in the given slot one step forward.
+	 *
+	 * @param slot
+	 */
+	void move(int slot) {
+		steps[slot]++;
+		moveAxis(x, speedX, accelerationX, lowerLimitX, upperLimitX, bounceFactorX, slot);
+		moveAxis(y, speedY, accelerationY, lowerLimitY, upperLimitY, bounceFactorY, slot);
+	}
+
+	/**
+	 * Moves the ball in the given slot the given number of steps forward, the
+	 * same as calling {@link #move(int)} that many times up to rounding, see
+	 * {@link Motion#advance(long)}.
+	 *
+	 * @param slot
+	 * @param n    - number of steps, at least 0
+	 */
+	void advance(int slot, long n) {
+		if (n < 0)
+			throw new IllegalArgumentException("Number of steps must not be negative");
+		// wraps around like n increments would
+		steps[slot] += (int) n;
+		advanceAxis(x, speedX, accelerationX, lowerLimitX, upperLimitX, bounceFactorX, slot, n);
+		advanceAxis(y, speedY, accelerationY, lowerLimitY, upperLimitY, bounceFactorY, slot, n);
+	}
+
+	/**
+	 * Same as {@link Motion#advance(long)}, but for one axis of the ball in
+	 * slot {@code i}.
+	 */
+	static void advanceAxis(double[] position, double[] speed, double[] acceleration, double[] lowerLimit,
+			double[] upperLimit, double[] bounceFactor, int i, long n) {
+		double a = acceleration[i];
+		if (a == 0 && bounceFactor[i] <= 1) {
+			travelAxis(position, speed, lowerLimit, upperLimit, bounceFactor, i, n * speed[i]);
+			return;
+		}
+		// the state after a bounce that later bounces are compared with
+		double cyclePosition = Double.NaN;
+		double cycleSpeed = Double.NaN;
+		long cycleSteps = 0;
+		long power = 1;
+		long bounces = 0;
+		while (n > 0) {
+			double pos = position[i];
+			double s = speed[i];
+			long free = Math.min(n, Motion.firstCrossing(pos, s, a, lowerLimit[i], upperLimit[i]));
+			position[i] = Math.min(Math.max(Motion.position(pos, s, a, free), lowerLimit[i]), upperLimit[i]);
+			speed[i] = s + free * a;
+			n -= free;
+			if (n == 0)
+				break;
+			moveAxis(position, speed, acceleration, lowerLimit, upperLimit, bounceFactor, i);
+			n--;
+			if (position[i] == cyclePosition && speed[i] == cycleSpeed) {
+				n %= cycleSteps - n;
+				cyclePosition = Double.NaN;
+				power = Long.MAX_VALUE;
+			} else if (++bounces == power) {
+				cyclePosition = position[i];
+				cycleSpeed = speed[i];
+				cycleSteps = n;
+				power *= 2;
+				bounces = 0;
+			}
+		}
+	}
+
+	/**
+	 * Same as {@link Motion#move()}, but for one axis of the ball in slot
+	 * {@code i}.
+	 */
+	static void moveAxis(double[] position, double[] speed, double[] acceleration, double[] lowerLimit,
+			double[] upperLimit, double[] bounceFactor, int i) {
+		travelAxis(position, speed, lowerLimit, upperLimit, bounceFactor, i, speed[i]);
+		speed[i] += acceleration[i];
+
+		if (position[i] < lowerLimit[i] || position[i] > upperLimit[i])
+			throw new IllegalStateException("Motion has moved out of bounds.");
+	}
+
+	/**
+	 * Moves one axis of the ball in slot {@code i} the given distance,
+	 * bouncing at the limits. The speed is turned and scaled at every bounce
+	 * just like the distance left.
+	 */
+	private static void travelAxis(double[] position, double[] speed, double[] lowerLimit, double[] upperLimit,
+			double[] bounceFactor, int i, double distance) {
+		double pos = position[i];
+		double s = speed[i];
+		double lower = lowerLimit[i];
+		double upper = upperLimit[i];
+		if ((distance > 0 && pos + distance > upper) || (distance < 0 && pos + distance < lower)) {
+			double distanceToMove = distance;
+			double bounce = bounceFactor[i];
+			if (pos + distanceToMove > upper) {
+				distanceToMove -= upper - pos;
+				pos = upper;
+			} else {
+				distanceToMove += pos - lower;
+				pos = lower;
+			}
+			s *= -bounce;
+			distanceToMove *= -bounce;
+			if ((distanceToMove > 0 && pos + distanceToMove > upper)
+					|| (distanceToMove < 0 && pos + distanceToMove < lower)) {
+				double bounces = Motion.bounceCount(Math.abs(distanceToMove), upper - lower, bounce);
+				pos = Motion.positionAfterBounces(distanceToMove, lower, upper, bounce, bounces);
+				s *= Motion.speedFactorAfterBounces(bounce, bounces);
+			} else {
+				pos += distanceToMove;
+			}
+		} else {
+			pos += distance;
+		}
+		position[i] = pos;
+		speed[i] = s;
+	}
+
+	public boolean isSleepEnabled() {
+		return sleepEnabled;
+	}
+
+	/**
+	 * Turns putting still balls to sleep on or off. Turning it off wakes all
+	 * balls.
+	 *
+	 * @param enabled
+	 */
+	public void setSleepEnabled(boolean enabled) {
+		sleepEnabled = enabled;
+		if (!enabled)
+			Arrays.fill(stillSteps, 0, size, 0);
+	}
+
+	/**
+	 * Sets when a ball is still enough to fall asleep
+	 *
+	 * @param steps    - number of still steps before falling asleep
+	 * @param distance - largest distance from where the ball was when it
+	 *                 became still
+	 * @param speed    - largest speed along each axis
+	 */
+	public void setSleepThresholds(int steps, double distance, double speed) {
+		if (steps < 1)
+			throw new IllegalArgumentException("Steps must be positive");
+		if (!(distance >= 0 && speed >= 0))
+			throw new IllegalArgumentException("Thresholds must not be negative");
+		sleepSteps = steps;
+		sleepDistance = distance;
+		sleepSpeed = speed;
+	}
+
+	public int getSleepSteps() {
+		return sleepSteps;
+	}
+
+	public double getSleepDistance() {
+		return sleepDistance;
+	}
+
+	public double getSleepSpeed() {
+		return sleepSpeed;
+	}
+
+	/**
+	 * @param slot
+	 * @return true if the ball in the slot is asleep
+	 */
+	public boolean isAsleep(int slot) {
+		return sleepEnabled && stillSteps[slot] >= sleepSteps;
+	}
+
+	/**
+	 * @return number of balls asleep
+	 */
+	public int getSleepingCount() {
+		if (!sleepEnabled)
+			return 0;
+		int count = 0;
+		for (int slot = 0; slot < size; slot++) {
+			if (stillSteps[slot] >= sleepSteps)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Wakes a ball, and makes it count its still steps from the start
+	 *
+	 * @param slot
+	 */
+	void wake(int slot) {
+		if (!sleepEnabled)
+			return;
+		stillSteps[slot] = 0;
+		restX[slot] = x[slot];
+		restY[slot] = y[slot];
+	}
+
+	/**
+	 * Finds the palette index of a color, adding it to the palette if needed
+	 *
+	 * @param color
+	 * @return index of the color in the palette
+	 */
+	public int colorIndexOf(Paint color) {
+		Integer index = paletteIndex.get(color);
+		if (index == null) {
+			index = palette.size();
+			palette.add(color);
+			paletteIndex.put(color, index);
+		}
+		return index;
+	}
+
+	/**
+	 * @param colorIndex
+	 * @return the palette color with the given index
+	 */
+	public Paint getPaletteColor(int colorIndex) {
+		return palette.get(colorIndex);
+	}
+
+	/**
+	 * @return number of distinct colors in the palette
+	 */
+	public int getPaletteSize() {
+		return palette.size();
+	}
+
+	public double getX(int slot) {
+		return x[slot];
+	}
+
+	public double getY(int slot) {
+		return y[slot];
+	}
+
+	public double getSpeedX(int slot) {
+		return speedX[slot];
+	}
+
+	public double getSpeedY(int slot) {
+		return speedY[slot];
+	}
+
+	public double getAccelerationX(int slot) {
+		return accelerationX[slot];
+	}
+
+	public double getAccelerationY(int slot) {
+		return accelerationY[slot];
+	}
+
+	public double getLowerLimitX(int slot) {
+		return lowerLimitX[slot];
+	}
+
+	public double getUpperLimitX(int slot) {
+		return upperLimitX[slot];
+	}
+
+	public double getLowerLimitY(int slot) {
+		return lowerLimitY[slot];
+	}
+
+	public double getUpperLimitY(int slot) {
+		return upperLimitY[slot];
+	}
+
+	public double getBounceFactorX(int slot) {
+		return bounceFactorX[slot];
+	}
+
+	public double getBounceFactorY(int slot) {
+		return bounceFactorY[slot];
+	}
+
+	public double getRadius(int slot) {
+		return radius[slot];
+	}
+
+	public int getSteps(int slot) {
+		return steps[slot];
+	}
+
+	public int getColorIndex(int slot) {
+		return colorIndex[slot];
+	}
+
+	public Paint getColor(int slot) {
+		return palette.get(colorIndex[slot]);
+	}
+
+	/**
+	 * Returns the id of the ball in a slot. Ids are given to balls in the
+	 * order they are created or added, and are not reused, so a ball can be
+	 * followed from step to step even when it changes slot.
+	 *
+	 * @param slot
+	 * @return the id of the ball
+	 */
+	public int getId(int slot) {
+		return ids[slot];
+	}
+
+	/**
+	 * @param slot
+	 * @return number of explosions the ball came from, 0 for a ball that is
+	 *         no fragment
+	 */
+	public int getGeneration(int slot) {
+		return generations[slot];
+	}
+
+	void setGeneration(int slot, int generation) {
+		generations[slot] = generation;
+	}
+
+	/**
+	 * @return the id the next ball created in this world gets
+	 */
+	int getNextId() {
+		return nextId;
+	}
+
+	int getTime(int slot) {
+		return times[slot];
+	}
+
+	void setTime(int slot, int time) {
+		times[slot] = time;
+	}
+
+	void setPosition(int slot, double newX, double newY) {
+		x[slot] = newX;
+		y[slot] = newY;
+	}
+
+	void setSpeed(int slot, double xSpeed, double ySpeed) {
+		speedX[slot] = xSpeed;
+		speedY[slot] = ySpeed;
+	}
+
+	void setAcceleration(int slot, double xAcceleration, double yAcceleration) {
+		accelerationX[slot] = xAcceleration;
+		accelerationY[slot] = yAcceleration;
+	}
+
+	void setLowerLimitX(int slot, double limit) {
+		lowerLimitX[slot] = limit;
+	}
+
+	void setUpperLimitX(int slot, double limit) {
+		upperLimitX[slot] = limit;
+	}
+
+	void setLowerLimitY(int slot, double limit) {
+		lowerLimitY[slot] = limit;
+	}
+
+	void setUpperLimitY(int slot, double limit) {
+		upperLimitY[slot] = limit;
+	}
+
+	void setSteps(int slot, int steps) {
+		this.steps[slot] = steps;
+	}
+
+	void setBounceFactor(int slot, double xBounceFactor, double yBounceFactor) {
+		bounceFactorX[slot] = xBounceFactor;
+		bounceFactorY[slot] = yBounceFactor;
+	}
+
+	/**
+	 * @return number of bytes {@link #writeTo(ByteBuffer)} writes
+	 */
+	long checkpointSize() {
+		long bytes = 16;
+		for (double[] column : doubleColumns()) {
+			bytes += Checkpoint.columnSize(column, size);
+		}
+		for (int[] column : intColumns()) {
+			bytes += Checkpoint.columnSize(column, size);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Writes every ball to a buffer, see {@link Checkpoint}. Must be called
+	 * between steps.
+	 *
+	 * @param buffer
+	 */
+	void writeTo(ByteBuffer buffer) {
+		if (inStep)
+			throw new IllegalStateException("Can not save a world during a step");
+		buffer.putInt(size);
+		buffer.putInt(nextId);
+		buffer.putInt(palette.size());
+		buffer.putInt(0);
+		for (double[] column : doubleColumns()) {
+			Checkpoint.putColumn(buffer, column, size);
+		}
+		for (int[] column : intColumns()) {
+			Checkpoint.putColumn(buffer, column, size);
+		}
+	}
+
+	/**
+	 * Reads a world written by {@link #writeTo(ByteBuffer)}
+	 *
+	 * @param buffer
+	 * @param palette - the colors of the saved world, in palette order
+	 * @return the world
+	 */
+	static BallWorld readFrom(ByteBuffer buffer, Paint[] palette) {
+		int n = buffer.getInt();
+		int nextId = buffer.getInt();
+		int paletteSize = buffer.getInt();
+		buffer.getInt();
+		if (n < 0 || paletteSize > palette.length)
+			throw new IllegalArgumentException("World does not fit the palette");
+		BallWorld world = new BallWorld(Math.max(1, n));
+		for (Paint color : palette) {
+			world.colorIndexOf(color);
+		}
+		for (double[] column : world.doubleColumns()) {
+			Checkpoint.getColumn(buffer, column, n);
+		}
+		for (int[] column : world.intColumns()) {
+			Checkpoint.getColumn(buffer, column, n);
+		}
+		world.size = n;
+		world.nextId = nextId;
+		for (int slot = 0; slot < n; slot++) {
+			world.handles[slot] = new Ball(world, slot);
+		}
+		return world;
+	}
+
+	private double[][] doubleColumns() {
+		return new double[][] { x, y, speedX, speedY, accelerationX, accelerationY, lowerLimitX, upperLimitX,
+				lowerLimitY, upperLimitY, bounceFactorX, bounceFactorY, radius, restX, restY };
+	}
+
+	private int[][] intColumns() {
+		return new int[][] { steps, colorIndex, ids, generations, times, stillSteps };
+	}
+
+	/**
+	 * Reserves a slot at the end of the arrays with default values
+	 */
+	private int allocate() {
+		if (size == handles.length)
+			grow();
+		int slot = size++;
+		x[slot] = 0;
+		y[slot] = 0;
+		speedX[slot] = 0;
+		speedY[slot] = 0;
+		accelerationX[slot] = 0;
+		accelerationY[slot] = 0;
+		lowerLimitX[slot] = Double.NEGATIVE_INFINITY;
+		upperLimitX[slot] = Double.POSITIVE_INFINITY;
+		lowerLimitY[slot] = Double.NEGATIVE_INFINITY;
+		upperLimitY[slot] = Double.POSITIVE_INFINITY;
+		bounceFactorX[slot] = 1;
+		bounceFactorY[slot] = 1;
+		radius[slot] = 0;
+		steps[slot] = 0;
+		colorIndex[slot] = 0;
+		ids[slot] = nextId++;
+		generations[slot] = 0;
+		times[slot] = 0;
+		stillSteps[slot] = 0;
+		restX[slot] = 0;
+		restY[slot] = 0;
+		return slot;
+	}
+
+	private void grow() {
+		int capacity = handles.length * 2;
+		handles = Arrays.copyOf(handles, capacity);
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		speedX = Arrays.copyOf(speedX, capacity);
+		speedY = Arrays.copyOf(speedY, capacity);
+		accelerationX = Arrays.copyOf(accelerationX, capacity);
+		accelerationY = Arrays.copyOf(accelerationY, capacity);
+		lowerLimitX = Arrays.copyOf(lowerLimitX, capacity);
+		upperLimitX = Arrays.copyOf(upperLimitX, capacity);
+		lowerLimitY = Arrays.copyOf(lowerLimitY, capacity);
+		upperLimitY = Arrays.copyOf(upperLimitY, capacity);
+		bounceFactorX = Arrays.copyOf(bounceFactorX, capacity);
+		bounceFactorY = Arrays.copyOf(bounceFactorY, capacity);
+		radius = Arrays.copyOf(radius, capacity);
+		steps = Arrays.copyOf(steps, capacity);
+		colorIndex = Arrays.copyOf(colorIndex, capacity);
+		ids = Arrays.copyOf(ids, capacity);
+		generations = Arrays.copyOf(generations, capacity);
+		times = Arrays.copyOf(times, capacity);
+		stillSteps = Arrays.copyOf(stillSteps, capacity);
+		restX = Arrays.copyOf(restX, capacity);
+		restY = Arrays.copyOf(restY, capacity);
+		removed = Arrays.copyOf(removed, capacity);
+	}
+
+	/**
+	 * Copies the state of slot {@code src} in world {@code from} into slot
+	 * {@code dst} of this world. A ball from another world keeps the id of
+	 * the slot it is copied into.
+	 */
+	private void copySlot(BallWorld from, int src, int dst) {
+		x[dst] = from.x[src];
+		y[dst] = from.y[src];
+		speedX[dst] = from.speedX[src];
+		speedY[dst] = from.speedY[src];
+		accelerationX[dst] = from.accelerationX[src];
+		accelerationY[dst] = from.accelerationY[src];
+		lowerLimitX[dst] = from.lowerLimitX[src];
+		upperLimitX[dst] = from.upperLimitX[src];
+		lowerLimitY[dst] = from.lowerLimitY[src];
+		upperLimitY[dst] = from.upperLimitY[src];
+		bounceFactorX[dst] = from.bounceFactorX[src];
+		bounceFactorY[dst] = from.bounceFactorY[src];
+		radius[dst] = from.radius[src];
+		steps[dst] = from.steps[src];
+		generations[dst] = from.generations[src];
+		times[dst] = from.times[src];
+		stillSteps[dst] = from.stillSteps[src];
+		restX[dst] = from.restX[src];
+		restY[dst] = from.restY[src];
+		if (from == this) {
+			colorIndex[dst] = colorIndex[src];
+			ids[dst] = ids[src];
+		} else {
+			colorIndex[dst] = colorIndexOf(from.getColor(src));
+		}
+	}
+
+	/**
+	 * Removes the given slot, or marks it for removal during a step
+	 */
+	private void removeSlot(int slot) {
+		checkSlot(slot);
+		if (!inStep) {
+			swapRemove(slot);
+			return;
+		}
+		if (removed[slot])
+			return;
+		removed[slot] = true;
+		handles[slot] = null;
+		if (removedCount == 0) {
+			firstRemoved = slot;
+			lastRemoved = slot;
+		} else {
+			firstRemoved = Math.min(firstRemoved, slot);
+			lastRemoved = Math.max(lastRemoved, slot);
+		}
+		removedCount++;
+	}
+
+	/**
+	 * Removes the given slot by moving the last slot into its place
+	 */
+	private void swapRemove(int slot) {
+		int last = size - 1;
+		if (slot != last) {
+			copySlot(this, last, slot);
+			handles[slot] = handles[last];
+			handles[slot].bind(this, slot);
+		}
+		handles[last] = null;
+		size--;
+	}
+
+	private void checkSlot(int slot) {
+		if (slot < 0 || slot >= size)
+			throw new IndexOutOfBoundsException("Slot " + slot + " out of bounds for size " + size);
+	}
+}
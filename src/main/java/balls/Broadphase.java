@@ -0,0 +1,42 @@
+package balls;
+
+/**
+ * Finds the pairs of balls that may touch, so that only those have to be
+ * checked by a {@link CollisionSystem}.
+ *
+ * Implementations may keep state between calls to make use of balls moving
+ * only a little from one step to the next, but must give the right pairs for
+ * any world, also when balls have been added, removed or moved to other slots.
+ */
+public interface Broadphase {
+
+	/**
+	 * Calls the handler once for every pair of balls whose bounding boxes
+	 * overlap, with the lowest slot first
+	 *
+	 * @param world
+	 * @param handler
+	 */
+	void findPairs(BallWorld world, PairHandler handler);
+
+	/**
+	 * Creates a broadphase from its name, so it can be chosen on the command
+	 * line
+	 *
+	 * @param name - "grid" for {@link UniformGrid}, "sap" for
+	 *             {@link SweepAndPrune} or "tree" for {@link DynamicAabbTree}
+	 * @return a new broadphase
+	 */
+	static Broadphase forName(String name) {
+		switch (name) {
+		case "grid":
+			return new UniformGrid();
+		case "sap":
+			return new SweepAndPrune();
+		case "tree":
+			return new DynamicAabbTree();
+		default:
+			throw new IllegalArgumentException("Unknown broadphase: " + name);
+		}
+	}
+}
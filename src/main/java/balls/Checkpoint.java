@@ -0,0 +1,188 @@
+package balls;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Saves the complete state of a {@link BallSimulation} to a file and brings
+ * it back, so that a large world does not have to be built again by
+ * stepping.
+ *
+ * A checkpoint has every property of every ball, limits and bounce factors
+ * included, the step counters, the size of the area, the spawn interval and
+ * cap, the ball counters and the state of the random source. Settings that
+ * are not state, like parallelism, collisions, lifetimes and metrics, are
+ * not saved.
+ *
+ * The balls are stored column by column like in {@link BallWorld}, in the
+ * byte order of the machine, and read back with bulk copies from a memory
+ * mapped file. A column where all balls have the same value, like the
+ * acceleration or a missing limit, is stored as that one value.
+ */
+public final class Checkpoint {
+
+	private static final long MAGIC = 0x42414c4c434b5031L; // BALLCKP1
+	private static final int HEADER_SIZE = 64;
+	private static final long FULL = 0;
+	private static final long CONSTANT = 1;
+
+	private Checkpoint() {
+	}
+
+	/**
+	 * Saves a simulation between steps. The random source of the simulation
+	 * is started over from a new seed, which is what is saved, so the
+	 * simulation goes on the same way after saving as after restoring.
+	 *
+	 * @param simulation
+	 * @param path       - the file, replaced if it exists
+	 * @throws IOException
+	 */
+	public static void save(BallSimulation simulation, Path path) throws IOException {
+		BallWorld world = simulation.getWorld();
+		long size = HEADER_SIZE + world.checkpointSize();
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalStateException("World is too large for a checkpoint");
+		long seed = simulation.getRandomSource().reseed();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.order(ByteOrder.nativeOrder());
+			buffer.putLong(MAGIC);
+			buffer.putInt(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 1 : 0);
+			buffer.putInt(simulation.getStepCount());
+			buffer.putDouble(simulation.getWidth());
+			buffer.putDouble(simulation.getHeight());
+			buffer.putInt(simulation.getMaxNumberOfBalls());
+			buffer.putInt(simulation.getSpawnInterval());
+			buffer.putLong(simulation.getBallsCreated());
+			buffer.putLong(simulation.getBallsExploded());
+			buffer.putLong(seed);
+			world.writeTo(buffer);
+			buffer.force();
+		}
+	}
+
+	/**
+	 * Replaces the state of a simulation with a saved one. The simulation
+	 * must use the same colors as the one that was saved, which is the case
+	 * for every {@link BallSimulation}.
+	 *
+	 * @param simulation
+	 * @param path
+	 * @throws IOException if the file can not be read or is not a checkpoint
+	 */
+	public static void restore(BallSimulation simulation, Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_SIZE || size > Integer.MAX_VALUE)
+				throw new IOException("Not a checkpoint: " + path);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			buffer.order(ByteOrder.nativeOrder());
+			long magic = buffer.getLong();
+			if (magic == Long.reverseBytes(MAGIC)) {
+				buffer.order(buffer.order() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+			} else if (magic != MAGIC) {
+				throw new IOException("Not a checkpoint: " + path);
+			}
+			buffer.getInt();
+			int stepCount = buffer.getInt();
+			double width = buffer.getDouble();
+			double height = buffer.getDouble();
+			int maxNumberOfBalls = buffer.getInt();
+			int spawnInterval = buffer.getInt();
+			long created = buffer.getLong();
+			long exploded = buffer.getLong();
+			long seed = buffer.getLong();
+			BallWorld world;
+			try {
+				world = BallWorld.readFrom(buffer, simulation.getColors());
+			} catch (RuntimeException e) {
+				throw new IOException("Broken checkpoint: " + path, e);
+			}
+
+			simulation.setSize(width, height);
+			simulation.setMaxNumberOfBalls(maxNumberOfBalls);
+			simulation.setSpawnInterval(spawnInterval);
+			simulation.restore(world, stepCount, created, exploded);
+			simulation.getRandomSource().setSeed(seed);
+		}
+	}
+
+	static long columnSize(double[] column, int n) {
+		return 8 + (isConstant(column, n) ? 8 : 8L * n);
+	}
+
+	static long columnSize(int[] column, int n) {
+		return 8 + (isConstant(column, n) ? 8 : align(4L * n));
+	}
+
+	static void putColumn(ByteBuffer buffer, double[] column, int n) {
+		if (isConstant(column, n)) {
+			buffer.putLong(CONSTANT);
+			buffer.putDouble(n > 0 ? column[0] : 0);
+			return;
+		}
+		buffer.putLong(FULL);
+		buffer.asDoubleBuffer().put(column, 0, n);
+		buffer.position(buffer.position() + 8 * n);
+	}
+
+	static void putColumn(ByteBuffer buffer, int[] column, int n) {
+		if (isConstant(column, n)) {
+			buffer.putLong(CONSTANT);
+			buffer.putLong(n > 0 ? column[0] : 0);
+			return;
+		}
+		buffer.putLong(FULL);
+		buffer.asIntBuffer().put(column, 0, n);
+		buffer.position(buffer.position() + (int) align(4L * n));
+	}
+
+	static void getColumn(ByteBuffer buffer, double[] column, int n) {
+		if (buffer.getLong() == CONSTANT) {
+			Arrays.fill(column, 0, n, buffer.getDouble());
+			return;
+		}
+		buffer.asDoubleBuffer().get(column, 0, n);
+		buffer.position(buffer.position() + 8 * n);
+	}
+
+	static void getColumn(ByteBuffer buffer, int[] column, int n) {
+		if (buffer.getLong() == CONSTANT) {
+			Arrays.fill(column, 0, n, (int) buffer.getLong());
+			return;
+		}
+		buffer.asIntBuffer().get(column, 0, n);
+		buffer.position(buffer.position() + (int) align(4L * n));
+	}
+
+	private static boolean isConstant(double[] column, int n) {
+		for (int i = 1; i < n; i++) {
+			if (Double.doubleToRawLongBits(column[i]) != Double.doubleToRawLongBits(column[0]))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean isConstant(int[] column, int n) {
+		for (int i = 1; i < n; i++) {
+			if (column[i] != column[0])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Rounds up to whole longs, so that all columns start 8 byte aligned
+	 */
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+}
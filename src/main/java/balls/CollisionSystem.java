@@ -0,0 +1,116 @@
+package balls;
+
+/**
+ * Makes balls bounce off each other.
+ *
+ * Candidate pairs are found with a {@link Broadphase}, a {@link UniformGrid}
+ * unless another one is given, so the cost grows about linearly with the
+ * number of balls. Touching balls that move towards
+ * each other get an elastic collision where the radius of a ball is used as
+ * its mass, and overlapping balls are pushed apart, without moving any ball
+ * past its limits.
+ *
+ * Two sleeping balls never collide. A ball running into a sleeping ball
+ * wakes it, unless it only rests lightly against it, see
+ * {@link BallWorld#setSleepEnabled(boolean)}.
+ */
+public class CollisionSystem implements PairHandler {
+
+	private final Broadphase broadphase;
+	private BallWorld world;
+	private int collisions;
+
+	/**
+	 * Creates a collision system that finds pairs with a {@link UniformGrid}
+	 */
+	public CollisionSystem() {
+		this(new UniformGrid());
+	}
+
+	/**
+	 * Creates a collision system that finds pairs with the given broadphase
+	 *
+	 * @param broadphase
+	 */
+	public CollisionSystem(Broadphase broadphase) {
+		this.broadphase = broadphase;
+	}
+
+	public Broadphase getBroadphase() {
+		return broadphase;
+	}
+
+	/**
+	 * Lets all touching balls in the world collide
+	 *
+	 * @param world
+	 * @return number of pairs of balls that collided
+	 */
+	public int collide(BallWorld world) {
+		this.world = world;
+		collisions = 0;
+		broadphase.findPairs(world, this);
+		this.world = null;
+		return collisions;
+	}
+
+	@Override
+	public void pair(int a, int b) {
+		boolean asleepA = world.isAsleep(a);
+		boolean asleepB = world.isAsleep(b);
+		if (asleepA && asleepB)
+			return;
+		double ra = world.getRadius(a);
+		double rb = world.getRadius(b);
+		double dx = world.getX(b) - world.getX(a);
+		double dy = world.getY(b) - world.getY(a);
+		double reach = ra + rb;
+		double distanceSquared = dx * dx + dy * dy;
+		if (distanceSquared >= reach * reach)
+			return;
+
+		double distance = Math.sqrt(distanceSquared);
+		// normal from a to b, any direction will do for balls on top of each other
+		double nx = 1;
+		double ny = 0;
+		if (distance > 0) {
+			nx = dx / distance;
+			ny = dy / distance;
+		}
+		double ma = ra;
+		double mb = rb;
+		double total = ma + mb;
+		if (total == 0)
+			return;
+		double overlap = reach - distance;
+		double approach = (world.getSpeedX(a) - world.getSpeedX(b)) * nx
+				+ (world.getSpeedY(a) - world.getSpeedY(b)) * ny;
+		if (asleepA || asleepB) {
+			// a ball settling on a sleeping ball does not wake it
+			if (overlap <= world.getSleepDistance() && approach <= world.getSleepSpeed())
+				return;
+			world.wake(asleepA ? a : b);
+		}
+		collisions++;
+
+		// push the balls apart, the lighter ball moves more
+		double pushA = overlap * mb / total;
+		double pushB = overlap * ma / total;
+		moveWithinLimits(a, world.getX(a) - nx * pushA, world.getY(a) - ny * pushA);
+		moveWithinLimits(b, world.getX(b) + nx * pushB, world.getY(b) + ny * pushB);
+
+		// only balls moving towards each other bounce
+		if (approach <= 0)
+			return;
+		double impulseA = 2 * mb / total * approach;
+		double impulseB = 2 * ma / total * approach;
+		world.setSpeed(a, world.getSpeedX(a) - impulseA * nx, world.getSpeedY(a) - impulseA * ny);
+		world.setSpeed(b, world.getSpeedX(b) + impulseB * nx, world.getSpeedY(b) + impulseB * ny);
+	}
+
+	private void moveWithinLimits(int slot, double x, double y) {
+		x = Math.min(Math.max(x, world.getLowerLimitX(slot)), world.getUpperLimitX(slot));
+		y = Math.min(Math.max(y, world.getLowerLimitY(slot)), world.getUpperLimitY(slot));
+		world.setPosition(slot, x, y);
+	}
+}
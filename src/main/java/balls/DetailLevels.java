@@ -0,0 +1,163 @@
+package balls;
+
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+import javafx.scene.paint.RadialGradient;
+import javafx.scene.paint.Stop;
+
+/**
+ * Decides how much detail a ball is drawn with, from its radius.
+ *
+ * Most balls are small fragments, where a gradient can hardly be seen but
+ * costs as much to fill as for a large ball. Balls up to
+ * {@link #getPointRadius()} are drawn as a single pixel, balls up to
+ * {@link #getFlatRadius()} as a disc in one flat color, balls up to
+ * {@link #getSpriteRadius()} from a pre-rendered sprite, and larger balls
+ * with the full gradient. The flat color of a gradient is its average over
+ * the ball, see {@link #flatColor(Paint)}, so that a small ball looks about
+ * as bright as before.
+ */
+public class DetailLevels {
+
+	/** How a ball is drawn */
+	public enum Level {
+		/** A single pixel in the flat color */
+		POINT,
+		/** A disc in the flat color */
+		FLAT,
+		/** A copy of a pre-rendered ball */
+		SPRITE,
+		/** The full gradient */
+		GRADIENT
+	}
+
+	/** Every ball drawn with the full gradient */
+	public static final DetailLevels FULL = new DetailLevels(0, 0, 0);
+	/** Levels that keep the look of the demo */
+	public static final DetailLevels DEFAULT = new DetailLevels(1, 4, SpriteAtlas.MAX_RADIUS);
+
+	/** Number of samples across a ball when averaging a gradient */
+	private static final int SAMPLES = 64;
+
+	private final double pointRadius;
+	private final double flatRadius;
+	private final double spriteRadius;
+
+	/**
+	 * Creates levels from the largest radius drawn at each level. A level is
+	 * not used if its radius is not above the radius of the level before.
+	 *
+	 * @param pointRadius  - largest radius drawn as a pixel
+	 * @param flatRadius   - largest radius drawn as a flat disc
+	 * @param spriteRadius - largest radius drawn from a sprite
+	 */
+	public DetailLevels(double pointRadius, double flatRadius, double spriteRadius) {
+		if (!(pointRadius >= 0 && flatRadius >= 0 && spriteRadius >= 0))
+			throw new IllegalArgumentException("Radii must not be negative");
+		this.pointRadius = pointRadius;
+		this.flatRadius = flatRadius;
+		this.spriteRadius = spriteRadius;
+	}
+
+	/**
+	 * Creates levels from a string, so they can be chosen on the command line
+	 *
+	 * @param radii - the point, flat and sprite radius separated by commas, or
+	 *              "full" for {@link #FULL} or "default" for {@link #DEFAULT}
+	 * @return the levels
+	 */
+	public static DetailLevels parse(String radii) {
+		if (radii.equals("full"))
+			return FULL;
+		if (radii.equals("default"))
+			return DEFAULT;
+		String[] parts = radii.split(",");
+		if (parts.length != 3)
+			throw new IllegalArgumentException("Expected three radii: " + radii);
+		return new DetailLevels(Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()),
+				Double.parseDouble(parts[2].trim()));
+	}
+
+	public double getPointRadius() {
+		return pointRadius;
+	}
+
+	public double getFlatRadius() {
+		return flatRadius;
+	}
+
+	public double getSpriteRadius() {
+		return spriteRadius;
+	}
+
+	/**
+	 * @param radius - radius of a ball
+	 * @return how the ball is drawn
+	 */
+	public Level levelOf(double radius) {
+		if (radius <= pointRadius)
+			return Level.POINT;
+		if (radius <= flatRadius)
+			return Level.FLAT;
+		if (radius <= spriteRadius)
+			return Level.SPRITE;
+		return Level.GRADIENT;
+	}
+
+	/**
+	 * Finds the one color that looks most like a paint filling a ball, the
+	 * average of the paint over the ball with see-through parts counting less
+	 *
+	 * @param paint - a {@link Color} or a proportional {@link RadialGradient}
+	 * @return the flat color
+	 */
+	public static Color flatColor(Paint paint) {
+		if (paint instanceof Color)
+			return (Color) paint;
+		if (!(paint instanceof RadialGradient) || !((RadialGradient) paint).isProportional())
+			throw new IllegalArgumentException("Can not draw " + paint);
+		RadialGradient gradient = (RadialGradient) paint;
+		double red = 0;
+		double green = 0;
+		double blue = 0;
+		double opacity = 0;
+		int samples = 0;
+		for (int i = 0; i < SAMPLES; i++) {
+			double y = (i + 0.5) / SAMPLES;
+			for (int j = 0; j < SAMPLES; j++) {
+				double x = (j + 0.5) / SAMPLES;
+				if ((x - 0.5) * (x - 0.5) + (y - 0.5) * (y - 0.5) > 0.25)
+					continue;
+				double offset = Math.hypot(x - gradient.getCenterX(), y - gradient.getCenterY()) / gradient.getRadius();
+				Color color = colorAt(gradient, Math.min(1, offset));
+				red += color.getRed() * color.getOpacity();
+				green += color.getGreen() * color.getOpacity();
+				blue += color.getBlue() * color.getOpacity();
+				opacity += color.getOpacity();
+				samples++;
+			}
+		}
+		if (opacity == 0)
+			return Color.TRANSPARENT;
+		return Color.color(red / opacity, green / opacity, blue / opacity, opacity / samples);
+	}
+
+	/**
+	 * @param gradient
+	 * @param offset   - from 0 at the center to 1 at the radius
+	 * @return the color of the gradient at the offset
+	 */
+	static Color colorAt(RadialGradient gradient, double offset) {
+		Stop last = gradient.getStops().get(0);
+		if (offset <= last.getOffset())
+			return last.getColor();
+		for (Stop stop : gradient.getStops()) {
+			if (offset <= stop.getOffset()) {
+				double t = (offset - last.getOffset()) / (stop.getOffset() - last.getOffset());
+				return last.getColor().interpolate(stop.getColor(), t);
+			}
+			last = stop;
+		}
+		return last.getColor();
+	}
+}
@@ -0,0 +1,381 @@
+package balls;
+
+import java.util.Arrays;
+
+/**
+ * Finds balls that are close to each other with a tree of bounding boxes,
+ * where every ball is a leaf and every inner node holds a box around its two
+ * children.
+ *
+ * The box of a leaf is a bit larger than its ball, and reaches a few steps
+ * ahead in the direction the ball moves, so the tree only changes when a ball
+ * has moved out of its box. The tree is kept balanced with rotations when
+ * leaves are inserted and removed, and a new leaf is inserted where it makes
+ * the boxes grow the least.
+ *
+ * Large and small balls live in the same tree without slowing each other
+ * down, so this works well when balls have very different sizes and there is
+ * a lot of space between them.
+ */
+public class DynamicAabbTree implements Broadphase {
+
+	private static final int NONE = -1;
+	/** Number of steps ahead the box of a leaf reaches */
+	private static final double LOOKAHEAD = 2;
+
+	// the nodes are kept in two arrays with 4 values for each node, so that
+	// a node can be read without touching many cache lines
+	private static final int MIN_X = 0;
+	private static final int MIN_Y = 1;
+	private static final int MAX_X = 2;
+	private static final int MAX_Y = 3;
+	private static final int PARENT = 0;
+	/** First child, the slot of the ball for leaves, or the next free node */
+	private static final int CHILD1 = 1;
+	private static final int CHILD2 = 2;
+	/** Height of the subtree, 0 for leaves and -1 for free nodes */
+	private static final int HEIGHT = 3;
+
+	/** How much larger the box of a leaf is than its ball, on every side */
+	private final double margin;
+
+	private double[] boxes = new double[4 * 16];
+	private int[] nodes = new int[4 * 16];
+	private int root = NONE;
+	private int nodeCount;
+	private int freeNode = NONE;
+
+	/** Leaf of each slot */
+	private int[] leafOf = new int[0];
+	/** Number of slots with a leaf */
+	private int leafCount;
+	private int[] stack = new int[64];
+
+	/**
+	 * Creates a tree where boxes are 1 larger than their balls
+	 */
+	public DynamicAabbTree() {
+		this(1);
+	}
+
+	/**
+	 * Creates a tree with a given margin around the balls. A large margin means
+	 * that the tree changes less, but that more pairs of balls have to be
+	 * checked.
+	 *
+	 * @param margin - how much larger the box of a leaf is than the ball
+	 */
+	public DynamicAabbTree(double margin) {
+		if (margin < 0)
+			throw new IllegalArgumentException("Margin must not be negative");
+		this.margin = margin;
+	}
+
+	@Override
+	public void findPairs(BallWorld world, PairHandler handler) {
+		update(world);
+		if (root == NONE)
+			return;
+		// walk the tree against itself, a pair of nodes is only opened when
+		// their boxes overlap, and the pair of a node with itself is split into
+		// the pairs of its children
+		int top = 0;
+		stack[top++] = root;
+		stack[top++] = root;
+		while (top > 0) {
+			int b = stack[--top];
+			int a = stack[--top];
+			if (top + 6 > stack.length)
+				stack = Arrays.copyOf(stack, 2 * stack.length);
+			int heightA = nodes[4 * a + HEIGHT];
+			if (a == b) {
+				if (heightA == 0)
+					continue;
+				int c1 = nodes[4 * a + CHILD1];
+				int c2 = nodes[4 * a + CHILD2];
+				stack[top++] = c1;
+				stack[top++] = c1;
+				stack[top++] = c2;
+				stack[top++] = c2;
+				stack[top++] = c1;
+				stack[top++] = c2;
+				continue;
+			}
+			if (!overlaps(a, b))
+				continue;
+			int heightB = nodes[4 * b + HEIGHT];
+			if (heightA == 0 && heightB == 0) {
+				pair(world, nodes[4 * a + CHILD1], nodes[4 * b + CHILD1], handler);
+			} else if (heightA >= heightB) {
+				// open the higher node
+				stack[top++] = nodes[4 * a + CHILD1];
+				stack[top++] = b;
+				stack[top++] = nodes[4 * a + CHILD2];
+				stack[top++] = b;
+			} else {
+				stack[top++] = a;
+				stack[top++] = nodes[4 * b + CHILD1];
+				stack[top++] = a;
+				stack[top++] = nodes[4 * b + CHILD2];
+			}
+		}
+	}
+
+	/**
+	 * Calls the handler if the bounding boxes of two balls overlap
+	 */
+	private static void pair(BallWorld world, int i, int j, PairHandler handler) {
+		double reach = world.getRadius(i) + world.getRadius(j);
+		if (Math.abs(world.getX(i) - world.getX(j)) <= reach && Math.abs(world.getY(i) - world.getY(j)) <= reach) {
+			if (i < j)
+				handler.pair(i, j);
+			else
+				handler.pair(j, i);
+		}
+	}
+
+	/**
+	 * @return height of the tree, 0 for an empty tree or a single leaf
+	 */
+	int getHeight() {
+		return root == NONE ? 0 : nodes[4 * root + HEIGHT];
+	}
+
+	/**
+	 * Makes the leaves match the balls in the world
+	 */
+	private void update(BallWorld world) {
+		int n = world.size();
+		for (int i = n; i < leafCount; i++) {
+			removeLeaf(leafOf[i]);
+			freeNode(leafOf[i]);
+		}
+		if (leafOf.length < n)
+			leafOf = Arrays.copyOf(leafOf, Math.max(n, 2 * leafOf.length));
+		for (int i = 0; i < Math.min(n, leafCount); i++) {
+			int leaf = leafOf[i];
+			double x = world.getX(i);
+			double y = world.getY(i);
+			double r = world.getRadius(i);
+			int box = 4 * leaf;
+			if (x - r < boxes[box + MIN_X] || x + r > boxes[box + MAX_X] || y - r < boxes[box + MIN_Y]
+					|| y + r > boxes[box + MAX_Y]) {
+				removeLeaf(leaf);
+				setFatBox(leaf, world, i);
+				insertLeaf(leaf);
+			}
+		}
+		for (int i = leafCount; i < n; i++) {
+			int leaf = allocateNode();
+			nodes[4 * leaf + CHILD1] = i;
+			nodes[4 * leaf + HEIGHT] = 0;
+			setFatBox(leaf, world, i);
+			insertLeaf(leaf);
+			leafOf[i] = leaf;
+		}
+		leafCount = n;
+	}
+
+	/**
+	 * Sets the box of a leaf to the ball with the margin around it, stretched
+	 * in the direction the ball moves
+	 */
+	private void setFatBox(int leaf, BallWorld world, int i) {
+		double x = world.getX(i);
+		double y = world.getY(i);
+		double r = world.getRadius(i) + margin;
+		double dx = LOOKAHEAD * world.getSpeedX(i);
+		double dy = LOOKAHEAD * world.getSpeedY(i);
+		int box = 4 * leaf;
+		boxes[box + MIN_X] = x - r + Math.min(dx, 0);
+		boxes[box + MIN_Y] = y - r + Math.min(dy, 0);
+		boxes[box + MAX_X] = x + r + Math.max(dx, 0);
+		boxes[box + MAX_Y] = y + r + Math.max(dy, 0);
+	}
+
+	private void insertLeaf(int leaf) {
+		if (root == NONE) {
+			root = leaf;
+			nodes[4 * leaf + PARENT] = NONE;
+			return;
+		}
+
+		// walk down to the node where the leaf costs the least perimeter
+		int index = root;
+		while (nodes[4 * index + HEIGHT] > 0) {
+			int c1 = nodes[4 * index + CHILD1];
+			int c2 = nodes[4 * index + CHILD2];
+			double combined = combinedPerimeter(index, leaf);
+			double cost = 2 * combined;
+			// every node above the leaf grows at least this much
+			double inheritance = 2 * (combined - perimeter(index));
+			double cost1 = descendCost(c1, leaf) + inheritance;
+			double cost2 = descendCost(c2, leaf) + inheritance;
+			if (cost < cost1 && cost < cost2)
+				break;
+			index = cost1 < cost2 ? c1 : c2;
+		}
+
+		int sibling = index;
+		int oldParent = nodes[4 * sibling + PARENT];
+		int newParent = allocateNode();
+		nodes[4 * newParent + PARENT] = oldParent;
+		nodes[4 * newParent + CHILD1] = sibling;
+		nodes[4 * newParent + CHILD2] = leaf;
+		nodes[4 * newParent + HEIGHT] = nodes[4 * sibling + HEIGHT] + 1;
+		if (oldParent == NONE)
+			root = newParent;
+		else
+			replaceChild(oldParent, sibling, newParent);
+		nodes[4 * sibling + PARENT] = newParent;
+		nodes[4 * leaf + PARENT] = newParent;
+		fixUpwards(newParent);
+	}
+
+	private double descendCost(int child, int leaf) {
+		double combined = combinedPerimeter(child, leaf);
+		return nodes[4 * child + HEIGHT] == 0 ? combined : combined - perimeter(child);
+	}
+
+	private void removeLeaf(int leaf) {
+		if (leaf == root) {
+			root = NONE;
+			return;
+		}
+		int p = nodes[4 * leaf + PARENT];
+		int grandParent = nodes[4 * p + PARENT];
+		int sibling = nodes[4 * p + CHILD1] == leaf ? nodes[4 * p + CHILD2] : nodes[4 * p + CHILD1];
+		nodes[4 * sibling + PARENT] = grandParent;
+		freeNode(p);
+		if (grandParent == NONE) {
+			root = sibling;
+		} else {
+			replaceChild(grandParent, p, sibling);
+			fixUpwards(grandParent);
+		}
+	}
+
+	private void replaceChild(int node, int oldChild, int newChild) {
+		if (nodes[4 * node + CHILD1] == oldChild)
+			nodes[4 * node + CHILD1] = newChild;
+		else
+			nodes[4 * node + CHILD2] = newChild;
+	}
+
+	/**
+	 * Balances and refits the boxes from a node up to the root
+	 */
+	private void fixUpwards(int index) {
+		while (index != NONE) {
+			index = balance(index);
+			refit(index);
+			index = nodes[4 * index + PARENT];
+		}
+	}
+
+	/**
+	 * Rotates the higher child of a node up if the heights of its children
+	 * differ by more than one
+	 *
+	 * @param a - the node
+	 * @return the node now at the place of a
+	 */
+	private int balance(int a) {
+		if (nodes[4 * a + HEIGHT] < 2)
+			return a;
+		int b = nodes[4 * a + CHILD1];
+		int c = nodes[4 * a + CHILD2];
+		int difference = nodes[4 * c + HEIGHT] - nodes[4 * b + HEIGHT];
+		if (difference > 1) {
+			rotateUp(a, c, CHILD2);
+			return c;
+		}
+		if (difference < -1) {
+			rotateUp(a, b, CHILD1);
+			return b;
+		}
+		return a;
+	}
+
+	/**
+	 * Makes a child take the place of its parent a, and a take the place of
+	 * the lower grandchild
+	 *
+	 * @param a     - the parent
+	 * @param up    - the child that moves up
+	 * @param place - CHILD1 or CHILD2, where up is below a
+	 */
+	private void rotateUp(int a, int up, int place) {
+		int f = nodes[4 * up + CHILD1];
+		int g = nodes[4 * up + CHILD2];
+		int grandParent = nodes[4 * a + PARENT];
+
+		nodes[4 * up + CHILD1] = a;
+		nodes[4 * up + PARENT] = grandParent;
+		nodes[4 * a + PARENT] = up;
+		if (grandParent == NONE)
+			root = up;
+		else
+			replaceChild(grandParent, a, up);
+
+		// the higher grandchild stays below up, the lower one moves to a
+		boolean keepF = nodes[4 * f + HEIGHT] > nodes[4 * g + HEIGHT];
+		int stay = keepF ? f : g;
+		int move = keepF ? g : f;
+		nodes[4 * up + CHILD2] = stay;
+		nodes[4 * a + place] = move;
+		nodes[4 * move + PARENT] = a;
+
+		refit(a);
+		refit(up);
+	}
+
+	/**
+	 * Sets the height and box of an inner node from its children
+	 */
+	private void refit(int node) {
+		int a = nodes[4 * node + CHILD1];
+		int b = nodes[4 * node + CHILD2];
+		nodes[4 * node + HEIGHT] = 1 + Math.max(nodes[4 * a + HEIGHT], nodes[4 * b + HEIGHT]);
+		boxes[4 * node + MIN_X] = Math.min(boxes[4 * a + MIN_X], boxes[4 * b + MIN_X]);
+		boxes[4 * node + MIN_Y] = Math.min(boxes[4 * a + MIN_Y], boxes[4 * b + MIN_Y]);
+		boxes[4 * node + MAX_X] = Math.max(boxes[4 * a + MAX_X], boxes[4 * b + MAX_X]);
+		boxes[4 * node + MAX_Y] = Math.max(boxes[4 * a + MAX_Y], boxes[4 * b + MAX_Y]);
+	}
+
+	private boolean overlaps(int a, int b) {
+		return boxes[4 * a + MIN_X] <= boxes[4 * b + MAX_X] && boxes[4 * a + MAX_X] >= boxes[4 * b + MIN_X]
+				&& boxes[4 * a + MIN_Y] <= boxes[4 * b + MAX_Y] && boxes[4 * a + MAX_Y] >= boxes[4 * b + MIN_Y];
+	}
+
+	private double perimeter(int node) {
+		return boxes[4 * node + MAX_X] - boxes[4 * node + MIN_X] + boxes[4 * node + MAX_Y]
+				- boxes[4 * node + MIN_Y];
+	}
+
+	private double combinedPerimeter(int a, int b) {
+		return Math.max(boxes[4 * a + MAX_X], boxes[4 * b + MAX_X])
+				- Math.min(boxes[4 * a + MIN_X], boxes[4 * b + MIN_X])
+				+ Math.max(boxes[4 * a + MAX_Y], boxes[4 * b + MAX_Y])
+				- Math.min(boxes[4 * a + MIN_Y], boxes[4 * b + MIN_Y]);
+	}
+
+	private int allocateNode() {
+		if (freeNode != NONE) {
+			int node = freeNode;
+			freeNode = nodes[4 * node + CHILD1];
+			return node;
+		}
+		if (4 * nodeCount == nodes.length) {
+			boxes = Arrays.copyOf(boxes, 2 * boxes.length);
+			nodes = Arrays.copyOf(nodes, 2 * nodes.length);
+		}
+		return nodeCount++;
+	}
+
+	private void freeNode(int node) {
+		nodes[4 * node + CHILD1] = freeNode;
+		nodes[4 * node + HEIGHT] = NONE;
+		freeNode = node;
+	}
+}
@@ -0,0 +1,23 @@
+package balls;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for drawing one frame, recorded by
+ * {@link SimulationMetrics}. The duration of the event is the time spent
+ * drawing.
+ */
+@Name("balls.Frame")
+@Label("Frame")
+@Category("Balls")
+@Description("Drawing of one frame of the ball demo")
+@StackTrace(false)
+class FrameEvent extends jdk.jfr.Event {
+
+	@Label("Balls")
+	int balls;
+}
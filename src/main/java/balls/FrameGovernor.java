@@ -0,0 +1,221 @@
+package balls;
+
+/**
+ * Decides how much work to do for the demo to keep up with real time, based
+ * on how long steps and frames actually take.
+ *
+ * The simulation gets time to spend in whole steps. If a round of steps would
+ * take longer than a step interval, the governor runs only as many steps as
+ * fit and lets the rest of the time go, so slow steps never lead to more and
+ * more steps to catch up with. The time let go is counted, see
+ * {@link #getDroppedNanos()}.
+ *
+ * When steps take most of their interval the simulation is made lighter:
+ * new balls are added less often and the number of balls is capped lower.
+ * When steps are cheap again the settings go back to what they were.
+ *
+ * Frames are skipped when nothing has changed since the last one, and when
+ * drawing takes longer than a frame, so that the application thread keeps
+ * time for input.
+ *
+ * {@link #stepsFor(long)}, {@link #stepTaken(long)} and
+ * {@link #apply(BallSimulation)} are called by the thread running the
+ * simulation, {@link #shouldDraw(boolean)} and {@link #drawTaken(long)} by
+ * the thread drawing.
+ */
+public class FrameGovernor {
+
+	/** Most steps in one round, even if they are cheap */
+	private static final int MAX_STEPS_PER_ROUND = 10;
+	/** Part of a step interval steps may use before the simulation is made lighter */
+	private static final double HIGH_LOAD = 0.75;
+	/** Part of a step interval below which the simulation is made heavier again */
+	private static final double LOW_LOAD = 0.4;
+	/** Number of steps between changes to the load */
+	private static final int ADJUST_INTERVAL = 30;
+	/** Largest spawn interval when shedding load */
+	private static final int MAX_SPAWN_INTERVAL = 256;
+	/** Smallest cap on the number of balls when shedding load */
+	private static final int MIN_BALLS = 100;
+	/** Weight of the newest measurement in the averages */
+	private static final double SMOOTHING = 0.1;
+
+	private final long nanosPerStep;
+	private final long nanosPerFrame;
+
+	// used by the simulation thread
+	private long timeBudget;
+	private volatile long droppedNanos;
+	private int stepsSinceAdjust;
+	private int baseSpawnInterval;
+	private int baseMaxNumberOfBalls;
+	private volatile int spawnInterval;
+	private volatile int maxNumberOfBalls;
+	private volatile double stepNanos;
+
+	// used by the drawing thread
+	private volatile double drawNanos;
+	private int framesToSkip;
+	private int skippedFrames;
+
+	/**
+	 * @param stepsPerSecond  - how fast the simulation should run
+	 * @param framesPerSecond - how often frames are shown
+	 */
+	public FrameGovernor(int stepsPerSecond, int framesPerSecond) {
+		if (stepsPerSecond < 1 || framesPerSecond < 1)
+			throw new IllegalArgumentException("Rates must be positive");
+		nanosPerStep = 1_000_000_000L / stepsPerSecond;
+		nanosPerFrame = 1_000_000_000L / framesPerSecond;
+		timeBudget = nanosPerStep;
+	}
+
+	public long getNanosPerStep() {
+		return nanosPerStep;
+	}
+
+	/**
+	 * Adds the time that has passed to the time budget of the simulation, and
+	 * decides how many steps to take now
+	 *
+	 * @param elapsedNanos - time since the last call
+	 * @return number of steps to take
+	 */
+	public int stepsFor(long elapsedNanos) {
+		timeBudget += elapsedNanos;
+		// the steps of one round should not take longer than an interval
+		int affordable = MAX_STEPS_PER_ROUND;
+		if (stepNanos > 0)
+			affordable = (int) Math.max(1, Math.min(MAX_STEPS_PER_ROUND, nanosPerStep / stepNanos));
+		long limit = affordable * nanosPerStep;
+		if (timeBudget > limit) {
+			droppedNanos += timeBudget - limit;
+			timeBudget = limit;
+		}
+		int steps = (int) (timeBudget / nanosPerStep);
+		timeBudget -= steps * nanosPerStep;
+		return steps;
+	}
+
+	/**
+	 * @return time until a step is due
+	 */
+	public long getNanosUntilStep() {
+		return Math.max(0, nanosPerStep - timeBudget);
+	}
+
+	/**
+	 * Tells how long a step took
+	 *
+	 * @param nanos
+	 */
+	public void stepTaken(long nanos) {
+		stepNanos = stepNanos == 0 ? nanos : stepNanos + SMOOTHING * (nanos - stepNanos);
+		stepsSinceAdjust++;
+	}
+
+	/**
+	 * Makes the simulation lighter or heavier depending on how long steps
+	 * take. The first call remembers the settings of the simulation as the
+	 * ones to go back to.
+	 *
+	 * @param simulation
+	 */
+	public void apply(BallSimulation simulation) {
+		if (baseSpawnInterval == 0) {
+			baseSpawnInterval = simulation.getSpawnInterval();
+			baseMaxNumberOfBalls = simulation.getMaxNumberOfBalls();
+			spawnInterval = baseSpawnInterval;
+			maxNumberOfBalls = baseMaxNumberOfBalls;
+		}
+		if (stepsSinceAdjust < ADJUST_INTERVAL)
+			return;
+		stepsSinceAdjust = 0;
+
+		double load = stepNanos / nanosPerStep;
+		if (load > HIGH_LOAD) {
+			spawnInterval = Math.min(2 * spawnInterval, Math.max(MAX_SPAWN_INTERVAL, baseSpawnInterval));
+			maxNumberOfBalls = Math.min(maxNumberOfBalls, Math.max(MIN_BALLS, (int) (0.8 * maxNumberOfBalls)));
+		} else if (load < LOW_LOAD) {
+			// the cap comes back first, new balls are the cheapest to give up
+			if (maxNumberOfBalls < baseMaxNumberOfBalls)
+				maxNumberOfBalls = Math.min(baseMaxNumberOfBalls, (int) (1.1 * maxNumberOfBalls) + 1);
+			else if (spawnInterval > baseSpawnInterval)
+				spawnInterval = Math.max(baseSpawnInterval, spawnInterval / 2);
+		}
+		simulation.setSpawnInterval(spawnInterval);
+		simulation.setMaxNumberOfBalls(maxNumberOfBalls);
+	}
+
+	/**
+	 * Decides if a frame should be drawn
+	 *
+	 * @param changed - whether there is anything new to draw since the last
+	 *                frame
+	 * @return true if the frame should be drawn
+	 */
+	public boolean shouldDraw(boolean changed) {
+		if (!changed)
+			return false;
+		if (framesToSkip > 0) {
+			framesToSkip--;
+			skippedFrames++;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Tells how long a frame took to draw. A frame that takes longer than a
+	 * frame interval makes as many of the next frames be skipped as it took
+	 * intervals.
+	 *
+	 * @param nanos
+	 */
+	public void drawTaken(long nanos) {
+		drawNanos = drawNanos == 0 ? nanos : drawNanos + SMOOTHING * (nanos - drawNanos);
+		framesToSkip = (int) (nanos / nanosPerFrame);
+	}
+
+	/**
+	 * @return average time of a step
+	 */
+	public double getStepNanos() {
+		return stepNanos;
+	}
+
+	/**
+	 * @return average time to draw a frame
+	 */
+	public double getDrawNanos() {
+		return drawNanos;
+	}
+
+	/**
+	 * @return simulated time let go because steps could not keep up
+	 */
+	public long getDroppedNanos() {
+		return droppedNanos;
+	}
+
+	/**
+	 * @return number of frames skipped because drawing was too slow
+	 */
+	public int getSkippedFrames() {
+		return skippedFrames;
+	}
+
+	/**
+	 * @return the spawn interval the simulation is run with
+	 */
+	public int getSpawnInterval() {
+		return spawnInterval;
+	}
+
+	/**
+	 * @return the cap on the number of balls the simulation is run with
+	 */
+	public int getMaxNumberOfBalls() {
+		return maxNumberOfBalls;
+	}
+}
@@ -0,0 +1,217 @@
+package balls;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link BallSimulation} without graphics as fast as possible, and prints
+ * how fast it went and how long steps took.
+ *
+ * Usage: {@code HeadlessMain [steps] [option=value ...]} where the options are
+ * {@code max} (largest number of balls), {@code parallelism}, {@code seed},
+ * {@code collisions} (true or false), {@code sleep} (true to put resting
+ * balls to sleep), {@code kinetic} (true to jump from event to event with a
+ * {@link KineticSimulation} instead of stepping), {@code lifetimes} (steps
+ * balls of each generation live, like 200,100), {@code budget} (a
+ * {@link ParticleBudget} like 100000,2000,oldest), {@code broadphase} (grid, sap or tree),
+ * {@code width}, {@code height}, {@code report} (seconds between lines
+ * with step times while running, 0 for none), {@code record} (file to
+ * record every step to), {@code restore} (checkpoint to start from instead
+ * of a new world) and {@code save} (file to save a checkpoint to at the
+ * end).
+ *
+ * With {@code replay} set to a recording, the recording is played back
+ * instead, 60 frames a second at {@code speed} (1 to 100) times real speed
+ * but without waiting between frames, and the time it took is printed.
+ * For example {@code HeadlessMain 10000 max=100000 parallelism=8}.
+ *
+ * Start the JVM with {@code --add-modules jdk.incubator.vector} to move balls
+ * with SIMD instructions.
+ */
+public class HeadlessMain {
+
+	public static void main(String[] args) throws IOException {
+		int steps = 10_000;
+		int max = 2000;
+		int parallelism = 1;
+		Long seed = null;
+		boolean collisions = false;
+		boolean sleep = false;
+		boolean kinetic = false;
+		int[] lifetimes = null;
+		ParticleBudget budget = null;
+		String broadphase = "grid";
+		double width = 640;
+		double height = 480;
+		int report = 0;
+		String record = null;
+		String replay = null;
+		String restore = null;
+		String save = null;
+		double speed = ReplayPlayer.MAX_SPEED;
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (eq < 0) {
+				steps = Integer.parseInt(arg);
+				continue;
+			}
+			String value = arg.substring(eq + 1);
+			switch (arg.substring(0, eq)) {
+			case "max":
+				max = Integer.parseInt(value);
+				break;
+			case "parallelism":
+				parallelism = Integer.parseInt(value);
+				break;
+			case "seed":
+				seed = Long.parseLong(value);
+				break;
+			case "collisions":
+				collisions = Boolean.parseBoolean(value);
+				break;
+			case "sleep":
+				sleep = Boolean.parseBoolean(value);
+				break;
+			case "kinetic":
+				kinetic = Boolean.parseBoolean(value);
+				break;
+			case "lifetimes":
+				lifetimes = BallSimulation.parseLifetimes(value);
+				break;
+			case "budget":
+				budget = ParticleBudget.parse(value);
+				break;
+			case "broadphase":
+				broadphase = value;
+				break;
+			case "width":
+				width = Double.parseDouble(value);
+				break;
+			case "height":
+				height = Double.parseDouble(value);
+				break;
+			case "record":
+				record = value;
+				break;
+			case "replay":
+				replay = value;
+				break;
+			case "restore":
+				restore = value;
+				break;
+			case "save":
+				save = value;
+				break;
+			case "speed":
+				speed = Double.parseDouble(value);
+				break;
+			case "report":
+				report = Integer.parseInt(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+
+		if (replay != null) {
+			replay(Path.of(replay), speed);
+			return;
+		}
+		if (kinetic && record != null)
+			throw new IllegalArgumentException("Can not record a kinetic simulation");
+
+		BallSimulation simulation = new BallSimulation(width, height, seed == null ? new RandomSource() : new RandomSource(seed));
+		simulation.setMaxNumberOfBalls(max);
+		simulation.setParallelism(parallelism);
+		simulation.setBroadphase(Broadphase.forName(broadphase));
+		simulation.setCollisionsEnabled(collisions);
+		simulation.setSleepEnabled(sleep);
+		if (lifetimes != null)
+			simulation.setLifetimes(lifetimes);
+		simulation.setBudget(budget);
+		SimulationMetrics metrics = new SimulationMetrics();
+		simulation.setMetrics(metrics);
+		if (restore != null) {
+			long restoreStart = System.nanoTime();
+			Checkpoint.restore(simulation, Path.of(restore));
+			System.out.printf("restored %d balls at step %d from %s in %.3f s%n", simulation.getWorld().size(),
+					simulation.getStepCount(), restore, (System.nanoTime() - restoreStart) / 1e9);
+		} else {
+			simulation.setup();
+		}
+		MetricsReporter reporter = new MetricsReporter(metrics, System.out);
+		if (report > 0)
+			reporter.start(report, TimeUnit.SECONDS);
+
+		Recorder recorder = record == null ? null : new Recorder(Path.of(record));
+
+		long ballUpdates = 0;
+		long start = System.nanoTime();
+		if (kinetic) {
+			KineticSimulation events = new KineticSimulation(simulation);
+			events.advanceTo(simulation.getStepCount() + steps);
+			events.sync();
+			ballUpdates = events.getEventCount();
+			System.out.printf("%d balls moved at events%n", ballUpdates);
+		}
+		for (int i = 0; i < steps && !kinetic; i++) {
+			ballUpdates += simulation.getWorld().size();
+			simulation.step();
+			if (recorder != null)
+				recorder.record(simulation.getWorld(), simulation.getStepCount());
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		simulation.shutdown();
+		reporter.stop();
+		if (recorder != null) {
+			recorder.close();
+			System.out.printf("recorded %d steps to %s, %d bytes%n", recorder.getFrameCount(), record,
+					recorder.getBytesWritten());
+		}
+
+		if (save != null) {
+			long saveStart = System.nanoTime();
+			Checkpoint.save(simulation, Path.of(save));
+			System.out.printf("saved %d balls at step %d to %s in %.3f s%n", simulation.getWorld().size(),
+					simulation.getStepCount(), save, (System.nanoTime() - saveStart) / 1e9);
+		}
+
+		System.out.printf("%d steps in %.3f s, %d balls at the end, %d asleep%n", steps, seconds,
+				simulation.getWorld().size(), simulation.getWorld().getSleepingCount());
+		System.out.printf("%.1f steps/s, %.0f ball-updates/s%n", steps / seconds, ballUpdates / seconds);
+		if (budget != null)
+			System.out.printf("%d balls rejected, %d evicted by the budget%n", budget.getRejected(), budget.getEvicted());
+		LatencyHistogram stepTimes = metrics.getStepTimes();
+		System.out.printf("step p50 %.3f ms, p99 %.3f ms, max %.3f ms, %.0f bytes allocated/step%n",
+				stepTimes.getPercentile(50) / 1e6, stepTimes.getPercentile(99) / 1e6, stepTimes.getMax() / 1e6,
+				metrics.getAllocatedBytesPerStep());
+	}
+
+	/**
+	 * Plays a recording from start to end as fast as possible, reading every
+	 * ball of every frame shown
+	 */
+	private static void replay(Path path, double speed) throws IOException {
+		try (RecordingReader reader = new RecordingReader(path)) {
+			long start = System.nanoTime();
+			ReplayPlayer player = new ReplayPlayer(reader, 60);
+			player.setSpeed(speed);
+			long frames = 0;
+			long balls = 0;
+			double sum = 0;
+			do {
+				RecordingReader frame = player.getFrame();
+				for (int i = 0; i < frame.size(); i++) {
+					sum += frame.getX(i) + frame.getY(i) + frame.getRadius(i);
+				}
+				frames++;
+				balls += frame.size();
+			} while (player.update(1_000_000_000L / 60) || !player.isFinished());
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.printf("replayed steps %d to %d at %.0fx in %.3f s (checksum %.0f)%n", reader.getFirstStep(),
+					reader.getLastStep(), speed, seconds, sum);
+			System.out.printf("%d frames, %.0f frames/s, %.0f balls/s%n", frames, frames / seconds, balls / seconds);
+		}
+	}
+}
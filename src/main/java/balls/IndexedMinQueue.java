@@ -0,0 +1,213 @@
+package balls;
+
+import java.util.Arrays;
+
+/**
+ * A priority queue of small int keys, like the slots of a {@link BallWorld},
+ * where the priority of a key can be changed or removed in logarithmic time.
+ *
+ * The queue is a binary heap with the position of every key in the heap
+ * kept next to it, so a key is found without searching. The priorities are
+ * kept in heap order next to the keys, so that sifting does not have to look
+ * them up by key. Keys with the same priority come out in no particular
+ * order.
+ */
+public class IndexedMinQueue {
+
+	private int size;
+	/** Keys in heap order */
+	private int[] heap;
+	/** Priority of the key at the same position in {@link #heap} */
+	private long[] priorities;
+	/** Position of each key in {@link #heap}, -1 if not queued */
+	private int[] positions;
+
+	/**
+	 * Creates an empty queue
+	 *
+	 * @param capacity - initial number of keys, more are made room for as needed
+	 */
+	public IndexedMinQueue(int capacity) {
+		heap = new int[Math.max(1, capacity)];
+		priorities = new long[heap.length];
+		positions = new int[heap.length];
+		Arrays.fill(positions, -1);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @param key
+	 * @return true if the key is in the queue
+	 */
+	public boolean contains(int key) {
+		return key < positions.length && positions[key] >= 0;
+	}
+
+	/**
+	 * @param key - a key in the queue
+	 * @return the priority of the key
+	 */
+	public long getPriority(int key) {
+		checkQueued(key);
+		return priorities[positions[key]];
+	}
+
+	/**
+	 * @return the key with the lowest priority
+	 */
+	public int peekKey() {
+		if (size == 0)
+			throw new IllegalStateException("Queue is empty");
+		return heap[0];
+	}
+
+	/**
+	 * @return the lowest priority, {@link Long#MAX_VALUE} if the queue is empty
+	 */
+	public long peekPriority() {
+		return size == 0 ? Long.MAX_VALUE : priorities[0];
+	}
+
+	/**
+	 * Adds a key, or changes its priority if it is already in the queue
+	 *
+	 * @param key      - at least 0
+	 * @param priority
+	 */
+	public void set(int key, long priority) {
+		if (key < 0)
+			throw new IllegalArgumentException("Key must not be negative");
+		if (key >= positions.length)
+			grow(key + 1);
+		int position = positions[key];
+		if (position < 0) {
+			if (size == heap.length) {
+				heap = Arrays.copyOf(heap, 2 * size);
+				priorities = Arrays.copyOf(priorities, 2 * size);
+			}
+			up(size++, key, priority);
+		} else if (priority < priorities[position]) {
+			up(position, key, priority);
+		} else {
+			down(position, key, priority);
+		}
+	}
+
+	/**
+	 * Removes a key if it is in the queue
+	 *
+	 * @param key
+	 */
+	public void remove(int key) {
+		if (!contains(key))
+			return;
+		int position = positions[key];
+		positions[key] = -1;
+		size--;
+		if (position == size)
+			return;
+		int last = heap[size];
+		long priority = priorities[size];
+		if (position > 0 && priority < priorities[(position - 1) >>> 1])
+			up(position, last, priority);
+		else
+			down(position, last, priority);
+	}
+
+	/**
+	 * Removes and returns the key with the lowest priority
+	 *
+	 * @return the key
+	 */
+	public int poll() {
+		int key = peekKey();
+		remove(key);
+		return key;
+	}
+
+	/**
+	 * Gives a queued key a new number, keeping its priority, like when a ball
+	 * moves to another slot
+	 *
+	 * @param from - a key in the queue
+	 * @param to   - a key not in the queue
+	 */
+	public void rename(int from, int to) {
+		checkQueued(from);
+		if (contains(to))
+			throw new IllegalArgumentException("Key " + to + " is already queued");
+		if (to >= positions.length)
+			grow(to + 1);
+		int position = positions[from];
+		heap[position] = to;
+		positions[to] = position;
+		positions[from] = -1;
+	}
+
+	/**
+	 * Removes every key
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			positions[heap[i]] = -1;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Puts a key at a position, or as far up from there as its priority goes
+	 */
+	private void up(int position, int key, long priority) {
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (priorities[parent] <= priority)
+				break;
+			place(position, heap[parent], priorities[parent]);
+			position = parent;
+		}
+		place(position, key, priority);
+	}
+
+	/**
+	 * Puts a key at a position, or as far down from there as its priority goes
+	 */
+	private void down(int position, int key, long priority) {
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && priorities[child + 1] < priorities[child])
+				child++;
+			if (priorities[child] >= priority)
+				break;
+			place(position, heap[child], priorities[child]);
+			position = child;
+		}
+		place(position, key, priority);
+	}
+
+	private void place(int position, int key, long priority) {
+		heap[position] = key;
+		priorities[position] = priority;
+		positions[key] = position;
+	}
+
+	private void grow(int keys) {
+		int capacity = Math.max(keys, 2 * positions.length);
+		int old = positions.length;
+		positions = Arrays.copyOf(positions, capacity);
+		Arrays.fill(positions, old, capacity, -1);
+	}
+
+	private void checkQueued(int key) {
+		if (!contains(key))
+			throw new IllegalArgumentException("Key " + key + " is not queued");
+	}
+}
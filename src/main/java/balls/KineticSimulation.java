@@ -0,0 +1,223 @@
+package balls;
+
+import java.util.Arrays;
+
+/**
+ * Runs a {@link BallSimulation} by jumping from event to event instead of
+ * moving every ball in every step.
+ *
+ * Between bounces a ball follows a parabola: after k steps from position p
+ * with speed s and acceleration a it is at p + k s + a k (k - 1) / 2. So a
+ * ball only has to be moved in the steps where something happens to it: the
+ * step where it would cross a limit and bounces, and the step where it
+ * explodes. Both are found from its position and speed when it was last
+ * moved, and the balls are kept in an {@link IndexedMinQueue} by the step of
+ * their next event.
+ *
+ * The position and speed stored in the {@link BallWorld} belong to the step
+ * a ball was last moved at, so {@link #getX(int)} and {@link #getY(int)}
+ * work out where a ball is now, and {@link #sync()} moves all balls to the
+ * current step, like before drawing a snapshot or saving a checkpoint.
+ *
+ * Events of the same step are handled like {@link BallSimulation#step()}
+ * does, explosions in slot order and then new balls, so a run gives the same
+ * balls as stepping, with positions that differ only by rounding. Collisions,
+ * sleep and a {@link ParticleBudget} can not be used, and the simulation must
+ * not be stepped or changed while a kinetic simulation runs it, except
+ * through this class.
+ */
+public class KineticSimulation {
+
+	private final BallSimulation simulation;
+	private final IndexedMinQueue events = new IndexedMinQueue(16);
+	private long eventCount;
+
+	// used while handling the events of one step
+	private int[] due = new int[16];
+	private int[] exploding = new int[16];
+
+	/**
+	 * Takes over a simulation at the step it is at
+	 *
+	 * @param simulation - a simulation without collisions, sleep and budget
+	 */
+	public KineticSimulation(BallSimulation simulation) {
+		if (simulation.isCollisionsEnabled() || simulation.isSleepEnabled() || simulation.getBudget() != null)
+			throw new IllegalStateException("Kinetic simulation can not be used with collisions, sleep or a budget");
+		this.simulation = simulation;
+		BallWorld world = simulation.getWorld();
+		int now = simulation.getStepCount();
+		for (int slot = 0; slot < world.size(); slot++) {
+			world.setTime(slot, now);
+			schedule(world, slot);
+		}
+	}
+
+	public BallSimulation getSimulation() {
+		return simulation;
+	}
+
+	/**
+	 * @return the step the simulation is at
+	 */
+	public int getStep() {
+		return simulation.getStepCount();
+	}
+
+	/**
+	 * @return number of balls moved because of an event so far
+	 */
+	public long getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * Moves the simulation forward to a step, handling only the steps where
+	 * a ball bounces or explodes or a new ball is added
+	 *
+	 * @param step - the step to go to, not before the current step
+	 */
+	public void advanceTo(int step) {
+		int now = simulation.getStepCount();
+		if (step < now)
+			throw new IllegalArgumentException("Can not go back from step " + now + " to " + step);
+		while (true) {
+			long next = Math.min(events.peekPriority(), nextSpawn(now));
+			if (next >= step)
+				break;
+			handle((int) next);
+			now = (int) next + 1;
+		}
+		simulation.setStepCount(step);
+	}
+
+	/**
+	 * @param slot
+	 * @return x position of the ball in the slot at the current step
+	 */
+	public double getX(int slot) {
+		BallWorld world = simulation.getWorld();
+		return Motion.position(world.getX(slot), world.getSpeedX(slot), world.getAccelerationX(slot), elapsed(world, slot));
+	}
+
+	/**
+	 * @param slot
+	 * @return y position of the ball in the slot at the current step
+	 */
+	public double getY(int slot) {
+		BallWorld world = simulation.getWorld();
+		return Motion.position(world.getY(slot), world.getSpeedY(slot), world.getAccelerationY(slot), elapsed(world, slot));
+	}
+
+	/**
+	 * Moves every ball in the world to the current step, so that the world
+	 * can be read directly
+	 */
+	public void sync() {
+		BallWorld world = simulation.getWorld();
+		int now = simulation.getStepCount();
+		for (int slot = 0; slot < world.size(); slot++) {
+			drift(world, slot, now);
+		}
+	}
+
+	/**
+	 * Handles the events of one step, in the same order as
+	 * {@link BallSimulation#step()}
+	 */
+	private void handle(int step) {
+		BallWorld world = simulation.getWorld();
+		world.beginStep();
+		int dueCount = 0;
+		while (events.peekPriority() == step) {
+			if (dueCount == due.length)
+				due = Arrays.copyOf(due, 2 * dueCount);
+			due[dueCount++] = events.poll();
+		}
+		int explodingCount = 0;
+		for (int k = 0; k < dueCount; k++) {
+			int slot = due[k];
+			drift(world, slot, step);
+			world.move(slot);
+			world.setTime(slot, step + 1);
+			eventCount++;
+			if (world.getSteps(slot) >= simulation.getLifetime(world.getGeneration(slot))) {
+				if (explodingCount == exploding.length)
+					exploding = Arrays.copyOf(exploding, 2 * explodingCount);
+				exploding[explodingCount++] = slot;
+			} else {
+				schedule(world, slot);
+			}
+		}
+
+		int first = world.size();
+		Arrays.sort(exploding, 0, explodingCount);
+		for (int k = 0; k < explodingCount; k++) {
+			simulation.addExplosion(world.get(exploding[k]));
+		}
+		if (step % simulation.getSpawnInterval() == 0)
+			simulation.newBall();
+		for (int slot = first; slot < world.size(); slot++) {
+			world.setTime(slot, step + 1);
+			schedule(world, slot);
+		}
+
+		// the world fills the slots of exploded balls with the last balls, from
+		// the back, so the queue is told about the same moves
+		int size = world.size();
+		world.endStep();
+		for (int k = explodingCount - 1; k >= 0; k--) {
+			int slot = exploding[k];
+			int last = --size;
+			if (slot != last && events.contains(last))
+				events.rename(last, slot);
+		}
+		simulation.setStepCount(step + 1);
+	}
+
+	/**
+	 * @return the first step from {@code now} where a new ball is added
+	 */
+	private long nextSpawn(int now) {
+		int interval = simulation.getSpawnInterval();
+		return (now + (long) interval - 1) / interval * interval;
+	}
+
+	/**
+	 * Finds the step of the next event of a ball and queues it
+	 */
+	private void schedule(BallWorld world, int slot) {
+		int time = world.getTime(slot);
+		long explosion = Math.max(0,
+				simulation.getLifetime(world.getGeneration(slot)) - 1L - world.getSteps(slot));
+		long bounceX = Motion.firstCrossing(world.getX(slot), world.getSpeedX(slot), world.getAccelerationX(slot),
+				world.getLowerLimitX(slot), world.getUpperLimitX(slot));
+		long bounceY = Motion.firstCrossing(world.getY(slot), world.getSpeedY(slot), world.getAccelerationY(slot),
+				world.getLowerLimitY(slot), world.getUpperLimitY(slot));
+		long next = time + Math.min(explosion, Math.min(bounceX, bounceY));
+		if (next >= Integer.MAX_VALUE)
+			events.remove(slot);
+		else
+			events.set(slot, next);
+	}
+
+	private int elapsed(BallWorld world, int slot) {
+		return simulation.getStepCount() - world.getTime(slot);
+	}
+
+	/**
+	 * Moves a ball without bouncing to a step before its next event
+	 */
+	private static void drift(BallWorld world, int slot, int step) {
+		int k = step - world.getTime(slot);
+		if (k == 0)
+			return;
+		double ax = world.getAccelerationX(slot);
+		double ay = world.getAccelerationY(slot);
+		world.setPosition(slot, Motion.position(world.getX(slot), world.getSpeedX(slot), ax, k),
+				Motion.position(world.getY(slot), world.getSpeedY(slot), ay, k));
+		world.setSpeed(slot, world.getSpeedX(slot) + k * ax, world.getSpeedY(slot) + k * ay);
+		world.setSteps(slot, world.getSteps(slot) + k);
+		world.setTime(slot, step);
+	}
+}
@@ -0,0 +1,147 @@
+package balls;
+
+import java.util.Arrays;
+
+/**
+ * Counts how often durations of different lengths occur, so that percentiles
+ * can be found without keeping every duration.
+ *
+ * Durations are counted in buckets that are 1/16 of a power of two wide, so a
+ * percentile is at most about 6% off, and recording is a few instructions
+ * without any allocation. The histogram is meant to be recorded to by one
+ * thread. Other threads may read it at any time, but then the numbers may be
+ * a little behind.
+ */
+public class LatencyHistogram {
+
+	/** Buckets per power of two, as a power of two */
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+	private final long[] counts = new long[BUCKETS];
+	private long count;
+	private long max;
+	private long total;
+
+	/**
+	 * Counts a duration
+	 *
+	 * @param nanos - the duration, negative durations are counted as 0
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		counts[bucket(nanos)]++;
+		count++;
+		total += nanos;
+		if (nanos > max)
+			max = nanos;
+	}
+
+	/**
+	 * @return number of durations counted
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return longest duration counted, 0 if none
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * @return average duration, 0 if none
+	 */
+	public double getMean() {
+		return count == 0 ? 0 : (double) total / count;
+	}
+
+	/**
+	 * Finds the duration that the given part of the durations are at most
+	 *
+	 * @param percentile - from 0 to 100, for example 99 for the 99th percentile
+	 * @return the duration, 0 if none are counted
+	 */
+	public long getPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("Percentile must be from 0 to 100");
+		long n = count;
+		if (n == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(highestIn(i), max);
+		}
+		return max;
+	}
+
+	/**
+	 * Forgets all durations counted
+	 */
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		max = 0;
+		total = 0;
+	}
+
+	/**
+	 * @return a copy of this histogram
+	 */
+	public LatencyHistogram copy() {
+		LatencyHistogram copy = new LatencyHistogram();
+		System.arraycopy(counts, 0, copy.counts, 0, BUCKETS);
+		copy.count = count;
+		copy.max = max;
+		copy.total = total;
+		return copy;
+	}
+
+	/**
+	 * Makes a histogram of the durations counted since an earlier copy of this
+	 * histogram. The max is the largest bucket with new durations, since the
+	 * exact max of the new durations is not known.
+	 *
+	 * @param earlier - a copy of this histogram from before
+	 * @return the durations counted after the copy
+	 */
+	public LatencyHistogram since(LatencyHistogram earlier) {
+		LatencyHistogram difference = new LatencyHistogram();
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = counts[i] - earlier.counts[i];
+			difference.counts[i] = c;
+			difference.count += c;
+			if (c > 0)
+				difference.max = Math.min(highestIn(i), max);
+		}
+		difference.total = total - earlier.total;
+		return difference;
+	}
+
+	static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS)
+			return (int) nanos;
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @return the largest duration that goes into a bucket
+	 */
+	static long highestIn(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		long lowest = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+		return lowest + (1L << (exponent - SUB_BITS)) - 1;
+	}
+}
@@ -0,0 +1,128 @@
+package balls;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints a line with the {@link SimulationMetrics} of the last interval at a
+ * fixed rate, from a thread of its own so that neither stepping nor drawing
+ * waits for the console.
+ *
+ * Each line has the number of balls, the median, 99th percentile and longest
+ * step and frame since the line before, the average time of each phase of a
+ * step and the bytes allocated per step.
+ */
+public class MetricsReporter {
+
+	private final SimulationMetrics metrics;
+	private final PrintStream out;
+	private ScheduledExecutorService executor;
+
+	// the metrics as of the last line
+	private LatencyHistogram lastSteps = new LatencyHistogram();
+	private LatencyHistogram lastFrames = new LatencyHistogram();
+	private final long[] lastPhaseNanos = new long[SimulationMetrics.Phase.values().length];
+	private long lastDrawNanos;
+	private long lastAllocatedBytes;
+
+	/**
+	 * @param metrics - the metrics to report
+	 * @param out     - where to print the lines
+	 */
+	public MetricsReporter(SimulationMetrics metrics, PrintStream out) {
+		this.metrics = metrics;
+		this.out = out;
+	}
+
+	/**
+	 * Starts printing a line every period
+	 *
+	 * @param period
+	 * @param unit
+	 */
+	public synchronized void start(long period, TimeUnit unit) {
+		if (executor != null)
+			throw new IllegalStateException("Already started");
+		executor = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "metrics reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleAtFixedRate(() -> out.println(report()), period, period, unit);
+	}
+
+	/**
+	 * Stops printing lines
+	 */
+	public synchronized void stop() {
+		if (executor == null)
+			return;
+		executor.shutdownNow();
+		executor = null;
+	}
+
+	/**
+	 * Makes a line with the metrics since the last line. Metrics reset in
+	 * between are reported from the reset on.
+	 *
+	 * @return the line
+	 */
+	public synchronized String report() {
+		LatencyHistogram steps = metrics.getStepTimes().copy();
+		LatencyHistogram frames = metrics.getFrameTimes().copy();
+		if (steps.getCount() < lastSteps.getCount() || frames.getCount() < lastFrames.getCount())
+			forget();
+		LatencyHistogram newSteps = steps.since(lastSteps);
+		LatencyHistogram newFrames = frames.since(lastFrames);
+		long stepCount = newSteps.getCount();
+
+		StringBuilder line = new StringBuilder();
+		line.append(String.format("%d balls, %d created, %d exploded", metrics.getLiveBalls(),
+				metrics.getBallsCreated(), metrics.getBallsExploded()));
+		line.append(String.format(" | step %s", percentiles(newSteps)));
+		if (newFrames.getCount() > 0)
+			line.append(String.format(" | frame %s", percentiles(newFrames)));
+		line.append(" |");
+		for (SimulationMetrics.Phase phase : SimulationMetrics.Phase.values()) {
+			long nanos = metrics.getPhaseNanos(phase);
+			line.append(String.format(" %s %.2f", phase.name().toLowerCase(),
+					perCount(nanos - lastPhaseNanos[phase.ordinal()], stepCount) / 1e6));
+			lastPhaseNanos[phase.ordinal()] = nanos;
+		}
+		long drawNanos = metrics.getDrawNanos();
+		if (newFrames.getCount() > 0)
+			line.append(String.format(" draw %.2f", perCount(drawNanos - lastDrawNanos, newFrames.getCount()) / 1e6));
+		line.append(" ms");
+		long allocated = metrics.getAllocatedBytes();
+		line.append(String.format(" | %.0f B/step", perCount(allocated - lastAllocatedBytes, stepCount)));
+
+		lastSteps = steps;
+		lastFrames = frames;
+		lastDrawNanos = drawNanos;
+		lastAllocatedBytes = allocated;
+		return line.toString();
+	}
+
+	/**
+	 * Starts over after the metrics have been reset
+	 */
+	private void forget() {
+		lastSteps = new LatencyHistogram();
+		lastFrames = new LatencyHistogram();
+		Arrays.fill(lastPhaseNanos, 0);
+		lastDrawNanos = 0;
+		lastAllocatedBytes = 0;
+	}
+
+	private static String percentiles(LatencyHistogram times) {
+		return String.format("p50 %.2f p99 %.2f max %.2f ms", times.getPercentile(50) / 1e6,
+				times.getPercentile(99) / 1e6, times.getMax() / 1e6);
+	}
+
+	private static double perCount(long total, long count) {
+		return count == 0 ? 0 : (double) total / count;
+	}
+}
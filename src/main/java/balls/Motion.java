@@ -12,6 +12,9 @@ package balls;
  */
 public class Motion {
 
+	/** Number of steps before a bounce of a motion that never bounces */
+	static final long NEVER = Long.MAX_VALUE;
+
 	private double position;
 	private double speed;
 	private double acceleration;
@@ -85,16 +88,7 @@ public class Motion {
 	 * Bouncing only works on boundaries, not on other objects with motion.
 	 */
 	public void move() {
-		if (mustBounce()) {
-			double distanceToMove = speed;
-			// if speed is large compared to upper and lower limits we might need
-			// more than one bounce, therefore a while loop
-			while (distanceToMove != 0.0) {
-				distanceToMove = doBounce(distanceToMove);
-			}
-		} else {
-			position += speed;
-		}
+		travel(speed);
 		speed += acceleration;
 
 		if ((hasLowerLimit && position < lowerLimit) || (hasUpperLimit && position > upperLimit))
@@ -102,6 +96,77 @@ public class Motion {
 
 	}
 
+	/**
+	 * Moves the given distance, bouncing at the limits. The speed is turned
+	 * and scaled at every bounce just like the distance left.
+	 */
+	private void travel(double distance) {
+		if (mustBounce(distance)) {
+			double distanceToMove = doBounce(distance);
+			// if speed is large compared to upper and lower limits we might need
+			// more than one bounce, these are all done at once
+			if (mustBounce(distanceToMove))
+				doBounces(distanceToMove);
+			else
+				position += distanceToMove;
+		} else {
+			position += distance;
+		}
+	}
+
+	/**
+	 * Does the same as calling {@link #move()} the given number of times, up
+	 * to rounding. Without acceleration, and with bounces that do not speed it
+	 * up, the steps add up to one long move, which takes constant time. With
+	 * acceleration the position and speed between bounces are worked out
+	 * directly, so this takes constant time for each bounce instead of for
+	 * each step. A motion that loses speed on bounces soon settles into
+	 * bounces that repeat exactly, and once they repeat, whole rounds of them
+	 * are skipped.
+	 *
+	 * @param steps - number of moves, at least 0
+	 */
+	public void advance(long steps) {
+		if (steps < 0)
+			throw new IllegalArgumentException("Number of steps must not be negative");
+		if (acceleration == 0 && bounceFactor <= 1) {
+			travel(steps * speed);
+			return;
+		}
+		double lower = hasLowerLimit ? lowerLimit : Double.NEGATIVE_INFINITY;
+		double upper = hasUpperLimit ? upperLimit : Double.POSITIVE_INFINITY;
+		// the state after a bounce that later bounces are compared with, as in
+		// Brent's cycle detection
+		double cyclePosition = Double.NaN;
+		double cycleSpeed = Double.NaN;
+		long cycleSteps = 0;
+		long power = 1;
+		long bounces = 0;
+		while (steps > 0) {
+			long free = Math.min(steps, firstCrossing(position, speed, acceleration, lower, upper));
+			// rounding must not move the position past a limit
+			position = Math.min(Math.max(position(position, speed, acceleration, free), lower), upper);
+			speed += free * acceleration;
+			steps -= free;
+			if (steps == 0)
+				break;
+			move();
+			steps--;
+			if (position == cyclePosition && speed == cycleSpeed) {
+				// everything from here repeats every cycleSteps - steps steps
+				steps %= cycleSteps - steps;
+				cyclePosition = Double.NaN;
+				power = Long.MAX_VALUE;
+			} else if (++bounces == power) {
+				cyclePosition = position;
+				cycleSpeed = speed;
+				cycleSteps = steps;
+				power *= 2;
+				bounces = 0;
+			}
+		}
+	}
+
 	/**
 	 * Sets the bounce factor for this motion
 	 * Bounce factor describes how much of the speed is retained after the bounce.
@@ -122,13 +187,14 @@ public class Motion {
 	}
 
 	/**
-	 * Checks if this motion is such that a bounce is needed at next move
+	 * Checks if moving the given distance from the current position needs a
+	 * bounce
 	 */
-	private boolean mustBounce() {
-		if (speed > 0 && hasUpperLimit && position + speed > upperLimit) {
+	private boolean mustBounce(double distanceToMove) {
+		if (distanceToMove > 0 && hasUpperLimit && position + distanceToMove > upperLimit) {
 			return true;
 		}
-		if (speed < 0 && hasLowerLimit && position + speed < lowerLimit) {
+		if (distanceToMove < 0 && hasLowerLimit && position + distanceToMove < lowerLimit) {
 			return true;
 		}
 		return false;
@@ -158,6 +224,188 @@ public class Motion {
 		return distanceToMove;
 	}
 
+	/**
+	 * Performs a move from one limit that bounces at least once more.
+	 * This happens only when there are both limits, and is computed in
+	 * constant time no matter how many bounces there are.
+	 */
+	private void doBounces(double distanceToMove) {
+		double bounces = bounceCount(Math.abs(distanceToMove), upperLimit - lowerLimit, bounceFactor);
+		position = positionAfterBounces(distanceToMove, lowerLimit, upperLimit, bounceFactor, bounces);
+		speed *= speedFactorAfterBounces(bounceFactor, bounces);
+	}
+
+	/**
+	 * Finds how many times a motion bounces between two limits.
+	 * After every bounce the distance left is multiplied by the bounce factor,
+	 * so with bounce factor b the distance left after k bounces is
+	 * b^k * rest - width * (b + b^2 + ... + b^k), and the motion stops bouncing
+	 * when this is at most the width.
+	 * 
+	 * @param rest         - distance left to move, starting at one limit
+	 * @param width        - distance between the limits
+	 * @param bounceFactor
+	 * @return number of bounces, infinite if the motion comes to rest at a
+	 *         limit
+	 * @throws IllegalStateException if the motion never stops bouncing
+	 */
+	static double bounceCount(double rest, double width, double bounceFactor) {
+		if (rest <= width)
+			return 0;
+		if (bounceFactor == 0)
+			return 1;
+		if (bounceFactor >= 1 && width == 0)
+			throw new IllegalStateException("Motion bounces forever between equal limits.");
+		if (bounceFactor == 1)
+			return Math.ceil(rest / width) - 1;
+		// with c = width * b / (1 - b) the rest after k bounces is
+		// b^k * (rest + c) - c, which is at most width when
+		// b^k <= (width + c) / (rest + c)
+		double c = width * bounceFactor / (1 - bounceFactor);
+		if (bounceFactor > 1 && rest + c >= 0)
+			throw new IllegalStateException("Motion bounces faster and faster forever.");
+		double bounces = Math.ceil(Math.log((width + c) / (rest + c)) / Math.log(bounceFactor));
+		return Math.max(bounces, 1);
+	}
+
+	/**
+	 * Finds the position after moving from one limit and bouncing the given
+	 * number of times.
+	 * 
+	 * @param distanceToMove - distance to move from the limit, positive when
+	 *                       moving from the lower limit
+	 * @param lowerLimit
+	 * @param upperLimit
+	 * @param bounceFactor
+	 * @param bounces        - number of bounces, see
+	 *                       {@link #bounceCount(double, double, double)}
+	 * @return the position
+	 */
+	static double positionAfterBounces(double distanceToMove, double lowerLimit, double upperLimit,
+			double bounceFactor, double bounces) {
+		double width = upperLimit - lowerLimit;
+		double rest = Math.abs(distanceToMove);
+		if (bounceFactor == 1)
+			rest -= bounces * width;
+		else if (bounceFactor != 0) {
+			double c = width * bounceFactor / (1 - bounceFactor);
+			rest = Math.pow(bounceFactor, bounces) * (rest + c) - c;
+		} else
+			rest = 0;
+		// rounding must not move the position past a limit
+		rest = Math.min(Math.max(rest, 0), width);
+
+		boolean movingDown = (distanceToMove < 0) == isEven(bounces);
+		return movingDown ? upperLimit - rest : lowerLimit + rest;
+	}
+
+	/**
+	 * @return what the speed is multiplied with by the given number of bounces
+	 */
+	static double speedFactorAfterBounces(double bounceFactor, double bounces) {
+		double factor = bounceFactor == 1 ? 1 : Math.pow(bounceFactor, bounces);
+		return isEven(bounces) ? factor : -factor;
+	}
+
+	/**
+	 * A number of bounces is even if it is infinite, then the motion has come
+	 * to rest and the direction does not matter
+	 */
+	private static boolean isEven(double bounces) {
+		return bounces % 2 != 1;
+	}
+
+	/**
+	 * @return the position after k steps without bouncing
+	 */
+	static double position(double position, double speed, double acceleration, long k) {
+		return position + k * speed + acceleration * ((double) k * (k - 1) / 2);
+	}
+
+	/**
+	 * Finds the first step that would take a motion past one of its limits,
+	 * which is the step where it bounces. The move of step k ends at
+	 * p + (k + 1) s + a k (k + 1) / 2, so the step is found from the roots of
+	 * that, and then checked the same way {@link #move()} checks for a
+	 * bounce, so that rounding can not make the two disagree.
+	 *
+	 * @return number of steps before the step that bounces, {@link #NEVER}
+	 *         if the motion stays within the limits
+	 */
+	static long firstCrossing(double position, double speed, double acceleration, double lower, double upper) {
+		long k = NEVER;
+		if (upper != Double.POSITIVE_INFINITY)
+			k = firstCrossing(position, speed, acceleration, upper, 1);
+		if (lower != Double.NEGATIVE_INFINITY)
+			k = Math.min(k, firstCrossing(position, speed, acceleration, lower, -1));
+		return k;
+	}
+
+	/**
+	 * Finds the first step that would take a motion past one limit
+	 *
+	 * @param direction - 1 for an upper limit, -1 for a lower limit
+	 */
+	private static long firstCrossing(double position, double speed, double acceleration, double limit,
+			int direction) {
+		long k = firstRoot(direction * acceleration / 2, direction * (speed + acceleration / 2),
+				direction * (position + speed - limit));
+		if (k == NEVER)
+			return NEVER;
+		while (k > 0 && crosses(position, speed, acceleration, limit, direction, k - 1)) {
+			k--;
+		}
+		// a motion that just touches the limit may stay within it
+		for (int tries = 0; !crosses(position, speed, acceleration, limit, direction, k); tries++) {
+			if (tries == 4)
+				return NEVER;
+			k++;
+		}
+		return k;
+	}
+
+	/**
+	 * @return true if the move of step k goes past the limit
+	 */
+	private static boolean crosses(double position, double speed, double acceleration, double limit, int direction,
+			long k) {
+		double end = position(position, speed, acceleration, k) + (speed + k * acceleration);
+		return direction > 0 ? end > limit : end < limit;
+	}
+
+	/**
+	 * Finds where a k^2 + b k + c first goes above 0 for k of at least 0
+	 *
+	 * @return the whole number at or above that point, {@link #NEVER} if it
+	 *         does not or is too far away to count the steps
+	 */
+	private static long firstRoot(double a, double b, double c) {
+		if (c > 0)
+			return 0;
+		double root;
+		if (a == 0) {
+			if (b <= 0)
+				return NEVER;
+			root = -c / b;
+		} else {
+			double discriminant = b * b - 4 * a * c;
+			if (discriminant < 0)
+				return NEVER;
+			// for both signs of a this is the root where the polynomial goes
+			// from below 0 to above, and the other root must not be before 0
+			// written so that -b and the square root are never subtracted,
+			// which loses all precision when a is tiny
+			double sqrt = Math.sqrt(discriminant);
+			root = b > 0 ? 2 * c / (-b - sqrt) : (-b + sqrt) / (2 * a);
+			if (a < 0 && (-b - sqrt) / (2 * a) < 0)
+				return NEVER;
+		}
+		// leave room for checking the steps after it
+		if (!(root < NEVER / 2))
+			return NEVER;
+		return Math.max(0, (long) Math.ceil(root));
+	}
+
 	/**
 	 * Changes the speed
 	 * 
@@ -0,0 +1,16 @@
+package balls;
+
+/**
+ * Receives pairs of balls that might touch each other.
+ */
+@FunctionalInterface
+public interface PairHandler {
+
+	/**
+	 * Called for a pair of balls whose bounding boxes overlap
+	 * 
+	 * @param a - slot of the first ball
+	 * @param b - slot of the second ball
+	 */
+	void pair(int a, int b);
+}
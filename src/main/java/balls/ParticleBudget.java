@@ -0,0 +1,219 @@
+package balls;
+
+import java.util.Arrays;
+
+/**
+ * Limits how many balls a {@link BallSimulation} has, so that memory and
+ * step time stay bounded when many balls explode at once.
+ *
+ * A budget has a hard cap on the number of balls in the world, which is
+ * never passed, and a limit on the number of balls made in one step, by
+ * explosions and new balls together. Balls that do not fit are not made and
+ * counted as rejected. When the world is full, the budget can make room by
+ * removing balls already there, picked by an {@link Eviction} policy, and
+ * these are counted as evicted. The limit on balls made in a step is never
+ * helped by eviction.
+ */
+public class ParticleBudget {
+
+	/** Which balls are removed to make room for new ones */
+	public enum Eviction {
+		/** No balls are removed, new balls that do not fit are rejected */
+		NONE,
+		/** The balls created first */
+		OLDEST,
+		/** The smallest balls */
+		SMALLEST,
+		/** Balls outside the area, the oldest first, then the oldest others */
+		OFF_SCREEN
+	}
+
+	private final int cap;
+	private final int emissionLimit;
+	private final Eviction eviction;
+	private long rejected;
+	private long evicted;
+	/** Number of balls made in this step */
+	private int emitted;
+	/**
+	 * Balls in the order they are evicted, the key of the policy in the high
+	 * 32 bits and the slot in the low 31 bits
+	 */
+	private long[] order = new long[0];
+	private int orderSize;
+	private int next;
+	/** True when {@link #order} has been made in this step */
+	private boolean sorted;
+
+	/**
+	 * Creates a budget
+	 *
+	 * @param cap           - largest number of balls in the world, at least 1
+	 * @param emissionLimit - largest number of balls made in one step, at least 1
+	 * @param eviction      - how to make room when the world is full
+	 */
+	public ParticleBudget(int cap, int emissionLimit, Eviction eviction) {
+		if (cap < 1 || emissionLimit < 1)
+			throw new IllegalArgumentException("Cap and emission limit must be at least 1");
+		if (eviction == null)
+			throw new IllegalArgumentException("Eviction policy must be given");
+		this.cap = cap;
+		this.emissionLimit = emissionLimit;
+		this.eviction = eviction;
+	}
+
+	/**
+	 * Creates a budget from a string, so it can be chosen on the command line
+	 *
+	 * @param budget - the cap, the emission limit and the eviction policy
+	 *               separated by commas, like "100000,2000,oldest"
+	 * @return the budget
+	 */
+	public static ParticleBudget parse(String budget) {
+		String[] parts = budget.split(",");
+		if (parts.length != 3)
+			throw new IllegalArgumentException("Expected cap, emission limit and eviction: " + budget);
+		Eviction eviction = Eviction.valueOf(parts[2].trim().toUpperCase().replace('-', '_'));
+		return new ParticleBudget(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()), eviction);
+	}
+
+	public int getCap() {
+		return cap;
+	}
+
+	public int getEmissionLimit() {
+		return emissionLimit;
+	}
+
+	public Eviction getEviction() {
+		return eviction;
+	}
+
+	/**
+	 * @return number of balls that were not made because they did not fit
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * @return number of balls removed to make room for new ones
+	 */
+	public long getEvicted() {
+		return evicted;
+	}
+
+	/**
+	 * Starts a new step, with no balls made in it yet
+	 */
+	void beginStep() {
+		emitted = 0;
+		sorted = false;
+	}
+
+	/**
+	 * Decides how many new balls may be made, removing balls from the world
+	 * to make room if the policy allows it
+	 *
+	 * @param world   - the world the balls are made in
+	 * @param wanted  - number of new balls wanted
+	 * @param live    - number of balls in the world that stay, not counting a
+	 *                ball that is about to be removed
+	 * @param max     - largest number of balls the simulation allows right
+	 *                now, which lowers the cap while it is below it
+	 * @param keep    - a ball that must not be evicted, or null
+	 * @param width   - width of the area, for {@link Eviction#OFF_SCREEN}
+	 * @param height  - height of the area
+	 * @return number of new balls that may be made, at most {@code wanted}
+	 */
+	int admit(BallWorld world, int wanted, int live, int max, Ball keep, double width, double height) {
+		int allowed = Math.max(0, Math.min(wanted, emissionLimit - emitted));
+		int room = Math.min(cap, max) - live;
+		if (allowed > room && eviction != Eviction.NONE)
+			room += evict(world, allowed - room, keep, width, height);
+		allowed = Math.max(0, Math.min(allowed, room));
+		emitted += allowed;
+		rejected += wanted - allowed;
+		return allowed;
+	}
+
+	/**
+	 * Removes balls from the world in the order of the policy
+	 *
+	 * @return number of balls removed
+	 */
+	private int evict(BallWorld world, int count, Ball keep, double width, double height) {
+		// outside of a step the removals are held back until all are picked,
+		// so that the slots in the order stay valid
+		boolean outsideStep = !world.isInStep();
+		if (outsideStep)
+			world.beginStep();
+		if (!sorted)
+			sort(world, width, height);
+		int removed = 0;
+		while (removed < count && next < orderSize) {
+			int slot = (int) (order[next++] & Integer.MAX_VALUE);
+			Ball ball = world.get(slot);
+			if (ball == null || ball == keep)
+				continue;
+			world.recycle(ball);
+			removed++;
+		}
+		evicted += removed;
+		if (outsideStep) {
+			world.endStep();
+			sorted = false;
+		}
+		return removed;
+	}
+
+	/**
+	 * Puts the balls in the world in the order they are evicted
+	 */
+	private void sort(BallWorld world, double width, double height) {
+		if (order.length < world.size())
+			order = new long[world.size()];
+		orderSize = 0;
+		next = 0;
+		sorted = true;
+		if (eviction == Eviction.OFF_SCREEN) {
+			// the balls outside the area go first, each group oldest first
+			add(world, width, height, true);
+			Arrays.sort(order, 0, orderSize);
+			int offScreen = orderSize;
+			add(world, width, height, false);
+			Arrays.sort(order, offScreen, orderSize);
+		} else {
+			add(world, width, height, false);
+			Arrays.sort(order, 0, orderSize);
+		}
+	}
+
+	/**
+	 * Adds the balls in the world to the order, for
+	 * {@link Eviction#OFF_SCREEN} only those inside or outside the area
+	 */
+	private void add(BallWorld world, double width, double height, boolean offScreen) {
+		for (int slot = 0; slot < world.size(); slot++) {
+			if (world.get(slot) == null)
+				continue;
+			if (eviction == Eviction.OFF_SCREEN && isOffScreen(world, slot, width, height) != offScreen)
+				continue;
+			long key;
+			if (eviction == Eviction.SMALLEST)
+				// the bits of a positive float sort like the float
+				key = Float.floatToIntBits((float) world.getRadius(slot));
+			else
+				// ids count on past Integer.MAX_VALUE as negative numbers
+				key = Integer.toUnsignedLong(world.getId(slot));
+			order[orderSize++] = (key << 31) | slot;
+		}
+	}
+
+	private static boolean isOffScreen(BallWorld world, int slot, double width, double height) {
+		double x = world.getX(slot);
+		double y = world.getY(slot);
+		double r = world.getRadius(slot);
+		return x + r < 0 || x - r > width || y + r < 0 || y - r > height;
+	}
+}
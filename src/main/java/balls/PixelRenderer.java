@@ -0,0 +1,442 @@
+package balls;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+import javafx.scene.paint.RadialGradient;
+
+/**
+ * Draws balls by writing pixels straight into an image, instead of filling
+ * one oval at a time through a {@link GraphicsContext}.
+ *
+ * The image is split into square tiles. The balls of a frame are first
+ * sorted into the tiles they touch, then every tile is drawn on its own,
+ * into a small array that stays in the cache, and copied into the image.
+ * Tiles do not share pixels, so with a parallelism above 1 they are drawn
+ * at the same time on a {@link ForkJoinPool}.
+ *
+ * The pixels are kept off the heap in an {@link IntBuffer} of premultiplied
+ * ARGB, shown by JavaFX through a {@link PixelBuffer} without copying.
+ * Gradients of the palette are turned into a table of colors for each color
+ * index, so a pixel costs a table lookup and a blend. Edges are smoothed by
+ * how much of the pixel the ball covers. Small balls can be drawn flat or as
+ * single pixels with {@link #setDetailLevels(DetailLevels)}.
+ *
+ * A frame is drawn with {@link #begin(int, int)}, {@link #add} for every
+ * ball, back to front, and {@link #draw(GraphicsContext)}.
+ */
+public class PixelRenderer {
+
+	/** Default width and height of a tile */
+	public static final int DEFAULT_TILE_SIZE = 64;
+	/**
+	 * Number of colors in the table for each gradient. The table is looked up
+	 * by squared distance from the center of the gradient, to save a square
+	 * root per pixel, so it needs more colors near the center.
+	 */
+	private static final int RAMP_SIZE = 4096;
+
+	private final int tileSize;
+	/** Premultiplied colors along the gradient of each color index */
+	private final int[][] ramps;
+	/** Center and radius of each gradient, relative to the size of the ball */
+	private final float[] gradientX;
+	private final float[] gradientY;
+	private final float[] gradientRadius;
+	/** Premultiplied flat color of each color index */
+	private final int[] flatColors;
+	private final ThreadLocal<int[]> tilePixels;
+
+	private DetailLevels detailLevels = DetailLevels.FULL;
+	private int parallelism = 1;
+	private ForkJoinPool pool;
+
+	private int width;
+	private int height;
+	private int tilesX;
+	private int tilesY;
+	private IntBuffer pixels = allocate(0, 0);
+	private PixelBuffer<IntBuffer> pixelBuffer;
+	private WritableImage image;
+
+	// the balls of the frame
+	private int count;
+	private float[] ballX = new float[0];
+	private float[] ballY = new float[0];
+	private float[] ballRadius = new float[0];
+	private int[] ballColor = new int[0];
+	/** Balls of tile t are tileBalls[tileStart[t]] to tileBalls[tileStart[t + 1] - 1] */
+	private int[] tileStart = new int[1];
+	private int[] tileBalls = new int[0];
+	/** Where the next ball of each tile goes while sorting */
+	private int[] tileFill = new int[0];
+
+	/**
+	 * Creates a renderer with the default tile size
+	 *
+	 * @param palette - the colors, color i is drawn for color index i
+	 */
+	public PixelRenderer(Paint[] palette) {
+		this(palette, DEFAULT_TILE_SIZE);
+	}
+
+	/**
+	 * Creates a renderer
+	 *
+	 * @param palette  - the colors, each a {@link Color} or a proportional
+	 *                 {@link RadialGradient}
+	 * @param tileSize - width and height of the tiles
+	 */
+	public PixelRenderer(Paint[] palette, int tileSize) {
+		if (tileSize < 1)
+			throw new IllegalArgumentException("Tile size must be positive");
+		this.tileSize = tileSize;
+		ramps = new int[palette.length][];
+		gradientX = new float[palette.length];
+		gradientY = new float[palette.length];
+		gradientRadius = new float[palette.length];
+		flatColors = new int[palette.length];
+		for (int c = 0; c < palette.length; c++) {
+			setColor(c, palette[c]);
+		}
+		tilePixels = ThreadLocal.withInitial(() -> new int[tileSize * tileSize]);
+	}
+
+	public DetailLevels getDetailLevels() {
+		return detailLevels;
+	}
+
+	/**
+	 * Sets how much detail balls are drawn with. There are no sprites, so
+	 * balls at the sprite level get the full gradient.
+	 *
+	 * @param detailLevels - {@link DetailLevels#FULL} to draw every ball with
+	 *                     the full gradient
+	 */
+	public void setDetailLevels(DetailLevels detailLevels) {
+		this.detailLevels = detailLevels;
+	}
+
+	/**
+	 * Sets the number of threads drawing tiles
+	 *
+	 * @param parallelism - 1 to draw on the calling thread only
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		if (pool != null)
+			pool.shutdown();
+		this.parallelism = parallelism;
+		pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Stops the threads used for drawing
+	 */
+	public void shutdown() {
+		setParallelism(1);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Starts a new frame with no balls, resizing the image if needed
+	 *
+	 * @param width  - width of the image in pixels
+	 * @param height - height of the image in pixels
+	 */
+	public void begin(int width, int height) {
+		if (width < 0 || height < 0)
+			throw new IllegalArgumentException("Size must not be negative");
+		if (width != this.width || height != this.height) {
+			this.width = width;
+			this.height = height;
+			pixels = allocate(width, height);
+			pixelBuffer = null;
+			image = null;
+			tilesX = (width + tileSize - 1) / tileSize;
+			tilesY = (height + tileSize - 1) / tileSize;
+			tileStart = new int[tilesX * tilesY + 1];
+			tileFill = new int[tilesX * tilesY];
+		}
+		count = 0;
+	}
+
+	/**
+	 * Adds a ball to the frame, in front of the balls added before it
+	 *
+	 * @param colorIndex - palette index of the color
+	 * @param x          - x position of the center
+	 * @param y          - y position of the center
+	 * @param radius
+	 */
+	public void add(int colorIndex, double x, double y, double radius) {
+		if (colorIndex < 0 || colorIndex >= ramps.length)
+			throw new IllegalArgumentException("No color " + colorIndex);
+		if (count == ballX.length) {
+			int capacity = Math.max(16, 2 * count);
+			ballX = Arrays.copyOf(ballX, capacity);
+			ballY = Arrays.copyOf(ballY, capacity);
+			ballRadius = Arrays.copyOf(ballRadius, capacity);
+			ballColor = Arrays.copyOf(ballColor, capacity);
+		}
+		ballX[count] = (float) x;
+		ballY[count] = (float) y;
+		ballRadius[count] = (float) radius;
+		ballColor[count] = colorIndex;
+		count++;
+	}
+
+	/**
+	 * Draws the balls of the frame into the pixels
+	 */
+	public void render() {
+		sortIntoTiles();
+		int tiles = tilesX * tilesY;
+		if (pool == null || tiles < 2) {
+			for (int t = 0; t < tiles; t++) {
+				renderTile(t);
+			}
+			return;
+		}
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(tiles);
+		for (int t = 0; t < tiles; t++) {
+			int tile = t;
+			tasks.add(ForkJoinTask.adapt(() -> renderTile(tile)));
+		}
+		pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+	}
+
+	/**
+	 * Draws the balls of the frame and shows them on a canvas. Must be called
+	 * on the JavaFX Application Thread.
+	 *
+	 * @param context - where to draw the image, at (0, 0)
+	 */
+	public void draw(GraphicsContext context) {
+		WritableImage image = getImage();
+		pixelBuffer.updateBuffer(buffer -> {
+			render();
+			return null;
+		});
+		context.drawImage(image, 0, 0);
+	}
+
+	/**
+	 * Returns the image showing the pixels, which is replaced when the size
+	 * changes. Must be called on the JavaFX Application Thread.
+	 *
+	 * @return the image
+	 */
+	public WritableImage getImage() {
+		if (image == null) {
+			pixelBuffer = new PixelBuffer<>(Math.max(1, width), Math.max(1, height), pixels,
+					PixelFormat.getIntArgbPreInstance());
+			image = new WritableImage(pixelBuffer);
+		}
+		return image;
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @return the premultiplied ARGB color of a pixel
+	 */
+	public int getPixel(int x, int y) {
+		return pixels.get(y * width + x);
+	}
+
+	/**
+	 * Allocates pixels off the heap, at least one so that there is an image
+	 */
+	private static IntBuffer allocate(int width, int height) {
+		return ByteBuffer.allocateDirect(4 * Math.max(1, width) * Math.max(1, height)).order(ByteOrder.nativeOrder())
+				.asIntBuffer();
+	}
+
+	/**
+	 * Puts the index of every ball into the tiles its box touches, keeping
+	 * the order the balls were added in
+	 */
+	private void sortIntoTiles() {
+		int tiles = tilesX * tilesY;
+		Arrays.fill(tileStart, 0);
+		for (int pass = 0; pass < 2; pass++) {
+			for (int i = 0; i < count; i++) {
+				float r = ballRadius[i] + 0.5f;
+				int x0 = Math.max(0, (int) Math.floor(ballX[i] - r));
+				int x1 = Math.min(width - 1, (int) Math.floor(ballX[i] + r));
+				int y0 = Math.max(0, (int) Math.floor(ballY[i] - r));
+				int y1 = Math.min(height - 1, (int) Math.floor(ballY[i] + r));
+				for (int ty = y0 / tileSize; ty <= y1 / tileSize && x0 <= x1; ty++) {
+					for (int tx = x0 / tileSize; tx <= x1 / tileSize; tx++) {
+						if (pass == 0)
+							tileStart[ty * tilesX + tx + 1]++;
+						else
+							tileBalls[tileFill[ty * tilesX + tx]++] = i;
+					}
+				}
+			}
+			if (pass == 0) {
+				for (int t = 0; t < tiles; t++) {
+					tileStart[t + 1] += tileStart[t];
+				}
+				if (tileBalls.length < tileStart[tiles])
+					tileBalls = new int[Math.max(tileStart[tiles], 2 * tileBalls.length)];
+				System.arraycopy(tileStart, 0, tileFill, 0, tiles);
+			}
+		}
+	}
+
+	private void renderTile(int tile) {
+		int left = (tile % tilesX) * tileSize;
+		int top = (tile / tilesX) * tileSize;
+		int w = Math.min(tileSize, width - left);
+		int h = Math.min(tileSize, height - top);
+		int[] tilePixels = this.tilePixels.get();
+		Arrays.fill(tilePixels, 0, w * h, 0);
+		for (int k = tileStart[tile]; k < tileStart[tile + 1]; k++) {
+			renderBall(tileBalls[k], tilePixels, left, top, w, h);
+		}
+		for (int row = 0; row < h; row++) {
+			pixels.put((top + row) * width + left, tilePixels, row * w, w);
+		}
+	}
+
+	/**
+	 * Blends the part of a ball inside a tile into the pixels of the tile
+	 */
+	private void renderBall(int i, int[] tilePixels, int left, int top, int w, int h) {
+		float cx = ballX[i];
+		float cy = ballY[i];
+		float r = ballRadius[i];
+		int color = ballColor[i];
+		DetailLevels.Level level = detailLevels.levelOf(r);
+		if (level == DetailLevels.Level.POINT) {
+			int px = (int) Math.floor(cx) - left;
+			int py = (int) Math.floor(cy) - top;
+			if (px >= 0 && px < w && py >= 0 && py < h)
+				tilePixels[py * w + px] = over(flatColors[color], tilePixels[py * w + px]);
+			return;
+		}
+		boolean flat = level == DetailLevels.Level.FLAT;
+		int[] ramp = ramps[color];
+		float fx = cx + (2 * gradientX[color] - 1) * r;
+		float fy = cy + (2 * gradientY[color] - 1) * r;
+		float gradientSize = 2 * r * gradientRadius[color];
+		float scale = (RAMP_SIZE - 1) / (gradientSize * gradientSize);
+		float outer = r + 0.5f;
+		float outer2 = outer * outer;
+		float inner = Math.max(0, r - 0.5f);
+		float inner2 = inner * inner;
+
+		// pixels are found from the center of the ball in image coordinates, so
+		// that the tile does not change how they are rounded
+		int y0 = Math.max(top, (int) Math.floor(cy - outer));
+		int y1 = Math.min(top + h - 1, (int) Math.floor(cy + outer));
+		for (int py = y0; py <= y1; py++) {
+			float dy = py + 0.5f - cy;
+			float span2 = outer2 - dy * dy;
+			if (span2 <= 0)
+				continue;
+			float span = (float) Math.sqrt(span2);
+			int x0 = Math.max(left, (int) Math.floor(cx - span));
+			int x1 = Math.min(left + w - 1, (int) Math.floor(cx + span));
+			float gy = py + 0.5f - fy;
+			int row = (py - top) * w - left;
+			for (int px = x0; px <= x1; px++) {
+				float dx = px + 0.5f - cx;
+				float d2 = dx * dx + dy * dy;
+				if (d2 >= outer2)
+					continue;
+				int src;
+				if (flat) {
+					src = flatColors[color];
+				} else {
+					float gx = px + 0.5f - fx;
+					int index = (int) ((gx * gx + gy * gy) * scale + 0.5f);
+					src = ramp[Math.min(RAMP_SIZE - 1, index)];
+				}
+				if (d2 > inner2)
+					src = scale(src, outer - (float) Math.sqrt(d2));
+				tilePixels[row + px] = over(src, tilePixels[row + px]);
+			}
+		}
+	}
+
+	/**
+	 * Multiplies a premultiplied color by a coverage from 0 to 1
+	 */
+	private static int scale(int color, float coverage) {
+		int f = (int) (Math.min(1, coverage) * 256);
+		return ((color >>> 24) * f >> 8) << 24 | ((color >> 16 & 0xff) * f >> 8) << 16
+				| ((color >> 8 & 0xff) * f >> 8) << 8 | (color & 0xff) * f >> 8;
+	}
+
+	/**
+	 * Blends a premultiplied color over another
+	 */
+	private static int over(int src, int dst) {
+		int keep = 255 - (src >>> 24);
+		if (keep == 0)
+			return src;
+		// adding the two pairs of channels at once, they can not overflow into each other
+		int rb = ((dst & 0xff00ff) * keep + 0x800080 >>> 8 & 0xff00ff) + (src & 0xff00ff);
+		int ag = ((dst >>> 8 & 0xff00ff) * keep + 0x800080 >>> 8 & 0xff00ff) + (src >>> 8 & 0xff00ff);
+		return ag << 8 | rb;
+	}
+
+	/**
+	 * Makes the table of colors along the gradient of a paint
+	 */
+	private void setColor(int colorIndex, Paint paint) {
+		int[] ramp = new int[RAMP_SIZE];
+		if (paint instanceof Color) {
+			Arrays.fill(ramp, premultiply((Color) paint));
+			gradientX[colorIndex] = 0.5f;
+			gradientY[colorIndex] = 0.5f;
+			gradientRadius[colorIndex] = 0.5f;
+		} else if (paint instanceof RadialGradient && ((RadialGradient) paint).isProportional()) {
+			RadialGradient gradient = (RadialGradient) paint;
+			for (int k = 0; k < RAMP_SIZE; k++) {
+				ramp[k] = premultiply(DetailLevels.colorAt(gradient, Math.sqrt(k / (double) (RAMP_SIZE - 1))));
+			}
+			gradientX[colorIndex] = (float) gradient.getCenterX();
+			gradientY[colorIndex] = (float) gradient.getCenterY();
+			gradientRadius[colorIndex] = (float) gradient.getRadius();
+		} else {
+			throw new IllegalArgumentException("Can not draw " + paint);
+		}
+		ramps[colorIndex] = ramp;
+		flatColors[colorIndex] = premultiply(DetailLevels.flatColor(paint));
+	}
+
+	private static int premultiply(Color color) {
+		double a = color.getOpacity();
+		return (int) Math.round(a * 255) << 24 | (int) Math.round(color.getRed() * a * 255) << 16
+				| (int) Math.round(color.getGreen() * a * 255) << 8 | (int) Math.round(color.getBlue() * a * 255);
+	}
+}
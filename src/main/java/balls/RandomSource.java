@@ -0,0 +1,149 @@
+package balls;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Random numbers for the simulation, from one seed but without threads
+ * waiting for each other.
+ *
+ * Every thread using a source gets a {@link SplittableRandom} stream of its
+ * own, so drawing numbers is never shared between threads the way
+ * {@code Math.random()} is. The streams are numbered in the order threads
+ * first use the source, and stream i is always the same for the same seed,
+ * so as long as one thread does all the drawing, or each thread draws from
+ * {@link #stream(long)} with a fixed index, a seed gives the same numbers
+ * every run.
+ *
+ * The state of the streams can not be read, so to save it the source is
+ * started over from a new seed with {@link #reseed()}, and the seed is saved
+ * instead. Giving that seed to {@link #setSeed(long)} later brings back the
+ * same streams.
+ */
+public class RandomSource {
+
+	/** Same as the gamma of {@link SplittableRandom}, spreads out stream seeds */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	/** Source for code that is not given one, like {@link Ball#explode()} */
+	private static final RandomSource SHARED = new RandomSource();
+
+	private volatile long seed;
+	/** Changed with the seed, so that threads know to start new streams */
+	private volatile int generation;
+	private final AtomicLong threads = new AtomicLong();
+	private final ThreadLocal<Stream> streams = ThreadLocal.withInitial(Stream::new);
+
+	/**
+	 * Creates a source with a seed that differs from run to run
+	 */
+	public RandomSource() {
+		this(new SplittableRandom().nextLong());
+	}
+
+	/**
+	 * Creates a source that gives the same numbers for the same seed
+	 *
+	 * @param seed
+	 */
+	public RandomSource(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @return a source shared by everyone not given a source of their own
+	 */
+	public static RandomSource shared() {
+		return SHARED;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Returns the stream of the calling thread. The stream must only be used
+	 * by that thread, and may be kept to avoid looking it up for every number.
+	 *
+	 * @return the stream of the calling thread
+	 */
+	public SplittableRandom current() {
+		Stream stream = streams.get();
+		int current = generation;
+		if (stream.generation != current) {
+			stream.random = stream(threads.getAndIncrement());
+			stream.generation = current;
+		}
+		return stream.random;
+	}
+
+	/**
+	 * Starts all streams over from a seed. The streams are numbered again in
+	 * the order threads use the source from now on. Must not be called while
+	 * other threads are drawing numbers.
+	 *
+	 * @param seed
+	 */
+	public synchronized void setSeed(long seed) {
+		this.seed = seed;
+		threads.set(0);
+		generation++;
+	}
+
+	/**
+	 * Starts all streams over from a seed drawn from the stream of the calling
+	 * thread, so that the numbers from now on can be repeated by giving the
+	 * seed to {@link #setSeed(long)}
+	 *
+	 * @return the new seed
+	 */
+	public long reseed() {
+		long next = current().nextLong();
+		setSeed(next);
+		return next;
+	}
+
+	/**
+	 * Makes a new stream that only depends on the seed and the index, for
+	 * work that is split between threads in ways that vary between runs
+	 *
+	 * @param index
+	 * @return a new stream
+	 */
+	public SplittableRandom stream(long index) {
+		return new SplittableRandom(mix(seed + (index + 1) * GOLDEN_GAMMA));
+	}
+
+	/**
+	 * @return a random number from 0 (inclusive) to 1 (exclusive) from the
+	 *         stream of the calling thread
+	 */
+	public double nextDouble() {
+		return current().nextDouble();
+	}
+
+	/**
+	 * @param bound - the upper bound (exclusive), must be positive
+	 * @return a random number from 0 (inclusive) to bound from the stream of
+	 *         the calling thread
+	 */
+	public int nextInt(int bound) {
+		return current().nextInt(bound);
+	}
+
+	/**
+	 * The stream of one thread
+	 */
+	private static class Stream {
+		int generation = -1;
+		SplittableRandom random;
+	}
+
+	/**
+	 * The finalizer of SplitMix64, so that nearby seeds give unrelated streams
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,371 @@
+package balls;
+
+import static balls.RecordingFormat.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Records the balls of a {@link BallWorld} after every step to a file, so
+ * that runs can be looked at afterwards with a {@link RecordingReader}.
+ *
+ * The file is written through memory mapped windows of the file, so a step
+ * is written without system calls most of the time. Most frames only have
+ * the differences from the frame before, as small varints, so a ball that
+ * just flies or falls takes about four bytes a step. Every
+ * {@link #getKeyframeInterval()} frames the whole world is written, so that
+ * a reader can start from there. See {@link RecordingFormat} for the
+ * details.
+ *
+ * Balls are told apart by their ids, so a recorder must record one world.
+ * All methods must be called from the same thread.
+ */
+public class Recorder implements Closeable {
+
+	/** Default number of frames from one keyframe to the next */
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 100;
+	/** Size of the part of the file mapped at a time */
+	private static final long WINDOW = 64 << 20;
+
+	private final FileChannel channel;
+	private final int keyframeInterval;
+	private MappedByteBuffer buffer;
+	/** File offset of the start of {@link #buffer} */
+	private long bufferStart;
+	/** Size of the file once closed */
+	private long closedSize;
+
+	private int frameCount;
+	private int lastStep;
+	private int framesSinceKeyframe;
+	private int keyframeCount;
+	private int[] keyframeSteps = new int[16];
+	private long[] keyframeOffsets = new long[16];
+
+	// the balls of the last frame, sorted by id
+	private int size;
+	private State last = new State();
+	private State next = new State();
+
+	// used while recording a frame
+	/** Ids of the world in an open addressing table, shifted by one so that 0 is empty */
+	private int[] table = new int[0];
+	private int[] tableSlots = new int[0];
+	/** Index in the last frame of each kept ball */
+	private int[] keptFrom = new int[0];
+	private int[] removed = new int[0];
+	/** Added balls as id << 32 | slot, to sort them by id */
+	private long[] added = new long[0];
+
+	/**
+	 * Creates a recording with the default keyframe interval, replacing the
+	 * file if it exists
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	public Recorder(Path path) throws IOException {
+		this(path, DEFAULT_KEYFRAME_INTERVAL);
+	}
+
+	/**
+	 * Creates a recording, replacing the file if it exists
+	 *
+	 * @param path
+	 * @param keyframeInterval - number of frames from one keyframe to the next,
+	 *                         more means smaller files but slower seeking
+	 * @throws IOException
+	 */
+	public Recorder(Path path, int keyframeInterval) throws IOException {
+		if (keyframeInterval < 1)
+			throw new IllegalArgumentException("Keyframe interval must be at least 1");
+		this.keyframeInterval = keyframeInterval;
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		ensureRoom(HEADER_SIZE);
+		buffer.putLong(MAGIC);
+		buffer.putInt(keyframeInterval);
+		buffer.putInt(SCALE);
+	}
+
+	public int getKeyframeInterval() {
+		return keyframeInterval;
+	}
+
+	/**
+	 * @return number of steps recorded
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return size of the recording so far
+	 */
+	public long getBytesWritten() {
+		return buffer == null ? closedSize : bufferStart + buffer.position();
+	}
+
+	/**
+	 * Records the balls of the world as they are now
+	 *
+	 * @param world - the world, the same as for earlier frames
+	 * @param step  - the step the world is at, at least the step of the last
+	 *              frame
+	 * @throws IOException
+	 */
+	public void record(BallWorld world, int step) throws IOException {
+		if (buffer == null)
+			throw new IllegalStateException("Recorder is closed");
+		if (frameCount > 0 && step < lastStep)
+			throw new IllegalArgumentException("Steps must be recorded in order");
+		int n = world.size();
+		int removedCount = match(world);
+		int kept = size - removedCount;
+		int addedCount = n - kept;
+		boolean keyframe = frameCount == 0 || framesSinceKeyframe + 1 >= keyframeInterval;
+
+		long maxBytes = FRAME_HEADER_SIZE + 4L * MAX_VARINT + (long) removedCount * MAX_VARINT + (long) n * MAX_BALL;
+		ensureRoom(maxBytes);
+		int start = buffer.position();
+		buffer.position(start + FRAME_HEADER_SIZE);
+		putVarint(buffer, step);
+		if (keyframe) {
+			putVarint(buffer, n);
+			int lastId = -1;
+			for (int j = 0; j < n; j++) {
+				putBall(j, lastId);
+				lastId = next.ids[j];
+			}
+		} else {
+			putVarint(buffer, removedCount);
+			int lastIndex = -1;
+			for (int k = 0; k < removedCount; k++) {
+				putVarint(buffer, removed[k] - lastIndex - 1);
+				lastIndex = removed[k];
+			}
+			putVarint(buffer, addedCount);
+			for (int j = 0; j < kept; j++) {
+				int i = keptFrom[j];
+				// balls that keep their speed are where they would be with no residual
+				putSigned(buffer, next.x[j] - (last.x[i] + last.dx[i]));
+				putSigned(buffer, next.y[j] - (last.y[i] + last.dy[i]));
+				putSigned(buffer, next.dx[j] - last.dx[i]);
+				putSigned(buffer, next.dy[j] - last.dy[i]);
+			}
+			int lastId = size > 0 ? last.ids[size - 1] : -1;
+			for (int j = kept; j < n; j++) {
+				putBall(j, lastId);
+				lastId = next.ids[j];
+			}
+		}
+		buffer.putInt(start, buffer.position() - start - 4);
+		buffer.put(start + 4, keyframe ? KEYFRAME : DELTA);
+
+		if (keyframe) {
+			addKeyframe(step, bufferStart + start);
+			framesSinceKeyframe = 0;
+		} else {
+			framesSinceKeyframe++;
+		}
+		State swap = last;
+		last = next;
+		next = swap;
+		size = n;
+		frameCount++;
+		lastStep = step;
+	}
+
+	/**
+	 * Writes the index and closes the file
+	 */
+	@Override
+	public void close() throws IOException {
+		if (buffer == null)
+			return;
+		try {
+			ensureRoom(FRAME_HEADER_SIZE + 4L * MAX_VARINT + 2L * MAX_VARINT * keyframeCount + TRAILER_SIZE);
+			int start = buffer.position();
+			long indexOffset = bufferStart + start;
+			buffer.position(start + FRAME_HEADER_SIZE);
+			putVarint(buffer, frameCount);
+			putVarint(buffer, lastStep);
+			putVarint(buffer, keyframeCount);
+			for (int k = 0; k < keyframeCount; k++) {
+				putVarint(buffer, keyframeSteps[k]);
+				putVarint(buffer, keyframeOffsets[k]);
+			}
+			buffer.putInt(start, buffer.position() - start - 4);
+			buffer.put(start + 4, INDEX);
+			buffer.putLong(indexOffset);
+			buffer.putLong(INDEX_MAGIC);
+			long end = getBytesWritten();
+			buffer.force();
+			buffer = null;
+			closedSize = end;
+			channel.truncate(end);
+		} finally {
+			buffer = null;
+			channel.close();
+		}
+	}
+
+	/**
+	 * Finds the balls of the last frame in the world, and puts the balls of
+	 * the world into {@link #next} sorted by id: first the balls kept from the
+	 * last frame, then the new ones.
+	 *
+	 * @return number of balls of the last frame that are gone
+	 */
+	private int match(BallWorld world) {
+		int n = world.size();
+		next.ensureCapacity(n);
+		if (keptFrom.length < n) {
+			keptFrom = new int[Math.max(n, 2 * keptFrom.length)];
+			added = new long[keptFrom.length];
+		}
+		if (removed.length < size)
+			removed = new int[last.ids.length];
+
+		int removedCount = 0;
+		int kept = 0;
+		if (size > 0) {
+			fillTable(world);
+			int mask = table.length - 1;
+			for (int i = 0; i < size; i++) {
+				int key = last.ids[i] + 1;
+				int slot = -1;
+				for (int k = hash(key) & mask; table[k] != 0; k = (k + 1) & mask) {
+					if (table[k] == key) {
+						slot = tableSlots[k];
+						break;
+					}
+				}
+				if (slot < 0) {
+					removed[removedCount++] = i;
+					continue;
+				}
+				next.set(kept, world, slot, last.radius[i], last.colors[i]);
+				keptFrom[kept++] = i;
+			}
+		}
+
+		int maxId = size > 0 ? last.ids[size - 1] : -1;
+		int addedCount = 0;
+		for (int slot = 0; slot < n; slot++) {
+			int id = world.getId(slot);
+			if (id > maxId)
+				added[addedCount++] = (long) id << 32 | slot;
+		}
+		if (kept + addedCount != n)
+			throw new IllegalStateException("Balls in the world have ids that were not recorded as new");
+		Arrays.sort(added, 0, addedCount);
+		for (int k = 0; k < addedCount; k++) {
+			int slot = (int) added[k];
+			next.set(kept + k, world, slot, toFixed(world.getRadius(slot)), world.getColorIndex(slot));
+		}
+		return removedCount;
+	}
+
+	private void fillTable(BallWorld world) {
+		int n = world.size();
+		int capacity = Integer.highestOneBit(Math.max(1, 2 * n - 1)) << 1;
+		if (table.length < capacity || table.length > 4 * capacity) {
+			table = new int[capacity];
+			tableSlots = new int[capacity];
+		} else {
+			Arrays.fill(table, 0);
+		}
+		int mask = table.length - 1;
+		for (int slot = 0; slot < n; slot++) {
+			int key = world.getId(slot) + 1;
+			int k = hash(key) & mask;
+			while (table[k] != 0) {
+				k = (k + 1) & mask;
+			}
+			table[k] = key;
+			tableSlots[k] = slot;
+		}
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private void putBall(int j, int lastId) {
+		putVarint(buffer, next.ids[j] - lastId);
+		putSigned(buffer, next.x[j]);
+		putSigned(buffer, next.y[j]);
+		putSigned(buffer, next.dx[j]);
+		putSigned(buffer, next.dy[j]);
+		putVarint(buffer, next.radius[j]);
+		putVarint(buffer, next.colors[j]);
+	}
+
+	private void addKeyframe(int step, long offset) {
+		if (keyframeCount == keyframeSteps.length) {
+			keyframeSteps = Arrays.copyOf(keyframeSteps, 2 * keyframeCount);
+			keyframeOffsets = Arrays.copyOf(keyframeOffsets, 2 * keyframeCount);
+		}
+		keyframeSteps[keyframeCount] = step;
+		keyframeOffsets[keyframeCount] = offset;
+		keyframeCount++;
+	}
+
+	/**
+	 * Maps a new window of the file if the current one has less room than
+	 * needed
+	 */
+	private void ensureRoom(long bytes) throws IOException {
+		if (buffer != null && buffer.remaining() >= bytes)
+			return;
+		long size = Math.max(WINDOW, bytes);
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalStateException("Frame is too large to record");
+		long position = getBytesWritten();
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+		bufferStart = position;
+	}
+
+	/**
+	 * The balls of one frame, in fixed point
+	 */
+	private static class State {
+		int[] ids = new int[0];
+		long[] x = new long[0];
+		long[] y = new long[0];
+		long[] dx = new long[0];
+		long[] dy = new long[0];
+		long[] radius = new long[0];
+		int[] colors = new int[0];
+
+		void ensureCapacity(int n) {
+			if (ids.length >= n)
+				return;
+			int capacity = Math.max(n, 2 * ids.length);
+			ids = new int[capacity];
+			x = new long[capacity];
+			y = new long[capacity];
+			dx = new long[capacity];
+			dy = new long[capacity];
+			radius = new long[capacity];
+			colors = new int[capacity];
+		}
+
+		void set(int j, BallWorld world, int slot, long radius, int color) {
+			ids[j] = world.getId(slot);
+			x[j] = toFixed(world.getX(slot));
+			y[j] = toFixed(world.getY(slot));
+			dx[j] = toFixed(world.getSpeedX(slot));
+			dy[j] = toFixed(world.getSpeedY(slot));
+			this.radius[j] = radius;
+			colors[j] = color;
+		}
+	}
+}
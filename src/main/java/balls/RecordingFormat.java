@@ -0,0 +1,96 @@
+package balls;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The file format written by {@link Recorder} and read by
+ * {@link RecordingReader}.
+ *
+ * A recording starts with a header: the magic bytes {@code BALLREC1}, the
+ * keyframe interval and the scale of the fixed point numbers (both ints).
+ * Then comes one frame per recorded step, each an int with the length of
+ * the rest of the frame, a type byte and the contents. A recording that was
+ * closed ends with an index frame, followed by the offset of that frame and
+ * the magic bytes {@code BALLIDX1}.
+ *
+ * All numbers in frames are varints, 7 bits per byte with the high bit set
+ * on all but the last byte, and signed numbers are zigzag encoded first.
+ * Positions, speeds and radii are stored as fixed point numbers, rounded to
+ * 1/{@link #SCALE} pixel. The balls of a frame are sorted by id.
+ *
+ * A keyframe has the step, the number of balls and then every ball: the gap
+ * to the id before (the first after -1), x, y, speed x, speed y, radius and
+ * color index.
+ *
+ * A delta frame has the step, the number of balls removed since the frame
+ * before followed by their indexes in that frame as gaps, and the number of
+ * balls added. Then, for each ball kept from the frame before, the
+ * difference from where it would be if it kept its speed, x and y, and the
+ * change of speed, x and y, which for a ball that has not bounced is its
+ * acceleration. The added balls follow, written like in a keyframe, with
+ * id gaps counted from the largest id of the frame before, since new balls
+ * always get larger ids than older balls.
+ *
+ * The index frame has the number of frames, the step of the last frame,
+ * the number of keyframes and the step and file offset of every keyframe.
+ */
+final class RecordingFormat {
+
+	static final long MAGIC = 0x42414c4c52454331L; // BALLREC1
+	static final long INDEX_MAGIC = 0x42414c4c49445831L; // BALLIDX1
+	static final int HEADER_SIZE = 16;
+	/** Length and type of a frame */
+	static final int FRAME_HEADER_SIZE = 5;
+	/** Offset and magic at the end of a closed recording */
+	static final int TRAILER_SIZE = 16;
+
+	static final byte KEYFRAME = 0;
+	static final byte DELTA = 1;
+	static final byte INDEX = 2;
+
+	/** Fixed point numbers are in 1/SCALE pixels */
+	static final int SCALE = 256;
+
+	/** Most bytes of a varint */
+	static final int MAX_VARINT = 10;
+	/** Most bytes of a ball in a frame */
+	static final int MAX_BALL = 7 * MAX_VARINT;
+
+	private RecordingFormat() {
+	}
+
+	static long toFixed(double value) {
+		return Math.round(value * SCALE);
+	}
+
+	static double fromFixed(long value) {
+		return (double) value / SCALE;
+	}
+
+	static void putVarint(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	static void putSigned(ByteBuffer buffer, long value) {
+		putVarint(buffer, (value << 1) ^ (value >> 63));
+	}
+
+	static long getVarint(ByteBuffer buffer) {
+		long value = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+	}
+
+	static long getSigned(ByteBuffer buffer) {
+		long value = getVarint(buffer);
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -0,0 +1,466 @@
+package balls;
+
+import static balls.RecordingFormat.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a recording made by a {@link Recorder}, one frame at a time.
+ *
+ * The reader is a cursor over the frames: {@link #next()} moves to the next
+ * frame and {@link #seek(int)} to any step, starting from the keyframe
+ * before it. The balls of the current frame are read with the accessors,
+ * sorted by id. Frames are decoded straight from memory mapped windows of
+ * the file into arrays that are reused from frame to frame.
+ *
+ * A recording that was not closed, for example because the program
+ * crashed, can still be read up to the last whole frame.
+ */
+public class RecordingReader implements Closeable {
+
+	/** Size of the part of the file mapped at a time */
+	private static final long WINDOW = 256 << 20;
+
+	private final FileChannel channel;
+	private final long fileSize;
+	private final int keyframeInterval;
+	private MappedByteBuffer window;
+	/** File offset of the start of {@link #window} */
+	private long windowStart;
+
+	private final boolean complete;
+	/** File offset where the frames end */
+	private long end;
+	private int frameCount;
+	private int lastStep;
+	private int keyframeCount;
+	private int[] keyframeSteps = new int[16];
+	private long[] keyframeOffsets = new long[16];
+
+	// the current frame
+	private long nextOffset;
+	private int step = -1;
+	private int size;
+	private int removedCount;
+	private int addedCount;
+	private State current = new State();
+	private State previous = new State();
+	private int[] removed = new int[0];
+
+	/**
+	 * Opens a recording
+	 *
+	 * @param path
+	 * @throws IOException if the file can not be read or is not a recording
+	 */
+	public RecordingReader(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			fileSize = channel.size();
+			ByteBuffer header = read(0, HEADER_SIZE);
+			if (header == null || header.getLong() != MAGIC)
+				throw new IOException("Not a recording: " + path);
+			keyframeInterval = header.getInt();
+			if (header.getInt() != SCALE)
+				throw new IOException("Unsupported scale in recording: " + path);
+			complete = readIndex();
+			if (!complete)
+				scan();
+			nextOffset = keyframeCount > 0 ? keyframeOffsets[0] : end;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return true if the recording was closed, false if it ends where the
+	 *         recorder stopped
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	public int getKeyframeInterval() {
+		return keyframeInterval;
+	}
+
+	/**
+	 * @return number of frames in the recording
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return step of the first frame, -1 if there are no frames
+	 */
+	public int getFirstStep() {
+		return keyframeCount > 0 ? keyframeSteps[0] : -1;
+	}
+
+	/**
+	 * @return step of the last frame, -1 if there are no frames
+	 */
+	public int getLastStep() {
+		return frameCount > 0 ? lastStep : -1;
+	}
+
+	public int getKeyframeCount() {
+		return keyframeCount;
+	}
+
+	/**
+	 * @param keyframe
+	 * @return the step of a keyframe
+	 */
+	public int getKeyframeStep(int keyframe) {
+		if (keyframe < 0 || keyframe >= keyframeCount)
+			throw new IndexOutOfBoundsException(keyframe);
+		return keyframeSteps[keyframe];
+	}
+
+	/**
+	 * Moves to the next frame
+	 *
+	 * @return false if there are no more frames
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException {
+		if (nextOffset >= end)
+			return false;
+		decode(nextOffset);
+		return true;
+	}
+
+	/**
+	 * Moves to the last frame at or before a step, or to the first frame if
+	 * the step is before it. Only the frames from the keyframe before the
+	 * step are decoded.
+	 *
+	 * @param step
+	 * @throws IOException
+	 */
+	public void seek(int step) throws IOException {
+		if (keyframeCount == 0)
+			return;
+		int k = Arrays.binarySearch(keyframeSteps, 0, keyframeCount, step);
+		if (k < 0)
+			k = Math.max(0, -k - 2);
+		// keep going from the current frame if that is closer than the keyframe
+		if (!(this.step >= keyframeSteps[k] && this.step <= step))
+			decode(keyframeOffsets[k]);
+		while (nextOffset < end && peekStep(nextOffset) <= step) {
+			decode(nextOffset);
+		}
+	}
+
+	/**
+	 * @return step of the current frame, -1 before the first frame
+	 */
+	public int getStep() {
+		return step;
+	}
+
+	/**
+	 * @return number of balls in the current frame
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of balls gone since the frame before, for example by
+	 *         exploding, 0 for a frame reached by seeking from a keyframe
+	 */
+	public int getRemovedCount() {
+		return removedCount;
+	}
+
+	/**
+	 * @return number of balls new since the frame before, for example by
+	 *         spawning or as fragments of explosions, all balls for a frame
+	 *         reached by seeking from a keyframe
+	 */
+	public int getAddedCount() {
+		return addedCount;
+	}
+
+	public int getId(int i) {
+		return current.ids[i];
+	}
+
+	public double getX(int i) {
+		return fromFixed(current.x[i]);
+	}
+
+	public double getY(int i) {
+		return fromFixed(current.y[i]);
+	}
+
+	public double getSpeedX(int i) {
+		return fromFixed(current.dx[i]);
+	}
+
+	public double getSpeedY(int i) {
+		return fromFixed(current.dy[i]);
+	}
+
+	public double getRadius(int i) {
+		return fromFixed(current.radius[i]);
+	}
+
+	public int getColorIndex(int i) {
+		return current.colors[i];
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+	/**
+	 * Decodes the frame at an offset. A delta frame must be the frame after
+	 * the current one.
+	 */
+	private void decode(long offset) throws IOException {
+		ByteBuffer frame = frameAt(offset);
+		long frameEnd = offset + 4 + frame.remaining();
+		boolean following = step >= 0 && offset == nextOffset;
+		byte type = frame.get();
+		int frameStep = (int) getVarint(frame);
+		if (type == KEYFRAME) {
+			State swap = previous;
+			previous = current;
+			current = swap;
+			int last = size;
+			int n = (int) getVarint(frame);
+			current.ensureCapacity(n);
+			int lastId = -1;
+			for (int j = 0; j < n; j++) {
+				lastId = getBall(frame, current, j, lastId);
+			}
+			size = n;
+			if (following) {
+				// new balls have larger ids than all balls of the frame before
+				int maxId = last > 0 ? previous.ids[last - 1] : -1;
+				int kept = 0;
+				while (kept < n && current.ids[kept] <= maxId) {
+					kept++;
+				}
+				addedCount = n - kept;
+				removedCount = last - kept;
+			} else {
+				addedCount = n;
+				removedCount = 0;
+			}
+		} else if (type == DELTA && following) {
+			State swap = previous;
+			previous = current;
+			current = swap;
+			int last = size;
+			removedCount = (int) getVarint(frame);
+			if (removed.length < removedCount)
+				removed = new int[Math.max(removedCount, 2 * removed.length)];
+			int index = -1;
+			for (int k = 0; k < removedCount; k++) {
+				index += (int) getVarint(frame) + 1;
+				removed[k] = index;
+			}
+			addedCount = (int) getVarint(frame);
+			int kept = last - removedCount;
+			int n = kept + addedCount;
+			current.ensureCapacity(n);
+			int k = 0;
+			int j = 0;
+			for (int i = 0; i < last; i++) {
+				if (k < removedCount && removed[k] == i) {
+					k++;
+					continue;
+				}
+				current.ids[j] = previous.ids[i];
+				current.x[j] = previous.x[i] + previous.dx[i] + getSigned(frame);
+				current.y[j] = previous.y[i] + previous.dy[i] + getSigned(frame);
+				current.dx[j] = previous.dx[i] + getSigned(frame);
+				current.dy[j] = previous.dy[i] + getSigned(frame);
+				current.radius[j] = previous.radius[i];
+				current.colors[j] = previous.colors[i];
+				j++;
+			}
+			int lastId = last > 0 ? previous.ids[last - 1] : -1;
+			for (; j < n; j++) {
+				lastId = getBall(frame, current, j, lastId);
+			}
+			size = n;
+		} else {
+			throw new IOException("Unexpected frame type " + type + " at " + offset);
+		}
+		step = frameStep;
+		nextOffset = frameEnd;
+	}
+
+	/**
+	 * Maps the frame at an offset
+	 *
+	 * @return the window positioned at the type of the frame and limited to
+	 *         its end
+	 */
+	private ByteBuffer frameAt(long offset) throws IOException {
+		map(offset, 4);
+		int length = window.getInt((int) (offset - windowStart));
+		if (length < 1 || offset + 4 + length > end)
+			throw new IOException("Broken frame at " + offset);
+		map(offset, 4 + length);
+		int frameStart = (int) (offset - windowStart);
+		window.limit(frameStart + 4 + length);
+		window.position(frameStart + 4);
+		return window;
+	}
+
+	/**
+	 * Reads the step of the frame at an offset
+	 */
+	private int peekStep(long offset) throws IOException {
+		ByteBuffer frame = frameAt(offset);
+		frame.get();
+		return (int) getVarint(frame);
+	}
+
+	/**
+	 * Makes sure the window holds a part of the file
+	 */
+	private void map(long offset, int length) throws IOException {
+		if (window != null && offset >= windowStart && offset + length <= windowStart + window.capacity()) {
+			window.limit(window.capacity());
+			return;
+		}
+		long size = Math.min(Math.max(WINDOW, length), fileSize - offset);
+		window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+		windowStart = offset;
+	}
+
+	private static int getBall(ByteBuffer frame, State state, int j, int lastId) {
+		int id = lastId + (int) getVarint(frame);
+		state.ids[j] = id;
+		state.x[j] = getSigned(frame);
+		state.y[j] = getSigned(frame);
+		state.dx[j] = getSigned(frame);
+		state.dy[j] = getSigned(frame);
+		state.radius[j] = getVarint(frame);
+		state.colors[j] = (int) getVarint(frame);
+		return id;
+	}
+
+	/**
+	 * Reads the index at the end of a closed recording
+	 *
+	 * @return false if there is no index
+	 */
+	private boolean readIndex() throws IOException {
+		if (fileSize < HEADER_SIZE + TRAILER_SIZE)
+			return false;
+		ByteBuffer trailer = read(fileSize - TRAILER_SIZE, TRAILER_SIZE);
+		long indexOffset = trailer.getLong();
+		if (trailer.getLong() != INDEX_MAGIC)
+			return false;
+		end = fileSize - TRAILER_SIZE;
+		ByteBuffer index = frameAt(indexOffset);
+		if (index.get() != INDEX)
+			throw new IOException("Broken index at " + indexOffset);
+		frameCount = (int) getVarint(index);
+		lastStep = (int) getVarint(index);
+		int count = (int) getVarint(index);
+		for (int k = 0; k < count; k++) {
+			addKeyframe((int) getVarint(index), getVarint(index));
+		}
+		end = indexOffset;
+		return true;
+	}
+
+	/**
+	 * Finds the frames of a recording without an index, up to the first
+	 * frame that was not written completely
+	 */
+	private void scan() throws IOException {
+		long offset = HEADER_SIZE;
+		while (true) {
+			ByteBuffer head = read(offset, FRAME_HEADER_SIZE);
+			if (head == null)
+				break;
+			int length = head.getInt();
+			byte type = head.get();
+			if (length < 1 || offset + 4 + length > fileSize || (type != KEYFRAME && type != DELTA))
+				break;
+			ByteBuffer stepBytes = read(offset + FRAME_HEADER_SIZE, Math.min(MAX_VARINT, length - 1));
+			int frameStep = (int) getVarint(stepBytes);
+			if (type == KEYFRAME)
+				addKeyframe(frameStep, offset);
+			else if (keyframeCount == 0)
+				break;
+			frameCount++;
+			lastStep = frameStep;
+			offset += 4 + length;
+		}
+		end = offset;
+	}
+
+	private void addKeyframe(int step, long offset) {
+		if (keyframeCount == keyframeSteps.length) {
+			keyframeSteps = Arrays.copyOf(keyframeSteps, 2 * keyframeCount);
+			keyframeOffsets = Arrays.copyOf(keyframeOffsets, 2 * keyframeCount);
+		}
+		keyframeSteps[keyframeCount] = step;
+		keyframeOffsets[keyframeCount] = offset;
+		keyframeCount++;
+	}
+
+	/**
+	 * Reads bytes without mapping them
+	 *
+	 * @return the bytes, or null if the file ends before them
+	 */
+	private ByteBuffer read(long offset, int length) throws IOException {
+		if (offset + length > fileSize)
+			return null;
+		ByteBuffer bytes = ByteBuffer.allocate(length);
+		while (bytes.hasRemaining()) {
+			if (channel.read(bytes, offset + bytes.position()) < 0)
+				return null;
+		}
+		return bytes.flip();
+	}
+
+	/**
+	 * The balls of one frame, in fixed point
+	 */
+	private static class State {
+		int[] ids = new int[0];
+		long[] x = new long[0];
+		long[] y = new long[0];
+		long[] dx = new long[0];
+		long[] dy = new long[0];
+		long[] radius = new long[0];
+		int[] colors = new int[0];
+
+		void ensureCapacity(int n) {
+			if (ids.length >= n)
+				return;
+			int capacity = Math.max(n, 2 * ids.length);
+			ids = new int[capacity];
+			x = new long[capacity];
+			y = new long[capacity];
+			dx = new long[capacity];
+			dy = new long[capacity];
+			radius = new long[capacity];
+			colors = new int[capacity];
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package balls;
+
+import java.io.IOException;
+
+/**
+ * Plays back a recording at a chosen speed, without simulating anything.
+ *
+ * The player keeps a playback position in steps, which moves forward with
+ * the time passed to {@link #update(long)} times the speed. The frame shown
+ * is the last recorded frame at or before that position. Small jumps decode
+ * the frames in between, large jumps start from the keyframe before the
+ * position, so playing at 100 times real speed costs about the same as
+ * decoding the frames from one keyframe to the next.
+ *
+ * The balls of the frame shown are read from {@link #getFrame()}.
+ */
+public class ReplayPlayer {
+
+	/** Slowest playback, as a multiple of real speed */
+	public static final double MIN_SPEED = 1;
+	/** Fastest playback, as a multiple of real speed */
+	public static final double MAX_SPEED = 100;
+
+	private final RecordingReader reader;
+	private final int stepsPerSecond;
+	private double speed = 1;
+	private boolean paused;
+	/** Playback position in steps */
+	private double position;
+
+	/**
+	 * Creates a player at the first frame of a recording
+	 *
+	 * @param reader         - the recording
+	 * @param stepsPerSecond - number of steps that is real speed
+	 * @throws IOException
+	 */
+	public ReplayPlayer(RecordingReader reader, int stepsPerSecond) throws IOException {
+		if (stepsPerSecond < 1)
+			throw new IllegalArgumentException("Steps per second must be positive");
+		this.reader = reader;
+		this.stepsPerSecond = stepsPerSecond;
+		position = reader.getFirstStep();
+		reader.seek((int) position);
+	}
+
+	/**
+	 * @return the recording, at the frame shown
+	 */
+	public RecordingReader getFrame() {
+		return reader;
+	}
+
+	/**
+	 * @return step of the frame shown
+	 */
+	public int getStep() {
+		return reader.getStep();
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Sets how fast the recording is played
+	 *
+	 * @param speed - multiple of real speed, from {@link #MIN_SPEED} to
+	 *              {@link #MAX_SPEED}
+	 */
+	public void setSpeed(double speed) {
+		if (!(speed >= MIN_SPEED && speed <= MAX_SPEED))
+			throw new IllegalArgumentException("Speed must be from " + MIN_SPEED + " to " + MAX_SPEED);
+		this.speed = speed;
+	}
+
+	public boolean isPaused() {
+		return paused;
+	}
+
+	public void pause() {
+		paused = true;
+	}
+
+	/**
+	 * Continues playing, from the start if the end was reached
+	 *
+	 * @throws IOException
+	 */
+	public void play() throws IOException {
+		if (isFinished())
+			seek(reader.getFirstStep());
+		paused = false;
+	}
+
+	/**
+	 * @return true if the last frame is shown
+	 */
+	public boolean isFinished() {
+		return position >= reader.getLastStep();
+	}
+
+	/**
+	 * Jumps to a step, clamped to the steps of the recording
+	 *
+	 * @param step
+	 * @throws IOException
+	 */
+	public void seek(int step) throws IOException {
+		position = Math.max(reader.getFirstStep(), Math.min(reader.getLastStep(), step));
+		reader.seek((int) position);
+	}
+
+	/**
+	 * Moves the playback position forward by the time passed, unless paused.
+	 * Stops at the last frame.
+	 *
+	 * @param elapsedNanos - time since the last update
+	 * @return true if another frame is shown now
+	 * @throws IOException
+	 */
+	public boolean update(long elapsedNanos) throws IOException {
+		if (paused || isFinished())
+			return false;
+		position = Math.min(reader.getLastStep(), position + elapsedNanos * speed * stepsPerSecond / 1e9);
+		int step = reader.getStep();
+		reader.seek((int) position);
+		return reader.getStep() != step;
+	}
+}
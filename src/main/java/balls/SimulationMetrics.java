@@ -0,0 +1,350 @@
+package balls;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sun.management.ThreadMXBean;
+
+import jdk.jfr.EventType;
+
+/**
+ * Measures how long steps and frames take, and what the time is spent on.
+ *
+ * A {@link BallSimulation} with metrics marks the start of each step and the
+ * end of each of its phases, and the demo marks the start and end of every
+ * frame. Step and frame times go into {@link LatencyHistogram}s, phase times
+ * are summed, and the bytes allocated by the stepping thread are counted.
+ * Every step and frame is also a flight recorder event, {@code balls.Step}
+ * and {@code balls.Frame}. The events are only made while a recording has
+ * them enabled, so without one measuring allocates nothing.
+ *
+ * The numbers can be read through JMX after {@link #register()}, or printed
+ * by a {@link MetricsReporter}. Steps and frames must each be measured from
+ * one thread, but they may be two different threads, and the numbers may be
+ * read from any thread.
+ */
+public class SimulationMetrics implements SimulationMetricsMBean {
+
+	/** The parts of a step that are timed */
+	public enum Phase {
+		/** Moving the balls */
+		INTEGRATE,
+		/** Bouncing balls off each other */
+		COLLIDE,
+		/** Exploding old balls */
+		EXPLODE,
+		/** Adding new balls */
+		SPAWN
+	}
+
+	private static final Phase[] PHASES = Phase.values();
+	private static final EventType STEP_EVENT = EventType.getEventType(StepEvent.class);
+	private static final EventType FRAME_EVENT = EventType.getEventType(FrameEvent.class);
+	/** Name the metrics are registered with in JMX */
+	public static final String OBJECT_NAME = "balls:type=SimulationMetrics";
+
+	private final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private final boolean countAllocations = threads.isThreadAllocatedMemorySupported()
+			&& threads.isThreadAllocatedMemoryEnabled();
+
+	private final LatencyHistogram stepTimes = new LatencyHistogram();
+	private final LatencyHistogram frameTimes = new LatencyHistogram();
+	/** Time spent in each phase since the last reset */
+	private final long[] phaseNanos = new long[PHASES.length];
+	private volatile long drawNanos;
+	private volatile long allocatedBytes;
+
+	private volatile long stepCount;
+	private volatile int liveBalls;
+	private volatile long ballsCreated;
+	private volatile long ballsExploded;
+
+	// the step being measured
+	private long stepStart;
+	private long phaseStart;
+	private long allocationStart;
+	private final long[] stepPhaseNanos = new long[PHASES.length];
+	/** Null when no recording has steps enabled */
+	private StepEvent stepEvent;
+
+	// the frame being measured
+	private long frameStart;
+	/** Null when no recording has frames enabled */
+	private FrameEvent frameEvent;
+
+	/**
+	 * Marks the start of a step
+	 */
+	public void beginStep() {
+		if (STEP_EVENT.isEnabled()) {
+			stepEvent = new StepEvent();
+			stepEvent.begin();
+		}
+		if (countAllocations)
+			allocationStart = threads.getCurrentThreadAllocatedBytes();
+		stepStart = System.nanoTime();
+		phaseStart = stepStart;
+	}
+
+	/**
+	 * Marks the end of a phase, which started at the end of the phase before
+	 * or at the start of the step
+	 *
+	 * @param phase
+	 */
+	public void endPhase(Phase phase) {
+		long now = System.nanoTime();
+		stepPhaseNanos[phase.ordinal()] += now - phaseStart;
+		phaseStart = now;
+	}
+
+	/**
+	 * Marks the end of a step
+	 *
+	 * @param stepCount - number of steps taken by the simulation
+	 * @param balls     - number of balls after the step
+	 * @param created   - number of balls created by the simulation so far
+	 * @param exploded  - number of balls exploded by the simulation so far
+	 */
+	public void endStep(int stepCount, int balls, long created, long exploded) {
+		long nanos = System.nanoTime() - stepStart;
+		long allocated = countAllocations ? threads.getCurrentThreadAllocatedBytes() - allocationStart : 0;
+		stepTimes.record(nanos);
+		for (int i = 0; i < PHASES.length; i++) {
+			phaseNanos[i] += stepPhaseNanos[i];
+		}
+		allocatedBytes += allocated;
+		this.stepCount = stepCount;
+		liveBalls = balls;
+		ballsCreated = created;
+		ballsExploded = exploded;
+
+		StepEvent event = stepEvent;
+		stepEvent = null;
+		if (event != null && event.shouldCommit()) {
+			event.stepCount = stepCount;
+			event.balls = balls;
+			event.integrateNanos = stepPhaseNanos[Phase.INTEGRATE.ordinal()];
+			event.collideNanos = stepPhaseNanos[Phase.COLLIDE.ordinal()];
+			event.explodeNanos = stepPhaseNanos[Phase.EXPLODE.ordinal()];
+			event.spawnNanos = stepPhaseNanos[Phase.SPAWN.ordinal()];
+			event.allocatedBytes = allocated;
+			event.commit();
+		}
+		Arrays.fill(stepPhaseNanos, 0);
+	}
+
+	/**
+	 * Marks the start of drawing a frame
+	 */
+	public void beginFrame() {
+		if (FRAME_EVENT.isEnabled()) {
+			frameEvent = new FrameEvent();
+			frameEvent.begin();
+		}
+		frameStart = System.nanoTime();
+	}
+
+	/**
+	 * Marks the end of drawing a frame
+	 *
+	 * @param balls - number of balls drawn
+	 */
+	public void endFrame(int balls) {
+		long nanos = System.nanoTime() - frameStart;
+		frameTimes.record(nanos);
+		drawNanos += nanos;
+		FrameEvent event = frameEvent;
+		frameEvent = null;
+		if (event != null && event.shouldCommit()) {
+			event.balls = balls;
+			event.commit();
+		}
+	}
+
+	/**
+	 * @return step times since the last reset
+	 */
+	public LatencyHistogram getStepTimes() {
+		return stepTimes;
+	}
+
+	/**
+	 * @return frame times since the last reset
+	 */
+	public LatencyHistogram getFrameTimes() {
+		return frameTimes;
+	}
+
+	/**
+	 * @param phase
+	 * @return time spent in a phase since the last reset
+	 */
+	public long getPhaseNanos(Phase phase) {
+		return phaseNanos[phase.ordinal()];
+	}
+
+	/**
+	 * @return time spent drawing since the last reset
+	 */
+	public long getDrawNanos() {
+		return drawNanos;
+	}
+
+	/**
+	 * @return bytes allocated by the stepping thread during steps since the
+	 *         last reset, 0 if the JVM does not count allocations
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * Makes the metrics visible through JMX as {@value #OBJECT_NAME},
+	 * replacing metrics registered before
+	 */
+	public void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(this, name);
+		} catch (JMException e) {
+			throw new IllegalStateException("Could not register metrics", e);
+		}
+	}
+
+	/**
+	 * Removes the metrics from JMX, if these metrics are registered
+	 */
+	public void unregister() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name) && server.getObjectInstance(name).getClassName()
+					.equals(getClass().getName()))
+				server.unregisterMBean(name);
+		} catch (JMException e) {
+			throw new IllegalStateException("Could not unregister metrics", e);
+		}
+	}
+
+	@Override
+	public long getStepCount() {
+		return stepCount;
+	}
+
+	@Override
+	public int getLiveBalls() {
+		return liveBalls;
+	}
+
+	@Override
+	public long getBallsCreated() {
+		return ballsCreated;
+	}
+
+	@Override
+	public long getBallsExploded() {
+		return ballsExploded;
+	}
+
+	@Override
+	public double getStepMeanMillis() {
+		return stepTimes.getMean() / 1e6;
+	}
+
+	@Override
+	public double getStepP50Millis() {
+		return stepTimes.getPercentile(50) / 1e6;
+	}
+
+	@Override
+	public double getStepP99Millis() {
+		return stepTimes.getPercentile(99) / 1e6;
+	}
+
+	@Override
+	public double getStepMaxMillis() {
+		return stepTimes.getMax() / 1e6;
+	}
+
+	@Override
+	public long getFrameCount() {
+		return frameTimes.getCount();
+	}
+
+	@Override
+	public double getFrameP50Millis() {
+		return frameTimes.getPercentile(50) / 1e6;
+	}
+
+	@Override
+	public double getFrameP99Millis() {
+		return frameTimes.getPercentile(99) / 1e6;
+	}
+
+	@Override
+	public double getFrameMaxMillis() {
+		return frameTimes.getMax() / 1e6;
+	}
+
+	@Override
+	public double getIntegrateMillis() {
+		return perStep(getPhaseNanos(Phase.INTEGRATE));
+	}
+
+	@Override
+	public double getCollideMillis() {
+		return perStep(getPhaseNanos(Phase.COLLIDE));
+	}
+
+	@Override
+	public double getExplodeMillis() {
+		return perStep(getPhaseNanos(Phase.EXPLODE));
+	}
+
+	@Override
+	public double getSpawnMillis() {
+		return perStep(getPhaseNanos(Phase.SPAWN));
+	}
+
+	@Override
+	public double getDrawMillis() {
+		long frames = frameTimes.getCount();
+		return frames == 0 ? 0 : drawNanos / 1e6 / frames;
+	}
+
+	@Override
+	public double getAllocatedBytesPerStep() {
+		long steps = stepTimes.getCount();
+		return steps == 0 ? 0 : (double) allocatedBytes / steps;
+	}
+
+	/**
+	 * Forgets all times measured so far. Should be called from the thread
+	 * measuring, the numbers of a step or frame being measured at the same
+	 * time may be lost otherwise.
+	 */
+	@Override
+	public void reset() {
+		stepTimes.reset();
+		frameTimes.reset();
+		Arrays.fill(phaseNanos, 0);
+		drawNanos = 0;
+		allocatedBytes = 0;
+	}
+
+	/**
+	 * @return average time per step in milliseconds
+	 */
+	private double perStep(long nanos) {
+		long steps = stepTimes.getCount();
+		return steps == 0 ? 0 : nanos / 1e6 / steps;
+	}
+}
@@ -0,0 +1,49 @@
+package balls;
+
+/**
+ * What {@link SimulationMetrics} shows through JMX, for example in JConsole
+ * under {@code balls:type=SimulationMetrics}. Times are in milliseconds.
+ */
+public interface SimulationMetricsMBean {
+
+	long getStepCount();
+
+	int getLiveBalls();
+
+	long getBallsCreated();
+
+	long getBallsExploded();
+
+	double getStepMeanMillis();
+
+	double getStepP50Millis();
+
+	double getStepP99Millis();
+
+	double getStepMaxMillis();
+
+	long getFrameCount();
+
+	double getFrameP50Millis();
+
+	double getFrameP99Millis();
+
+	double getFrameMaxMillis();
+
+	double getIntegrateMillis();
+
+	double getCollideMillis();
+
+	double getExplodeMillis();
+
+	double getSpawnMillis();
+
+	double getDrawMillis();
+
+	double getAllocatedBytesPerStep();
+
+	/**
+	 * Forgets all times measured so far. The counters of balls are kept.
+	 */
+	void reset();
+}
@@ -0,0 +1,152 @@
+package balls;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a {@link BallSimulation} on a thread of its own, so that slow steps do
+ * not hold up drawing and input on the JavaFX Application Thread.
+ *
+ * The simulation takes a fixed number of steps per second, with a
+ * {@link FrameGovernor} deciding how many steps to take at a time and making
+ * the simulation lighter when it cannot keep up, and publishes a
+ * {@link Snapshot} after each round of steps. Other threads must not touch
+ * the simulation while it runs, changes go through
+ * {@link #execute(Runnable)} and are made between steps.
+ */
+public class SimulationThread {
+
+	private final BallSimulation simulation;
+	private final SnapshotBuffer snapshots = new SnapshotBuffer();
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private final FrameGovernor governor;
+	/** Records every step, null if the run is not recorded */
+	private Recorder recorder;
+	private volatile boolean running;
+	private Thread thread;
+
+	/**
+	 * @param simulation     - the simulation to run
+	 * @param stepsPerSecond - how fast the simulation runs
+	 */
+	public SimulationThread(BallSimulation simulation, int stepsPerSecond) {
+		this(simulation, new FrameGovernor(stepsPerSecond, stepsPerSecond));
+	}
+
+	/**
+	 * @param simulation - the simulation to run
+	 * @param governor   - decides how many steps to take and how heavy the
+	 *                   simulation may be
+	 */
+	public SimulationThread(BallSimulation simulation, FrameGovernor governor) {
+		this.simulation = simulation;
+		this.governor = governor;
+	}
+
+	public FrameGovernor getGovernor() {
+		return governor;
+	}
+
+	/**
+	 * Records every step from now on. Must be called before {@link #start()}
+	 * or through {@link #execute(Runnable)}. The recorder is not closed by
+	 * this thread.
+	 *
+	 * @param recorder - the recorder, or null to stop recording
+	 */
+	public void setRecorder(Recorder recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Publishes a first snapshot and starts stepping
+	 */
+	public synchronized void start() {
+		if (thread != null)
+			throw new IllegalStateException("Already started");
+		snapshots.publish(simulation.getWorld(), simulation.getStepCount());
+		running = true;
+		thread = new Thread(this::run, "simulation");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops stepping and waits for the thread to finish the step it is in
+	 *
+	 * @throws InterruptedException
+	 */
+	public synchronized void stop() throws InterruptedException {
+		if (thread == null)
+			return;
+		running = false;
+		LockSupport.unpark(thread);
+		thread.join();
+		thread = null;
+	}
+
+	/**
+	 * Runs a task on the simulation thread before the next step, or right
+	 * away if the thread is not running
+	 *
+	 * @param task
+	 */
+	public void execute(Runnable task) {
+		tasks.add(task);
+		if (!running)
+			runTasks();
+	}
+
+	/**
+	 * Returns the latest snapshot. Must only be called from one thread, and
+	 * the snapshot may only be used until the next call.
+	 *
+	 * @return the latest snapshot
+	 */
+	public Snapshot acquireSnapshot() {
+		return snapshots.acquire();
+	}
+
+	private void run() {
+		long lastUpdateTime = System.nanoTime();
+		while (running) {
+			runTasks();
+			long now = System.nanoTime();
+			int steps = governor.stepsFor(now - lastUpdateTime);
+			lastUpdateTime = now;
+
+			for (int i = 0; i < steps; i++) {
+				long start = System.nanoTime();
+				simulation.step();
+				governor.stepTaken(System.nanoTime() - start);
+				record();
+			}
+			if (steps > 0) {
+				governor.apply(simulation);
+				snapshots.publish(simulation.getWorld(), simulation.getStepCount());
+			}
+			LockSupport.parkNanos(governor.getNanosUntilStep());
+		}
+		runTasks();
+	}
+
+	private void record() {
+		if (recorder == null)
+			return;
+		try {
+			recorder.record(simulation.getWorld(), simulation.getStepCount());
+		} catch (IOException e) {
+			System.err.println("Recording stopped: " + e);
+			recorder = null;
+		}
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package balls;
+
+/**
+ * The position, radius and color of every ball after a step, made by a
+ * {@link SnapshotBuffer} so that balls can be drawn while the simulation goes
+ * on with the next steps.
+ *
+ * A snapshot also holds where every ball was in the snapshot before it, so
+ * that balls can be drawn anywhere between the two, see
+ * {@link #getAlpha(long)}. Balls that were not in the snapshot before are
+ * drawn where they are.
+ */
+public class Snapshot {
+
+	private int size;
+	private double[] x = new double[0];
+	private double[] y = new double[0];
+	private double[] previousX = new double[0];
+	private double[] previousY = new double[0];
+	private double[] radius = new double[0];
+	private int[] colorIndex = new int[0];
+	private int[] ids = new int[0];
+	private int stepCount;
+	/** When this snapshot was made, from {@link System#nanoTime()} */
+	private long nanoTime;
+	/** When the snapshot before this one was made */
+	private long previousNanoTime;
+	/** Whether this snapshot was published and has not been read yet */
+	boolean fresh;
+
+	/**
+	 * @return number of balls
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of steps the simulation had taken
+	 */
+	public int getStepCount() {
+		return stepCount;
+	}
+
+	/**
+	 * @return when this snapshot was made, from {@link System#nanoTime()}
+	 */
+	public long getNanoTime() {
+		return nanoTime;
+	}
+
+	/**
+	 * Finds how far to draw the balls from their previous position towards
+	 * this one, so that balls move smoothly when snapshots come at another
+	 * rate than frames. The balls reach this snapshot as long after it was
+	 * made as it came after the previous one.
+	 *
+	 * @param now - the time to draw for, from {@link System#nanoTime()}
+	 * @return a number from 0 (previous position) to 1 (this position)
+	 */
+	public double getAlpha(long now) {
+		long interval = nanoTime - previousNanoTime;
+		if (interval <= 0)
+			return 1;
+		return Math.min(Math.max((double) (now - nanoTime) / interval, 0), 1);
+	}
+
+	public double getX(int i) {
+		return x[i];
+	}
+
+	public double getY(int i) {
+		return y[i];
+	}
+
+	/**
+	 * @param i
+	 * @param alpha - from {@link #getAlpha(long)}
+	 * @return the x position between the previous and this snapshot
+	 */
+	public double getX(int i, double alpha) {
+		return previousX[i] + (x[i] - previousX[i]) * alpha;
+	}
+
+	/**
+	 * @param i
+	 * @param alpha - from {@link #getAlpha(long)}
+	 * @return the y position between the previous and this snapshot
+	 */
+	public double getY(int i, double alpha) {
+		return previousY[i] + (y[i] - previousY[i]) * alpha;
+	}
+
+	public double getRadius(int i) {
+		return radius[i];
+	}
+
+	public int getColorIndex(int i) {
+		return colorIndex[i];
+	}
+
+	public int getId(int i) {
+		return ids[i];
+	}
+
+	/**
+	 * Copies the balls of a world into this snapshot. The previous positions
+	 * are set to the current ones.
+	 */
+	void capture(BallWorld world, int stepCount, long nanoTime, long previousNanoTime) {
+		int n = world.size();
+		if (x.length < n) {
+			int capacity = Math.max(n, 2 * x.length);
+			x = new double[capacity];
+			y = new double[capacity];
+			previousX = new double[capacity];
+			previousY = new double[capacity];
+			radius = new double[capacity];
+			colorIndex = new int[capacity];
+			ids = new int[capacity];
+		}
+		for (int i = 0; i < n; i++) {
+			x[i] = world.getX(i);
+			y[i] = world.getY(i);
+			radius[i] = world.getRadius(i);
+			colorIndex[i] = world.getColorIndex(i);
+			ids[i] = world.getId(i);
+		}
+		System.arraycopy(x, 0, previousX, 0, n);
+		System.arraycopy(y, 0, previousY, 0, n);
+		size = n;
+		this.stepCount = stepCount;
+		this.nanoTime = nanoTime;
+		this.previousNanoTime = previousNanoTime;
+	}
+
+	void setPrevious(int i, double x, double y) {
+		previousX[i] = x;
+		previousY[i] = y;
+	}
+}
@@ -0,0 +1,112 @@
+package balls;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands {@link Snapshot}s from the thread running a simulation to the thread
+ * drawing it, without either of them waiting for the other.
+ *
+ * There are three snapshots: one being written, one being read, and the
+ * latest published one in between. Publishing swaps the written snapshot
+ * with the latest one, and reading swaps the read snapshot with the latest
+ * one if it is newer, so a snapshot is only ever used by one thread at a
+ * time and no memory is allocated once the snapshots are large enough. If
+ * the simulation publishes faster than the snapshots are read, the older ones
+ * are skipped.
+ *
+ * {@link #publish(BallWorld, int)} must only be called from one thread, and
+ * {@link #acquire()} from one other thread.
+ */
+public class SnapshotBuffer {
+
+	private final AtomicReference<Snapshot> latest = new AtomicReference<>(new Snapshot());
+	/** Snapshot being written, only used by the publishing thread */
+	private Snapshot back = new Snapshot();
+	/** Snapshot being read, only used by the reading thread */
+	private Snapshot front = new Snapshot();
+
+	// positions of the last published snapshot, by ball id, so that the next
+	// one can find where its balls were
+	/** Ids in an open addressing table, shifted by one so that 0 is empty */
+	private int[] table = new int[0];
+	private double[] lastX = new double[0];
+	private double[] lastY = new double[0];
+	private long lastNanoTime = System.nanoTime();
+
+	/**
+	 * Makes a snapshot of the world the latest one. Called by the thread
+	 * running the simulation.
+	 *
+	 * @param world     - the balls
+	 * @param stepCount - number of steps taken
+	 */
+	public void publish(BallWorld world, int stepCount) {
+		long now = System.nanoTime();
+		Snapshot snapshot = back;
+		snapshot.capture(world, stepCount, now, lastNanoTime);
+		int n = snapshot.size();
+		if (table.length > 0) {
+			int mask = table.length - 1;
+			for (int i = 0; i < n; i++) {
+				int key = snapshot.getId(i) + 1;
+				for (int k = hash(key) & mask; table[k] != 0; k = (k + 1) & mask) {
+					if (table[k] == key) {
+						snapshot.setPrevious(i, lastX[k], lastY[k]);
+						break;
+					}
+				}
+			}
+		}
+		remember(snapshot);
+		lastNanoTime = now;
+
+		snapshot.fresh = true;
+		back = latest.getAndSet(snapshot);
+	}
+
+	/**
+	 * Returns the latest published snapshot. The snapshot stays valid until
+	 * the next call. Called by the thread drawing the balls.
+	 *
+	 * @return the latest snapshot
+	 */
+	public Snapshot acquire() {
+		if (latest.get().fresh) {
+			front.fresh = false;
+			front = latest.getAndSet(front);
+		}
+		return front;
+	}
+
+	/**
+	 * Stores the positions of a snapshot by ball id
+	 */
+	private void remember(Snapshot snapshot) {
+		int n = snapshot.size();
+		int capacity = Integer.highestOneBit(Math.max(1, 2 * n - 1)) << 1;
+		if (table.length < capacity || table.length > 4 * capacity) {
+			table = new int[capacity];
+			lastX = new double[capacity];
+			lastY = new double[capacity];
+		} else {
+			Arrays.fill(table, 0);
+		}
+		int mask = table.length - 1;
+		for (int i = 0; i < n; i++) {
+			int key = snapshot.getId(i) + 1;
+			int k = hash(key) & mask;
+			while (table[k] != 0) {
+				k = (k + 1) & mask;
+			}
+			table[k] = key;
+			lastX[k] = snapshot.getX(i);
+			lastY[k] = snapshot.getY(i);
+		}
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
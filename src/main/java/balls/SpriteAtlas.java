@@ -0,0 +1,128 @@
+package balls;
+
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+
+/**
+ * Pre-rendered images of balls, so that balls can be drawn by copying pixels
+ * instead of filling a gradient for every ball in every frame.
+ *
+ * Every color of a palette is rendered once for each radius bucket, where
+ * bucket b holds a ball of radius 2^b. A ball is drawn from the smallest
+ * bucket at least as large as the ball, scaled down to the right size.
+ * All sprites are kept in one image, the atlas.
+ *
+ * The atlas is created with a snapshot, so it must be created on the JavaFX
+ * Application Thread.
+ */
+public class SpriteAtlas {
+
+	/** Largest bucket, balls larger than 2^MAX_BUCKET have no sprite */
+	public static final int MAX_BUCKET = 6;
+	/** Largest radius of a ball with a sprite */
+	public static final double MAX_RADIUS = 1 << MAX_BUCKET;
+	/** Number of colors next to each other in the atlas */
+	private static final int COLORS_PER_ROW = 8;
+	/** Empty pixels between sprites, so scaling does not bleed */
+	private static final int PADDING = 1;
+
+	private final WritableImage image;
+	private final int colorCount;
+	/** X position of each bucket inside a color block */
+	private final int[] bucketOffset = new int[MAX_BUCKET + 1];
+	private final int blockWidth;
+	private final int blockHeight;
+
+	/**
+	 * Renders all sprites for the given colors
+	 *
+	 * @param colors - the palette, color i is drawn for color index i
+	 */
+	public SpriteAtlas(Paint[] colors) {
+		colorCount = colors.length;
+		int offset = 0;
+		for (int b = 0; b <= MAX_BUCKET; b++) {
+			bucketOffset[b] = offset;
+			offset += diameter(b) + PADDING;
+		}
+		blockWidth = offset;
+		blockHeight = diameter(MAX_BUCKET) + PADDING;
+
+		int rows = (colorCount + COLORS_PER_ROW - 1) / COLORS_PER_ROW;
+		Canvas canvas = new Canvas(Math.min(colorCount, COLORS_PER_ROW) * blockWidth, rows * blockHeight);
+		GraphicsContext context = canvas.getGraphicsContext2D();
+		for (int c = 0; c < colorCount; c++) {
+			context.setFill(colors[c]);
+			for (int b = 0; b <= MAX_BUCKET; b++) {
+				context.fillOval(spriteX(c, b), spriteY(c), diameter(b), diameter(b));
+			}
+		}
+		SnapshotParameters parameters = new SnapshotParameters();
+		parameters.setFill(Color.TRANSPARENT);
+		image = canvas.snapshot(parameters, null);
+	}
+
+	/**
+	 * @return number of colors in this atlas
+	 */
+	public int getColorCount() {
+		return colorCount;
+	}
+
+	/**
+	 * Checks if a ball can be drawn from this atlas
+	 *
+	 * @param colorIndex - palette index of the color of the ball
+	 * @param radius     - radius of the ball
+	 * @return true if there is a sprite for the ball
+	 */
+	public boolean hasSprite(int colorIndex, double radius) {
+		return colorIndex < colorCount && radius <= MAX_RADIUS;
+	}
+
+	/**
+	 * Draws a ball centered on (x,y). Only call this if
+	 * {@link #hasSprite(int, double)} is true for the ball.
+	 *
+	 * @param context    - where to draw the ball
+	 * @param colorIndex - palette index of the color of the ball
+	 * @param x          - x position of the center
+	 * @param y          - y position of the center
+	 * @param radius     - radius of the ball
+	 */
+	public void draw(GraphicsContext context, int colorIndex, double x, double y, double radius) {
+		int b = bucket(radius);
+		int size = diameter(b);
+		context.drawImage(image, spriteX(colorIndex, b), spriteY(colorIndex), size, size, x - radius, y - radius,
+				2 * radius, 2 * radius);
+	}
+
+	/**
+	 * Finds the smallest bucket with a radius at least as large as the given one
+	 *
+	 * @param radius
+	 * @return the bucket
+	 */
+	static int bucket(double radius) {
+		if (radius <= 1)
+			return 0;
+		int exponent = Math.getExponent(radius);
+		return radius > Math.scalb(1.0, exponent) ? exponent + 1 : exponent;
+	}
+
+	private static int diameter(int bucket) {
+		return 2 << bucket;
+	}
+
+	private int spriteX(int colorIndex, int bucket) {
+		return (colorIndex % COLORS_PER_ROW) * blockWidth + bucketOffset[bucket];
+	}
+
+	private int spriteY(int colorIndex) {
+		return (colorIndex / COLORS_PER_ROW) * blockHeight;
+	}
+}
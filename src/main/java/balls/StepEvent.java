@@ -0,0 +1,47 @@
+package balls;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for one {@link BallSimulation#step()}, recorded by
+ * {@link SimulationMetrics}. The duration of the event is the whole step.
+ */
+@Name("balls.Step")
+@Label("Simulation Step")
+@Category("Balls")
+@Description("One step of the ball simulation")
+@StackTrace(false)
+class StepEvent extends jdk.jfr.Event {
+
+	@Label("Step")
+	int stepCount;
+
+	@Label("Balls")
+	int balls;
+
+	@Label("Integrate")
+	@Timespan
+	long integrateNanos;
+
+	@Label("Collide")
+	@Timespan
+	long collideNanos;
+
+	@Label("Explode")
+	@Timespan
+	long explodeNanos;
+
+	@Label("Spawn")
+	@Timespan
+	long spawnNanos;
+
+	@Label("Allocated")
+	@DataAmount
+	long allocatedBytes;
+}
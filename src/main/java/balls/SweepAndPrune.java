@@ -0,0 +1,116 @@
+package balls;
+
+import java.util.Arrays;
+
+/**
+ * Finds balls that are close to each other by sorting them on the left edge
+ * of their bounding boxes, and then sweeping from left to right.
+ *
+ * Balls only move a little in every step, so the order from the last call is
+ * almost right, and it is fixed with an insertion sort that takes about linear
+ * time. Only when many balls are new is the order sorted from scratch.
+ *
+ * Unlike {@link UniformGrid} the cost does not depend on the size of the
+ * largest ball, but it grows when many balls are on top of each other along
+ * the x axis.
+ */
+public class SweepAndPrune implements Broadphase {
+
+	/** Slots sorted by the left edge of the ball */
+	private int[] order = new int[0];
+	/** Number of slots in {@link #order} */
+	private int count;
+	private double[] minX = new double[0];
+	private double[] maxX = new double[0];
+	/** Scratch space for sorting from scratch */
+	private long[] keys = new long[0];
+
+	@Override
+	public void findPairs(BallWorld world, PairHandler handler) {
+		int n = world.size();
+		if (minX.length < n) {
+			int capacity = Math.max(n, 2 * minX.length);
+			minX = new double[capacity];
+			maxX = new double[capacity];
+			order = Arrays.copyOf(order, capacity);
+		}
+		for (int i = 0; i < n; i++) {
+			double x = world.getX(i);
+			double r = world.getRadius(i);
+			minX[i] = x - r;
+			maxX[i] = x + r;
+		}
+		update(n);
+
+		for (int k = 0; k < n; k++) {
+			int i = order[k];
+			double right = maxX[i];
+			double y = world.getY(i);
+			double r = world.getRadius(i);
+			for (int m = k + 1; m < n; m++) {
+				int j = order[m];
+				if (minX[j] > right)
+					break;
+				if (Math.abs(y - world.getY(j)) <= r + world.getRadius(j)) {
+					if (i < j)
+						handler.pair(i, j);
+					else
+						handler.pair(j, i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Brings {@link #order} up to date with the first n slots
+	 */
+	private void update(int n) {
+		// slots past the end are gone, and slots from the old end are new
+		int kept = 0;
+		for (int k = 0; k < count; k++) {
+			if (order[k] < n)
+				order[kept++] = order[k];
+		}
+		int added = n - kept;
+		for (int i = kept; i < n; i++) {
+			order[i] = i;
+		}
+		count = n;
+
+		if (added > n / 4)
+			sort(n);
+		insertionSort(n);
+	}
+
+	/**
+	 * Sorts approximately by the left edge, rounded to a float, so that the
+	 * slot fits next to it in a long and no objects are created
+	 */
+	private void sort(int n) {
+		if (keys.length < n)
+			keys = new long[order.length];
+		for (int k = 0; k < n; k++) {
+			int bits = Float.floatToIntBits((float) minX[order[k]]);
+			// negative floats sort backwards as ints
+			bits ^= (bits >> 31) & 0x7fffffff;
+			keys[k] = (long) bits << 32 | order[k];
+		}
+		Arrays.sort(keys, 0, n);
+		for (int k = 0; k < n; k++) {
+			order[k] = (int) keys[k];
+		}
+	}
+
+	private void insertionSort(int n) {
+		for (int k = 1; k < n; k++) {
+			int slot = order[k];
+			double key = minX[slot];
+			int m = k - 1;
+			while (m >= 0 && minX[order[m]] > key) {
+				order[m + 1] = order[m];
+				m--;
+			}
+			order[m + 1] = slot;
+		}
+	}
+}
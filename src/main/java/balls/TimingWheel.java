@@ -0,0 +1,160 @@
+package balls;
+
+import java.util.Arrays;
+
+/**
+ * Keeps balls of a {@link BallWorld} by the step where something is due to
+ * happen to them, like an explosion, so that a step only has to look at the
+ * balls that are due instead of at all balls.
+ *
+ * The wheel is hierarchical: level 0 has a bucket for each of the next 64
+ * steps, level 1 a bucket for each of the next 64 runs of 64 steps, and so
+ * on. A ball is put in the lowest level where its step and the current step
+ * only differ in the bucket, and is moved down to a lower level when the
+ * current step reaches its bucket. So scheduling a ball and finding the due
+ * balls take constant time, however far ahead the steps are.
+ *
+ * A ball is kept together with its id, and a ball that has been removed from
+ * the world, or whose {@link Ball} handle has been reused for another ball,
+ * is left out when it is due.
+ */
+public class TimingWheel {
+
+	private static final int BITS = 6;
+	private static final int BUCKETS = 1 << BITS;
+	private static final int MASK = BUCKETS - 1;
+	/** Enough levels for any step that fits in an int */
+	private static final int LEVELS = (Integer.SIZE + BITS - 1) / BITS;
+
+	private final BallWorld world;
+	/** Step handled by the next call to {@link #advance()} */
+	private int current;
+	private int size;
+	// the balls, their ids and their steps, by level and bucket
+	private final Ball[][] balls = new Ball[LEVELS * BUCKETS][];
+	private final int[][] ids = new int[LEVELS * BUCKETS][];
+	private final int[][] steps = new int[LEVELS * BUCKETS][];
+	private final int[] counts = new int[LEVELS * BUCKETS];
+	/** Slots of the balls due at the last step handled */
+	private int[] due = new int[16];
+	private int dueCount;
+
+	/**
+	 * Creates an empty wheel
+	 *
+	 * @param world - the world of the balls
+	 * @param step  - the first step to handle
+	 */
+	public TimingWheel(BallWorld world, int step) {
+		if (step < 0)
+			throw new IllegalArgumentException("Step must not be negative");
+		this.world = world;
+		this.current = step;
+	}
+
+	public BallWorld getWorld() {
+		return world;
+	}
+
+	/**
+	 * @return the step handled by the next call to {@link #advance()}
+	 */
+	public int getCurrentStep() {
+		return current;
+	}
+
+	/**
+	 * @return number of balls scheduled, removed balls that have not been due
+	 *         yet included
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Schedules a ball for a step. A ball scheduled for a step that has
+	 * already been handled is due at the next step handled.
+	 *
+	 * @param slot - slot of the ball in the world
+	 * @param step
+	 */
+	public void schedule(int slot, int step) {
+		add(world.get(slot), world.getId(slot), Math.max(step, current));
+	}
+
+	/**
+	 * Finds the balls due at the current step, see {@link #getDue(int)}, and
+	 * goes on to the next step
+	 *
+	 * @return number of balls due
+	 */
+	public int advance() {
+		if (current == Integer.MAX_VALUE)
+			throw new IllegalStateException("No more steps");
+		// move the balls of the buckets reached by this step down, from the top
+		// so that they can be moved down more than one level
+		int top = 0;
+		while (top + 1 < LEVELS && (current & ((1 << (BITS * (top + 1))) - 1)) == 0) {
+			top++;
+		}
+		for (int level = top; level > 0; level--) {
+			int bucket = level * BUCKETS + ((current >>> (BITS * level)) & MASK);
+			int count = counts[bucket];
+			counts[bucket] = 0;
+			size -= count;
+			for (int i = 0; i < count; i++) {
+				add(balls[bucket][i], ids[bucket][i], steps[bucket][i]);
+				balls[bucket][i] = null;
+			}
+		}
+
+		int bucket = current & MASK;
+		int count = counts[bucket];
+		counts[bucket] = 0;
+		size -= count;
+		dueCount = 0;
+		for (int i = 0; i < count; i++) {
+			Ball ball = balls[bucket][i];
+			balls[bucket][i] = null;
+			int slot = ball.getSlot();
+			if (ball.getWorld() != world || slot < 0 || slot >= world.size() || world.getId(slot) != ids[bucket][i])
+				continue;
+			if (dueCount == due.length)
+				due = Arrays.copyOf(due, 2 * dueCount);
+			due[dueCount++] = slot;
+		}
+		current++;
+		return dueCount;
+	}
+
+	/**
+	 * @param i - less than the number returned by the last {@link #advance()}
+	 * @return slot of a ball due at the last step handled
+	 */
+	public int getDue(int i) {
+		if (i < 0 || i >= dueCount)
+			throw new IndexOutOfBoundsException(i);
+		return due[i];
+	}
+
+	private void add(Ball ball, int id, int step) {
+		int difference = step ^ current;
+		int level = difference == 0 ? 0 : (Integer.SIZE - 1 - Integer.numberOfLeadingZeros(difference)) / BITS;
+		int bucket = level * BUCKETS + ((step >>> (BITS * level)) & MASK);
+		int count = counts[bucket];
+		if (balls[bucket] == null) {
+			balls[bucket] = new Ball[4];
+			ids[bucket] = new int[4];
+			steps[bucket] = new int[4];
+		} else if (count == balls[bucket].length) {
+			balls[bucket] = Arrays.copyOf(balls[bucket], 2 * count);
+			ids[bucket] = Arrays.copyOf(ids[bucket], 2 * count);
+			steps[bucket] = Arrays.copyOf(steps[bucket], 2 * count);
+		}
+		balls[bucket][count] = ball;
+		ids[bucket][count] = id;
+		steps[bucket][count] = step;
+		counts[bucket] = count + 1;
+		size++;
+	}
+}
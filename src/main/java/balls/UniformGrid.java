@@ -0,0 +1,143 @@
+package balls;
+
+import java.util.Arrays;
+
+/**
+ * Finds balls that are close to each other by sorting them into a grid of
+ * square cells.
+ *
+ * The grid is a spatial hash: each cell is hashed into a table with room for
+ * about two cells per ball, so the grid covers any area without using memory
+ * for empty cells. Balls are sorted into the table with a counting sort every
+ * time {@link #findPairs(BallWorld, PairHandler)} is called, which takes time
+ * linear in the number of balls and allocates nothing once the arrays are
+ * large enough.
+ *
+ * Unless a cell size is given, the cells are as wide as the largest ball, so a
+ * ball can only touch balls in its own and the eight neighbouring cells. This
+ * works best when all balls have about the same size, with balls of very
+ * different sizes {@link SweepAndPrune} or {@link DynamicAabbTree} may be
+ * faster.
+ */
+public class UniformGrid implements Broadphase {
+
+	/** Fixed cell size, or 0 to use the largest ball diameter */
+	private double cellSize;
+	/** Table bucket of each ball */
+	private int[] bucket = new int[0];
+	/** Balls sorted by bucket */
+	private int[] sorted = new int[0];
+	/** Where each bucket starts in {@link #sorted}, one extra at the end */
+	private int[] bucketStart = new int[1];
+	private int[] fill = new int[0];
+	/** Buckets already visited for the current ball */
+	private int[] visited = new int[9];
+	private int mask;
+	private double cell;
+
+	/**
+	 * Creates a grid with cells as wide as the largest ball
+	 */
+	public UniformGrid() {
+		this(0);
+	}
+
+	/**
+	 * Creates a grid with a fixed cell size. Balls wider than the cells are
+	 * still found, but only when they are close to the center of each other.
+	 *
+	 * @param cellSize - width of a cell, or 0 to use the largest ball diameter
+	 */
+	public UniformGrid(double cellSize) {
+		if (cellSize < 0)
+			throw new IllegalArgumentException("Cell size must not be negative");
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * {@inheritDoc} Pairs are found in the same order every time for the same
+	 * world.
+	 */
+	@Override
+	public void findPairs(BallWorld world, PairHandler handler) {
+		int n = world.size();
+		build(world, n);
+		for (int i = 0; i < n; i++) {
+			double x = world.getX(i);
+			double y = world.getY(i);
+			double r = world.getRadius(i);
+			int cx = cellOf(x);
+			int cy = cellOf(y);
+			int visitedCount = 0;
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					int b = hash(cx + dx, cy + dy);
+					// different cells may share a bucket, visit each bucket once
+					boolean seen = false;
+					for (int v = 0; v < visitedCount; v++) {
+						seen |= visited[v] == b;
+					}
+					if (seen)
+						continue;
+					visited[visitedCount++] = b;
+					for (int k = bucketStart[b]; k < bucketStart[b + 1]; k++) {
+						int j = sorted[k];
+						if (j <= i)
+							continue;
+						double reach = r + world.getRadius(j);
+						if (Math.abs(x - world.getX(j)) <= reach && Math.abs(y - world.getY(j)) <= reach)
+							handler.pair(i, j);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sorts the balls into buckets
+	 */
+	private void build(BallWorld world, int n) {
+		int tableSize = Integer.highestOneBit(Math.max(1, 2 * n - 1)) << 1;
+		if (bucket.length < n) {
+			bucket = new int[n];
+			sorted = new int[n];
+		}
+		if (bucketStart.length != tableSize + 1) {
+			bucketStart = new int[tableSize + 1];
+			fill = new int[tableSize];
+		} else {
+			Arrays.fill(bucketStart, 0);
+		}
+		mask = tableSize - 1;
+
+		cell = cellSize;
+		if (cell == 0) {
+			double maxRadius = 0;
+			for (int i = 0; i < n; i++) {
+				maxRadius = Math.max(maxRadius, world.getRadius(i));
+			}
+			cell = Math.max(2 * maxRadius, 1);
+		}
+
+		for (int i = 0; i < n; i++) {
+			int b = hash(cellOf(world.getX(i)), cellOf(world.getY(i)));
+			bucket[i] = b;
+			bucketStart[b + 1]++;
+		}
+		for (int b = 0; b < tableSize; b++) {
+			bucketStart[b + 1] += bucketStart[b];
+			fill[b] = bucketStart[b];
+		}
+		for (int i = 0; i < n; i++) {
+			sorted[fill[bucket[i]]++] = i;
+		}
+	}
+
+	private int cellOf(double position) {
+		return (int) Math.floor(position / cell);
+	}
+
+	private int hash(int cx, int cy) {
+		return ((cx * 73856093) ^ (cy * 19349663)) & mask;
+	}
+}
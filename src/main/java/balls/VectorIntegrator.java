@@ -0,0 +1,75 @@
+package balls;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Moves many motions along one axis at once using SIMD lanes.
+ * Works on the same arrays as {@link BallWorld}, and gives exactly the same
+ * result as {@link Motion#move()} for every motion.
+ *
+ * A lane that moves without hitting a limit, or that bounces once off a limit,
+ * is computed with vector operations. A lane that would bounce more than once,
+ * or that starts or ends outside its limits, is left to the scalar code.
+ *
+ * Needs the {@code jdk.incubator.vector} module, so the class must not be
+ * touched unless that module is present.
+ */
+class VectorIntegrator {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	/**
+	 * Moves motion {@code from} up to (not including) {@code to} one step.
+	 * The arrays are the per-motion fields of {@link Motion}, with missing
+	 * limits given as infinity.
+	 */
+	static void move(double[] position, double[] speed, double[] acceleration, double[] lowerLimit,
+			double[] upperLimit, double[] bounceFactor, int from, int to) {
+		int i = from;
+		int bound = from + SPECIES.loopBound(to - from);
+		for (; i < bound; i += SPECIES.length()) {
+			DoubleVector pos = DoubleVector.fromArray(SPECIES, position, i);
+			DoubleVector s = DoubleVector.fromArray(SPECIES, speed, i);
+			DoubleVector lower = DoubleVector.fromArray(SPECIES, lowerLimit, i);
+			DoubleVector upper = DoubleVector.fromArray(SPECIES, upperLimit, i);
+			DoubleVector next = pos.add(s);
+
+			VectorMask<Double> hitUpper = s.compare(VectorOperators.GT, 0).and(next.compare(VectorOperators.GT, upper));
+			VectorMask<Double> hitLower = s.compare(VectorOperators.LT, 0).and(next.compare(VectorOperators.LT, lower));
+			VectorMask<Double> bounce = hitUpper.or(hitLower);
+
+			if (bounce.anyTrue()) {
+				DoubleVector negBounce = DoubleVector.fromArray(SPECIES, bounceFactor, i).neg();
+				// distance left after reaching the limit, turned around and damped
+				DoubleVector upperRest = s.sub(upper.sub(pos)).mul(negBounce);
+				DoubleVector lowerRest = s.add(pos.sub(lower)).mul(negBounce);
+				DoubleVector bounced = lower.add(lowerRest).blend(upper.add(upperRest), hitUpper);
+				next = next.blend(bounced, bounce);
+				s = s.blend(s.mul(negBounce), bounce);
+			}
+
+			VectorMask<Double> scalar = pos.compare(VectorOperators.LT, lower)
+					.or(pos.compare(VectorOperators.GT, upper))
+					.or(next.compare(VectorOperators.LT, lower))
+					.or(next.compare(VectorOperators.GT, upper));
+			VectorMask<Double> done = scalar.not();
+
+			next.intoArray(position, i, done);
+			s.add(DoubleVector.fromArray(SPECIES, acceleration, i)).intoArray(speed, i, done);
+
+			if (scalar.anyTrue()) {
+				for (int lane = 0; lane < SPECIES.length(); lane++) {
+					if (scalar.laneIsSet(lane))
+						BallWorld.moveAxis(position, speed, acceleration, lowerLimit, upperLimit, bounceFactor,
+								i + lane);
+				}
+			}
+		}
+		for (; i < to; i++) {
+			BallWorld.moveAxis(position, speed, acceleration, lowerLimit, upperLimit, bounceFactor, i);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import javafx.scene.paint.Color;
+
+class BallSimulationTest {
+
+	private static BallSimulation simulation(long seed, int parallelism) {
+		BallSimulation simulation = new BallSimulation(640, 480, new RandomSource(seed));
+		simulation.setMaxNumberOfBalls(20000);
+		simulation.setParallelism(parallelism);
+		simulation.setup();
+		return simulation;
+	}
+
+	@Test
+	void testSetup() {
+		BallSimulation simulation = simulation(1, 1);
+		BallWorld world = simulation.getWorld();
+		assertEquals(10, world.size());
+		for (int i = 0; i < world.size(); i++) {
+			assertEquals(32, world.getRadius(i));
+			assertEquals(320, world.getX(i));
+			assertEquals(448, world.getY(i));
+		}
+	}
+
+	/**
+	 * Checks that the first balls explode into 8 balls of half the radius
+	 * after 200 steps.
+	 */
+	@Test
+	void testExplosion() {
+		BallSimulation simulation = simulation(2, 1);
+		for (int i = 0; i < 199; i++) {
+			simulation.step();
+		}
+		BallWorld world = simulation.getWorld();
+		int before = world.size();
+		simulation.step();
+		// 10 balls from setup explode, and one ball is added at step 199 % 16 != 0
+		assertEquals(before - 10 + 80, world.size());
+		int halfSize = 0;
+		for (int i = 0; i < world.size(); i++) {
+			if (world.getRadius(i) == 16)
+				halfSize++;
+		}
+		assertEquals(80, halfSize);
+	}
+
+	/**
+	 * Checks that fragments explode after the lifetime of their generation,
+	 * and that balls added to the world directly explode too
+	 */
+	@Test
+	void testLifetimes() {
+		BallSimulation simulation = simulation(4, 1);
+		simulation.setSpawnInterval(1000);
+		simulation.setLifetimes(50, 30);
+		BallWorld world = simulation.getWorld();
+		world.newBall(Color.WHITE, 2);
+		for (int i = 0; i < 50; i++) {
+			simulation.step();
+		}
+		// 10 balls from setup and the one added, the ball added at step 0 is
+		// first moved at step 1
+		assertEquals(11, simulation.getBallsExploded());
+		assertEquals(80 + 1, world.size());
+		simulation.step();
+		assertEquals(12, simulation.getBallsExploded());
+		assertEquals(88, world.size());
+		for (int i = 0; i < world.size(); i++) {
+			assertEquals(1, world.getGeneration(i));
+		}
+		for (int i = 0; i < 28; i++) {
+			simulation.step();
+		}
+		assertEquals(12, simulation.getBallsExploded());
+		simulation.step();
+		assertEquals(12 + 80, simulation.getBallsExploded());
+		simulation.step();
+		assertEquals(12 + 88, simulation.getBallsExploded());
+		assertEquals(2, world.getGeneration(0));
+		assertEquals(50, simulation.getLifetime(0));
+		assertEquals(30, simulation.getLifetime(5));
+		assertThrows(IllegalArgumentException.class, () -> simulation.setLifetimes());
+		assertThrows(IllegalArgumentException.class, () -> simulation.setLifetimes(10, 0));
+	}
+
+	@Test
+	void testMaxNumberOfBalls() {
+		BallSimulation simulation = new BallSimulation(640, 480, new RandomSource(3));
+		simulation.setMaxNumberOfBalls(50);
+		simulation.setup();
+		for (int i = 0; i < 2000; i++) {
+			simulation.step();
+			assertTrue(simulation.getWorld().size() < 50 + 8);
+		}
+	}
+
+	/**
+	 * Checks that the same seed gives the same world for every parallelism
+	 */
+	@Test
+	void testSameSeedSameWorld() {
+		long seed = new Random().nextLong();
+		BallSimulation sequential = simulation(seed, 1);
+		BallSimulation parallel = simulation(seed, 4);
+		try {
+			for (int i = 0; i < 1000; i++) {
+				sequential.step();
+				parallel.step();
+			}
+		} finally {
+			parallel.shutdown();
+		}
+		BallWorld a = sequential.getWorld();
+		BallWorld b = parallel.getWorld();
+		assertEquals(a.size(), b.size());
+		for (int i = 0; i < a.size(); i++) {
+			assertEquals(a.getX(i), b.getX(i));
+			assertEquals(a.getY(i), b.getY(i));
+			assertEquals(a.getRadius(i), b.getRadius(i));
+			assertEquals(a.getColorIndex(i), b.getColorIndex(i));
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package balls;
 
 import static org.junit.jupiter.api.Assertions.*;
+import java.lang.management.ManagementFactory;
 import java.util.Random;
 import org.junit.jupiter.api.Test;
 import javafx.scene.paint.Color;
@@ -9,6 +10,7 @@ public class BallTest {
 	public static final double DELTA = 1e-10;
 	private static final int N = 10000;
 	private Random random = new Random();
+	private RandomSource source = new RandomSource();
 
 	private Ball generateBall() {
 		Ball b = new Ball(Color.WHITE, 100 * random.nextDouble());
@@ -103,6 +105,38 @@ public class BallTest {
 		assertEquals(steps + 1, b.getSteps());
 	}
 
+	@Test
+	public void testAdvance() {
+		for (int i = 0; i < 1000; i++) {
+			Ball moved = new Ball(Color.WHITE, 10);
+			Ball advanced = new Ball(Color.WHITE, 10);
+			double x = 1000 * random.nextDouble() - 500;
+			double y = 500 * random.nextDouble();
+			double dx = 20 * random.nextDouble() - 10;
+			double dy = 20 * random.nextDouble() - 10;
+			double bounceFactor = i % 2 == 0 ? 1 : random.nextDouble();
+			for (Ball b : new Ball[] { moved, advanced }) {
+				b.moveTo(x, y);
+				b.setSpeed(dx, dy);
+				b.setAcceleration(0, 0.098);
+				b.setLowerLimitX(-1000);
+				b.setUpperLimitX(1000);
+				b.setUpperLimitY(500);
+				b.setBounceFactor(bounceFactor, bounceFactor);
+			}
+			int steps = random.nextInt(10000);
+			for (int k = 0; k < steps; k++) {
+				moved.move();
+			}
+			advanced.advance(steps);
+			assertEquals(moved.getSteps(), advanced.getSteps());
+			assertEquals(moved.getX(), advanced.getX(), 1e-6);
+			assertEquals(moved.getY(), advanced.getY(), 1e-6);
+			assertEquals(moved.getDeltaX(), advanced.getDeltaX(), 1e-6);
+			assertEquals(moved.getDeltaY(), advanced.getDeltaY(), 1e-6);
+		}
+	}
+
 	@Test
 	public void testHalt() {
 		for (int i = 0; i < N; i++) {
@@ -190,4 +224,58 @@ public class BallTest {
 		}
 	}
 
+	/**
+	 * Checks that explodeInto creates 8 balls of half the radius at the
+	 * position of the exploding ball.
+	 */
+	@Test
+	void testExplodeInto() {
+		BallWorld world = new BallWorld();
+		Ball ball = world.newBall(Color.BISQUE, 24);
+		ball.moveTo(5.0, 6.0);
+		ball.explodeInto(world, source);
+		assertEquals(9, world.size());
+		for (int i = 1; i < world.size(); i++) {
+			Ball b = world.get(i);
+			assertEquals(12, b.getRadius());
+			assertEquals(5.0, b.getX());
+			assertEquals(6.0, b.getY());
+			assertEquals(Color.BISQUE, b.getColor());
+		}
+	}
+
+	/**
+	 * Checks that recycled balls are reused, so that exploding and recycling
+	 * balls allocates nothing once the world has reached its size.
+	 */
+	@Test
+	void testExplodeIntoDoesNotAllocate() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		BallWorld world = new BallWorld();
+		world.newBall(Color.BISQUE, 1024);
+		explodeAndRecycle(world, 10000);
+
+		long before = threads.getCurrentThreadAllocatedBytes();
+		explodeAndRecycle(world, 10000);
+		long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+		assertEquals(0, allocated);
+		assertEquals(1, world.size());
+	}
+
+	/**
+	 * Explodes the only ball in the world, and then recycles the ball and all
+	 * but one of the new balls.
+	 */
+	private void explodeAndRecycle(BallWorld world, int times) {
+		for (int i = 0; i < times; i++) {
+			Ball ball = world.get(0);
+			ball.explodeInto(world, source);
+			world.recycle(ball);
+			while (world.size() > 1) {
+				world.recycle(world.get(world.size() - 1));
+			}
+		}
+	}
+
 }
@@ -0,0 +1,361 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import javafx.scene.paint.Color;
+
+public class BallWorldTest {
+	private static final int N = 1000;
+	private Random random = new Random();
+
+	/**
+	 * Checks that the array backed balls move exactly like two {@link Motion}s
+	 * with the same limits and bounce factors.
+	 */
+	@Test
+	void testMoveMatchesMotion() {
+		BallWorld world = new BallWorld();
+		for (int i = 0; i < N; i++) {
+			Ball b = world.newBall(Color.WHITE, 10);
+			Motion x = new Motion(50, 20 * random.nextDouble() - 10, random.nextDouble() - 0.5);
+			Motion y = new Motion(50, 20 * random.nextDouble() - 10, random.nextDouble());
+			double bounceX = random.nextDouble();
+			double bounceY = 2 * random.nextDouble();
+			x.setBounceFactor(bounceX);
+			y.setBounceFactor(bounceY);
+			x.setLowerLimit(0);
+			x.setUpperLimit(100);
+			y.setUpperLimit(100);
+			b.moveTo(x.getPosition(), y.getPosition());
+			b.setSpeed(x.getSpeed(), y.getSpeed());
+			b.setAcceleration(x.getAcceleration(), y.getAcceleration());
+			b.setBounceFactor(bounceX, bounceY);
+			b.setLowerLimitX(0);
+			b.setUpperLimitX(100);
+			b.setUpperLimitY(100);
+
+			for (int step = 0; step < 100; step++) {
+				x.move();
+				y.move();
+				b.move();
+				assertEquals(x.getPosition(), b.getX());
+				assertEquals(y.getPosition(), b.getY());
+				assertEquals(x.getSpeed(), b.getDeltaX());
+				assertEquals(y.getSpeed(), b.getDeltaY());
+			}
+			assertEquals(100, b.getSteps());
+		}
+	}
+
+	@Test
+	void testWorldMoveMovesAll() {
+		BallWorld world = new BallWorld(1);
+		for (int i = 0; i < N; i++) {
+			Ball b = world.newBall(Color.WHITE, 1);
+			b.moveTo(i, -i);
+			b.setSpeed(1, 2);
+		}
+		world.move();
+		for (int i = 0; i < N; i++) {
+			assertEquals(i + 1.0, world.getX(i));
+			assertEquals(-i + 2.0, world.getY(i));
+			assertEquals(1, world.getSteps(i));
+		}
+	}
+
+	/**
+	 * Checks that moving in parallel gives exactly the same world as moving
+	 * sequentially, for any number of chunks.
+	 */
+	@Test
+	void testParallelMoveMatchesSequential() {
+		int n = 50_000;
+		long seed = random.nextLong();
+		BallWorld sequential = randomWorld(new Random(seed), n);
+		for (int step = 0; step < 20; step++) {
+			sequential.move();
+		}
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (int chunks : new int[] { 1, 3, 4, 16 }) {
+				BallWorld parallel = randomWorld(new Random(seed), n);
+				for (int step = 0; step < 20; step++) {
+					parallel.move(pool, chunks);
+				}
+				for (int i = 0; i < n; i++) {
+					assertEquals(sequential.getX(i), parallel.getX(i));
+					assertEquals(sequential.getY(i), parallel.getY(i));
+					assertEquals(sequential.getSpeedY(i), parallel.getSpeedY(i));
+					assertEquals(sequential.getSteps(i), parallel.getSteps(i));
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static BallWorld randomWorld(Random random, int n) {
+		BallWorld world = new BallWorld();
+		for (int i = 0; i < n; i++) {
+			Ball b = world.newBall(Color.WHITE, 4);
+			b.moveTo(640 * random.nextDouble(), 480 * random.nextDouble());
+			b.setSpeed(10 * random.nextDouble() - 5, 10 * random.nextDouble() - 5);
+			b.setAcceleration(0, 0.098);
+			b.setBounceFactor(1, 0.8);
+			b.setLowerLimitX(0);
+			b.setUpperLimitX(640);
+			b.setUpperLimitY(480);
+		}
+		return world;
+	}
+
+	@Test
+	void testAddKeepsState() {
+		Ball b = new Ball(Color.BISQUE, 12);
+		b.moveTo(3, 4);
+		b.setSpeed(5, 6);
+		b.setAcceleration(0, 1);
+		b.setUpperLimitY(100);
+		b.move();
+
+		BallWorld world = new BallWorld();
+		world.newBall(Color.WHITE, 1);
+		world.add(b);
+		assertSame(world, b.getWorld());
+		assertSame(b, world.get(1));
+		assertEquals(8, b.getX());
+		assertEquals(10, b.getY());
+		assertEquals(5, b.getDeltaX());
+		assertEquals(7, b.getDeltaY());
+		assertEquals(12, b.getRadius());
+		assertEquals(1, b.getSteps());
+		assertEquals(Color.BISQUE, b.getColor());
+	}
+
+	@Test
+	void testRemoveKeepsHandlesValid() {
+		BallWorld world = new BallWorld();
+		Ball[] balls = new Ball[10];
+		for (int i = 0; i < balls.length; i++) {
+			balls[i] = world.newBall(Color.WHITE, i);
+		}
+		assertTrue(world.remove(balls[3]));
+		assertFalse(world.remove(balls[3]));
+		assertEquals(9, world.size());
+		assertEquals(3, balls[3].getRadius());
+		for (int i = 0; i < balls.length; i++) {
+			assertEquals(i, balls[i].getRadius());
+			if (i != 3)
+				assertSame(balls[i], world.get(balls[i].getSlot()));
+		}
+	}
+
+	/**
+	 * Checks that balls removed during a step keep their slots until the end
+	 * of the step, and that all remaining handles are valid afterwards.
+	 */
+	@Test
+	void testRemoveDuringStep() {
+		BallWorld world = new BallWorld();
+		Ball[] balls = new Ball[100];
+		for (int i = 0; i < balls.length; i++) {
+			balls[i] = world.newBall(Color.WHITE, i);
+		}
+		world.beginStep();
+		for (int i = 0; i < balls.length; i += 3) {
+			world.recycle(world.get(i));
+		}
+		world.newBall(Color.RED, 1000);
+		assertEquals(101, world.size());
+		assertEquals(67, world.getLiveCount());
+		for (int i = 1; i < balls.length; i++) {
+			if (i % 3 != 0)
+				assertEquals(i, world.getRadius(i));
+		}
+		assertEquals(1000, world.getRadius(100));
+		world.endStep();
+
+		assertEquals(67, world.size());
+		assertEquals(67, world.getLiveCount());
+		double radiusSum = 1000;
+		for (int i = 0; i < balls.length; i++) {
+			if (i % 3 != 0) {
+				assertSame(balls[i], world.get(balls[i].getSlot()));
+				assertEquals(i, balls[i].getRadius());
+				radiusSum += i;
+			}
+		}
+		for (int i = 0; i < world.size(); i++) {
+			radiusSum -= world.getRadius(i);
+		}
+		assertEquals(0, radiusSum);
+	}
+
+	@Test
+	void testHaltAndAccelerate() {
+		BallWorld world = new BallWorld();
+		Ball b = world.newBall(Color.WHITE, 1);
+		b.setAcceleration(1, 1);
+		b.accelerate(2, 3);
+		assertEquals(2, b.getDeltaX());
+		assertEquals(3, b.getDeltaY());
+		b.halt();
+		b.move();
+		assertEquals(0, b.getX());
+		assertEquals(0, b.getY());
+		assertEquals(0, b.getDeltaX());
+		assertEquals(0, b.getDeltaY());
+	}
+
+	@Test
+	void testPaletteIsShared() {
+		BallWorld world = new BallWorld();
+		world.newBall(Color.RED, 1);
+		world.newBall(Color.BLUE, 1);
+		world.newBall(Color.RED, 1);
+		assertEquals(2, world.getPaletteSize());
+		assertEquals(world.getColorIndex(0), world.getColorIndex(2));
+		assertEquals(Color.BLUE, world.getPaletteColor(world.getColorIndex(1)));
+	}
+
+	@Test
+	void testIdsFollowBalls() {
+		BallWorld world = new BallWorld();
+		Ball[] balls = new Ball[10];
+		for (int i = 0; i < balls.length; i++) {
+			balls[i] = world.newBall(Color.WHITE, i);
+			assertEquals(i, world.getId(i));
+		}
+		world.recycle(balls[2]);
+		// the last ball moved into slot 2 and kept its id
+		assertEquals(9, world.getId(2));
+		assertEquals(9, world.getRadius(2));
+		// ids are not reused
+		world.newBall(Color.WHITE, 1);
+		assertEquals(10, world.getId(world.size() - 1));
+	}
+
+	/**
+	 * Creates a ball falling onto a floor at y = 100 that loses half its speed
+	 * in every bounce
+	 */
+	private static Ball fallingBall(BallWorld world, double x) {
+		Ball b = world.newBall(Color.WHITE, 4);
+		b.moveTo(x, 0);
+		b.setAcceleration(0, 0.098);
+		b.setUpperLimitY(100);
+		b.setBounceFactor(1, 0.5);
+		return b;
+	}
+
+	/**
+	 * Checks that a ball resting on the floor falls asleep, then stays where
+	 * it is while still counting steps
+	 */
+	@Test
+	void testRestingBallFallsAsleep() {
+		BallWorld world = new BallWorld();
+		world.setSleepEnabled(true);
+		Ball b = fallingBall(world, 10);
+		// a ball drifting slowly does not stay in one place, so it stays awake
+		Ball drifting = world.newBall(Color.WHITE, 4);
+		drifting.setSpeed(0.1, 0);
+		for (int i = 0; i < 500 && !world.isAsleep(0); i++) {
+			world.move();
+		}
+		assertTrue(world.isAsleep(0));
+		assertEquals(100, b.getY(), 1);
+		assertEquals(0, b.getDeltaY());
+
+		double y = b.getY();
+		int steps = b.getSteps();
+		for (int i = 0; i < 100; i++) {
+			world.move();
+		}
+		assertEquals(y, b.getY());
+		assertEquals(steps + 100, b.getSteps());
+		assertFalse(world.isAsleep(1));
+		assertEquals(1, world.getSleepingCount());
+	}
+
+	/**
+	 * Checks that setting the speed, position or acceleration wakes a ball
+	 */
+	@Test
+	void testWake() {
+		BallWorld world = new BallWorld();
+		world.setSleepEnabled(true);
+		world.setSleepThresholds(5, 0.25, 0.25);
+		Ball b = world.newBall(Color.WHITE, 4);
+		for (int i = 0; i < 5; i++) {
+			world.move();
+		}
+		assertTrue(world.isAsleep(0));
+		b.setSpeed(0, -5);
+		assertFalse(world.isAsleep(0));
+		world.move();
+		assertEquals(-5, b.getY());
+
+		b.halt();
+		for (int i = 0; i < 5; i++) {
+			world.move();
+		}
+		assertTrue(world.isAsleep(0));
+		b.moveTo(3, 3);
+		assertFalse(world.isAsleep(0));
+		for (int i = 0; i < 5; i++) {
+			world.move();
+		}
+		b.setAcceleration(1, 0);
+		world.move();
+		world.move();
+		assertEquals(4, b.getX());
+
+		world.setSleepEnabled(false);
+		assertEquals(0, world.getSleepingCount());
+	}
+
+	/**
+	 * Checks that sleeping balls in between do not change how the awake balls
+	 * move, also in parallel
+	 */
+	@Test
+	void testSleepingBallsAreSkipped() {
+		BallWorld world = new BallWorld();
+		BallWorld reference = new BallWorld();
+		world.setSleepEnabled(true);
+		for (int i = 0; i < 20_000; i++) {
+			Ball b = fallingBall(world, i);
+			Ball r = fallingBall(reference, i);
+			// every third ball starts resting
+			if (i % 3 == 0) {
+				b.moveTo(i, 100);
+				r.moveTo(i, 100);
+				r.halt();
+				b.halt();
+			}
+		}
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (int step = 0; step < 40; step++) {
+				world.move(pool, 4);
+				reference.move();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		for (int i = 0; i < world.size(); i++) {
+			assertEquals(i % 3 == 0, world.isAsleep(i), "slot " + i);
+			assertEquals(reference.getSteps(i), world.getSteps(i));
+			if (i % 3 == 0)
+				assertEquals(reference.getY(i), world.getY(i), 0.1);
+			else
+				assertEquals(reference.getY(i), world.getY(i));
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import javafx.scene.paint.Color;
+
+class BroadphaseTest {
+	private Random random = new Random();
+
+	private static Set<Long> bruteForce(BallWorld world) {
+		Set<Long> pairs = new HashSet<>();
+		for (int i = 0; i < world.size(); i++) {
+			for (int j = i + 1; j < world.size(); j++) {
+				double reach = world.getRadius(i) + world.getRadius(j);
+				if (Math.abs(world.getX(i) - world.getX(j)) <= reach
+						&& Math.abs(world.getY(i) - world.getY(j)) <= reach)
+					pairs.add((long) i << 32 | j);
+			}
+		}
+		return pairs;
+	}
+
+	private static Set<Long> findPairs(Broadphase broadphase, BallWorld world) {
+		Set<Long> pairs = new HashSet<>();
+		broadphase.findPairs(world, (a, b) -> {
+			assertTrue(a < b);
+			assertTrue(pairs.add((long) a << 32 | b), "pair found twice");
+		});
+		return pairs;
+	}
+
+	private void addBalls(BallWorld world, int n) {
+		for (int i = 0; i < n; i++) {
+			// the sizes of the demo, from new balls to the smallest fragments
+			Ball b = world.newBall(Color.WHITE, 32 >> random.nextInt(4));
+			b.moveTo(1000 * random.nextDouble(), 1000 * random.nextDouble());
+			b.setSpeed(8 * random.nextDouble() - 4, 8 * random.nextDouble() - 4);
+		}
+	}
+
+	/**
+	 * Checks every broadphase against brute force while balls move, disappear
+	 * and are added, so that state kept between steps is tested too
+	 */
+	@Test
+	void testMatchesBruteForce() {
+		for (String name : new String[] { "grid", "sap", "tree" }) {
+			Broadphase broadphase = Broadphase.forName(name);
+			BallWorld world = new BallWorld();
+			addBalls(world, 1000);
+			for (int step = 0; step < 30; step++) {
+				assertEquals(bruteForce(world), findPairs(broadphase, world), name);
+				world.move();
+				for (int k = 0; k < 20 && world.size() > 0; k++) {
+					world.recycle(world.get(random.nextInt(world.size())));
+				}
+				addBalls(world, random.nextInt(40));
+			}
+			// all balls gone, and back again
+			while (world.size() > 0) {
+				world.recycle(world.get(world.size() - 1));
+			}
+			assertEquals(0, findPairs(broadphase, world).size());
+			addBalls(world, 500);
+			assertEquals(bruteForce(world), findPairs(broadphase, world), name);
+		}
+	}
+
+	@Test
+	void testTreeStaysBalanced() {
+		DynamicAabbTree tree = new DynamicAabbTree();
+		BallWorld world = new BallWorld();
+		// balls in a row is the worst case for a tree without rotations
+		for (int i = 0; i < 4096; i++) {
+			world.newBall(Color.WHITE, 4).moveTo(10 * i, 0);
+		}
+		tree.findPairs(world, (a, b) -> {
+		});
+		assertTrue(tree.getHeight() < 2 * 12, "height " + tree.getHeight());
+	}
+
+	@Test
+	void testForName() {
+		assertTrue(Broadphase.forName("grid") instanceof UniformGrid);
+		assertTrue(Broadphase.forName("sap") instanceof SweepAndPrune);
+		assertTrue(Broadphase.forName("tree") instanceof DynamicAabbTree);
+		assertThrows(IllegalArgumentException.class, () -> Broadphase.forName("octree"));
+	}
+}
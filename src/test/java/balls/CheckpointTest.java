@@ -0,0 +1,140 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javafx.scene.paint.Color;
+
+class CheckpointTest {
+
+	@TempDir
+	Path directory;
+
+	private static void assertSameWorld(BallWorld expected, BallWorld actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.getId(i), actual.getId(i));
+			assertEquals(expected.getX(i), actual.getX(i));
+			assertEquals(expected.getY(i), actual.getY(i));
+			assertEquals(expected.getSpeedX(i), actual.getSpeedX(i));
+			assertEquals(expected.getSpeedY(i), actual.getSpeedY(i));
+			assertEquals(expected.getAccelerationX(i), actual.getAccelerationX(i));
+			assertEquals(expected.getAccelerationY(i), actual.getAccelerationY(i));
+			assertEquals(expected.getLowerLimitX(i), actual.getLowerLimitX(i));
+			assertEquals(expected.getUpperLimitX(i), actual.getUpperLimitX(i));
+			assertEquals(expected.getLowerLimitY(i), actual.getLowerLimitY(i));
+			assertEquals(expected.getUpperLimitY(i), actual.getUpperLimitY(i));
+			assertEquals(expected.getBounceFactorX(i), actual.getBounceFactorX(i));
+			assertEquals(expected.getBounceFactorY(i), actual.getBounceFactorY(i));
+			assertEquals(expected.getRadius(i), actual.getRadius(i));
+			assertEquals(expected.getSteps(i), actual.getSteps(i));
+			assertEquals(expected.getColorIndex(i), actual.getColorIndex(i));
+			assertSame(actual, actual.get(i).getWorld());
+			assertEquals(i, actual.get(i).getSlot());
+		}
+	}
+
+	/**
+	 * Checks that a restored simulation goes on exactly like the one that was
+	 * saved, random choices included
+	 */
+	@Test
+	void testRestoredSimulationContinuesTheSame() throws IOException {
+		Path file = directory.resolve("world.checkpoint");
+		BallSimulation original = new BallSimulation(640, 480, new RandomSource(1));
+		original.setSpawnInterval(5);
+		original.setMaxNumberOfBalls(3000);
+		original.setup();
+		for (int i = 0; i < 500; i++) {
+			original.step();
+		}
+		Checkpoint.save(original, file);
+
+		BallSimulation restored = new BallSimulation(100, 100, new RandomSource(2));
+		restored.setup();
+		Checkpoint.restore(restored, file);
+		assertSameWorld(original.getWorld(), restored.getWorld());
+		assertEquals(500, restored.getStepCount());
+		assertEquals(5, restored.getSpawnInterval());
+		assertEquals(3000, restored.getMaxNumberOfBalls());
+		assertEquals(480, restored.getHeight());
+		assertEquals(original.getBallsCreated(), restored.getBallsCreated());
+
+		for (int i = 0; i < 500; i++) {
+			original.step();
+			restored.step();
+		}
+		assertSameWorld(original.getWorld(), restored.getWorld());
+		assertEquals(original.getBallsExploded(), restored.getBallsExploded());
+	}
+
+	/**
+	 * Checks limits, bounce factors and the ids of new balls
+	 */
+	@Test
+	void testEveryMotionFieldIsSaved() throws IOException {
+		Path file = directory.resolve("limits.checkpoint");
+		BallSimulation original = new BallSimulation(640, 480, new RandomSource(3));
+		BallWorld world = original.getWorld();
+		for (int i = 0; i < 100; i++) {
+			Ball b = world.newBall(original.getColors()[i % 7], 1 + i);
+			b.moveTo(i, 2 * i);
+			b.setSpeed(0.5 * i, -i);
+			b.setAcceleration(0.01 * i, 0.1);
+			b.setLowerLimitX(-i);
+			b.setUpperLimitX(1000 + i);
+			b.setLowerLimitY(-2 * i);
+			b.setBounceFactor(0.9, 0.01 * i);
+			world.setSteps(i, i % 200);
+		}
+		world.recycle(world.get(17));
+		Checkpoint.save(original, file);
+
+		BallSimulation restored = new BallSimulation(640, 480, new RandomSource(4));
+		Checkpoint.restore(restored, file);
+		assertSameWorld(world, restored.getWorld());
+		// new balls get the same ids
+		world.newBall(Color.RED, 1);
+		restored.getWorld().newBall(Color.RED, 1);
+		assertSameWorld(world, restored.getWorld());
+	}
+
+	/**
+	 * Saves and restores a million balls
+	 */
+	@Test
+	void testLargeWorld() throws IOException {
+		Path file = directory.resolve("large.checkpoint");
+		BallSimulation original = new BallSimulation(640, 480, new RandomSource(5));
+		BallWorld world = original.getWorld();
+		RandomSource random = new RandomSource(6);
+		for (int i = 0; i < 1_000_000; i++) {
+			Ball b = world.newBall(original.getColors()[random.nextInt(64)], i % 8 == 0 ? 8 : 4);
+			b.moveTo(640 * random.nextDouble(), 400 * random.nextDouble());
+			b.setSpeed(4 * random.nextDouble() - 2, -8 * random.nextDouble());
+			b.setAcceleration(0, 0.098);
+			b.setUpperLimitY(480 - b.getRadius());
+			world.setSteps(i, random.nextInt(200));
+		}
+		Checkpoint.save(original, file);
+		// constant columns like the limits are stored as one value
+		assertTrue(Files.size(file) < 70L * 1_000_000, Files.size(file) + " bytes");
+
+		BallSimulation restored = new BallSimulation(640, 480, new RandomSource(7));
+		Checkpoint.restore(restored, file);
+		assertSameWorld(world, restored.getWorld());
+	}
+
+	@Test
+	void testNotACheckpoint() throws IOException {
+		Path file = directory.resolve("other");
+		Files.write(file, new byte[100]);
+		assertThrows(IOException.class, () -> Checkpoint.restore(new BallSimulation(640, 480), file));
+	}
+}
@@ -0,0 +1,159 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import javafx.scene.paint.Color;
+
+class CollisionSystemTest {
+	private Random random = new Random();
+
+	private BallWorld randomWorld(int n, double size) {
+		BallWorld world = new BallWorld();
+		for (int i = 0; i < n; i++) {
+			Ball b = world.newBall(Color.WHITE, 1 + 31 * random.nextDouble() * random.nextDouble());
+			b.moveTo(size * random.nextDouble(), size * random.nextDouble());
+			b.setSpeed(random.nextDouble() - 0.5, random.nextDouble() - 0.5);
+		}
+		return world;
+	}
+
+	/**
+	 * Checks that the grid finds every overlapping pair exactly once, and
+	 * nothing else
+	 */
+	@Test
+	void testGridFindsAllPairs() {
+		for (double cellSize : new double[] { 0, 5, 200 }) {
+			BallWorld world = randomWorld(2000, 1000);
+			Set<Long> expected = new HashSet<>();
+			for (int i = 0; i < world.size(); i++) {
+				for (int j = i + 1; j < world.size(); j++) {
+					double reach = world.getRadius(i) + world.getRadius(j);
+					if (Math.abs(world.getX(i) - world.getX(j)) <= reach
+							&& Math.abs(world.getY(i) - world.getY(j)) <= reach)
+						expected.add((long) i << 32 | j);
+				}
+			}
+			Set<Long> found = new HashSet<>();
+			new UniformGrid(cellSize).findPairs(world, (a, b) -> {
+				assertTrue(a < b);
+				assertTrue(found.add((long) a << 32 | b), "pair found twice");
+			});
+			if (cellSize == 5)
+				assertTrue(expected.containsAll(found));
+			else
+				assertEquals(expected, found);
+		}
+	}
+
+	@Test
+	void testHeadOnCollisionSwapsSpeeds() {
+		BallWorld world = new BallWorld();
+		Ball a = world.newBall(Color.WHITE, 10);
+		Ball b = world.newBall(Color.WHITE, 10);
+		a.moveTo(0, 0);
+		b.moveTo(19, 0);
+		a.setSpeed(2, 0);
+		b.setSpeed(-1, 0);
+		assertEquals(1, new CollisionSystem().collide(world));
+		assertEquals(-1, a.getDeltaX(), 1e-12);
+		assertEquals(2, b.getDeltaX(), 1e-12);
+		assertEquals(20, b.getX() - a.getX(), 1e-12);
+	}
+
+	/**
+	 * Checks that sleeping balls do not collide with each other or with a ball
+	 * resting on them, and that a ball running into them wakes them
+	 */
+	@Test
+	void testSleepingBalls() {
+		BallWorld world = new BallWorld();
+		world.setSleepEnabled(true);
+		world.setSleepThresholds(2, 0.25, 0.25);
+		Ball a = world.newBall(Color.WHITE, 10);
+		Ball b = world.newBall(Color.WHITE, 10);
+		Ball c = world.newBall(Color.WHITE, 10);
+		a.moveTo(0, 0);
+		b.moveTo(19, 0);
+		c.moveTo(100, 0);
+		world.move();
+		world.move();
+		assertTrue(world.isAsleep(0) && world.isAsleep(1));
+		assertEquals(0, new CollisionSystem().collide(world));
+		assertEquals(19, b.getX());
+
+		c.moveTo(38.9, 0);
+		assertFalse(world.isAsleep(2));
+		assertEquals(0, new CollisionSystem().collide(world));
+		assertTrue(world.isAsleep(1));
+
+		c.setSpeed(-3, 0);
+		assertEquals(1, new CollisionSystem().collide(world));
+		assertFalse(world.isAsleep(1));
+		assertEquals(-3, b.getDeltaX(), 1e-12);
+	}
+
+	/**
+	 * Checks that momentum and energy are kept, with the radius as mass
+	 */
+	@Test
+	void testElastic() {
+		for (int i = 0; i < 1000; i++) {
+			BallWorld world = new BallWorld();
+			Ball a = world.newBall(Color.WHITE, 1 + 10 * random.nextDouble());
+			Ball b = world.newBall(Color.WHITE, 1 + 10 * random.nextDouble());
+			a.moveTo(0, 0);
+			b.moveTo(random.nextDouble(), random.nextDouble());
+			a.setSpeed(random.nextDouble() - 0.5, random.nextDouble() - 0.5);
+			b.setSpeed(random.nextDouble() - 0.5, random.nextDouble() - 0.5);
+			double ma = a.getRadius();
+			double mb = b.getRadius();
+			double px = ma * a.getDeltaX() + mb * b.getDeltaX();
+			double py = ma * a.getDeltaY() + mb * b.getDeltaY();
+			double energy = ma * (a.getDeltaX() * a.getDeltaX() + a.getDeltaY() * a.getDeltaY())
+					+ mb * (b.getDeltaX() * b.getDeltaX() + b.getDeltaY() * b.getDeltaY());
+
+			new CollisionSystem().collide(world);
+			assertEquals(px, ma * a.getDeltaX() + mb * b.getDeltaX(), 1e-9);
+			assertEquals(py, ma * a.getDeltaY() + mb * b.getDeltaY(), 1e-9);
+			assertEquals(energy, ma * (a.getDeltaX() * a.getDeltaX() + a.getDeltaY() * a.getDeltaY())
+					+ mb * (b.getDeltaX() * b.getDeltaX() + b.getDeltaY() * b.getDeltaY()), 1e-9);
+		}
+	}
+
+	@Test
+	void testSeparatedBallsStayWithinLimits() {
+		BallWorld world = randomWorld(5000, 300);
+		for (int i = 0; i < world.size(); i++) {
+			Ball b = world.get(i);
+			b.setLowerLimitX(0);
+			b.setUpperLimitX(300);
+			b.setLowerLimitY(0);
+			b.setUpperLimitY(300);
+		}
+		new CollisionSystem().collide(world);
+		for (int i = 0; i < world.size(); i++) {
+			assertTrue(world.getX(i) >= 0 && world.getX(i) <= 300);
+			assertTrue(world.getY(i) >= 0 && world.getY(i) <= 300);
+		}
+		// moving must not throw
+		world.move();
+	}
+
+	@Test
+	void testSimulationWithCollisions() {
+		BallSimulation simulation = new BallSimulation(640, 480, new RandomSource(7));
+		simulation.setCollisionsEnabled(true);
+		simulation.setup();
+		for (int i = 0; i < 2000; i++) {
+			simulation.step();
+		}
+		assertTrue(simulation.getWorld().size() > 0);
+	}
+}
@@ -0,0 +1,126 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import balls.DetailLevels.Level;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+
+class DetailLevelsTest {
+
+	@Test
+	void testLevels() {
+		DetailLevels levels = new DetailLevels(1, 4, 32);
+		assertEquals(Level.POINT, levels.levelOf(0.5));
+		assertEquals(Level.POINT, levels.levelOf(1));
+		assertEquals(Level.FLAT, levels.levelOf(4));
+		assertEquals(Level.SPRITE, levels.levelOf(4.5));
+		assertEquals(Level.GRADIENT, levels.levelOf(33));
+		assertEquals(Level.GRADIENT, DetailLevels.FULL.levelOf(0.1));
+		// a level with a radius below the level before is not used
+		assertEquals(Level.POINT, new DetailLevels(2, 1, 0).levelOf(1.5));
+		assertEquals(Level.GRADIENT, new DetailLevels(2, 1, 0).levelOf(2.5));
+	}
+
+	@Test
+	void testParse() {
+		DetailLevels levels = DetailLevels.parse("0.5, 3,16");
+		assertEquals(0.5, levels.getPointRadius());
+		assertEquals(3, levels.getFlatRadius());
+		assertEquals(16, levels.getSpriteRadius());
+		assertSame(DetailLevels.FULL, DetailLevels.parse("full"));
+		assertSame(DetailLevels.DEFAULT, DetailLevels.parse("default"));
+		assertThrows(IllegalArgumentException.class, () -> DetailLevels.parse("1,2"));
+		assertThrows(IllegalArgumentException.class, () -> new DetailLevels(-1, 2, 3));
+	}
+
+	/**
+	 * Checks that a flat ball lets through as much light of each color as the
+	 * gradient ball it stands in for
+	 */
+	@Test
+	void testFlatColorIsTheAverage() {
+		assertEquals(Color.RED, DetailLevels.flatColor(Color.RED));
+		Paint[] palette = BallSimulation.createColors();
+		PixelRenderer renderer = new PixelRenderer(palette);
+		for (int c = 0; c < palette.length; c += 9) {
+			renderer.begin(80, 80);
+			renderer.add(c, 40, 40, 30);
+			renderer.render();
+			double[] sums = new double[4];
+			for (int y = 0; y < 80; y++) {
+				for (int x = 0; x < 80; x++) {
+					int pixel = renderer.getPixel(x, y);
+					for (int k = 0; k < 4; k++) {
+						sums[k] += pixel >>> (24 - 8 * k) & 0xff;
+					}
+				}
+			}
+			Color flat = DetailLevels.flatColor(palette[c]);
+			double area = Math.PI * 30 * 30;
+			double a = flat.getOpacity();
+			double[] expected = { a, flat.getRed() * a, flat.getGreen() * a, flat.getBlue() * a };
+			for (int k = 0; k < 4; k++) {
+				assertEquals(expected[k] * 255, sums[k] / area, 2.5, "color " + c + " channel " + k);
+			}
+		}
+	}
+
+	/**
+	 * Draws a frame of fragments with and without the default levels and
+	 * checks that the images differ little, both over the whole frame and in
+	 * any small part of it
+	 */
+	@Test
+	void testVisualDifference() {
+		Paint[] palette = BallSimulation.createColors();
+		PixelRenderer full = new PixelRenderer(palette);
+		PixelRenderer reduced = new PixelRenderer(palette);
+		reduced.setDetailLevels(DetailLevels.DEFAULT);
+		full.begin(320, 240);
+		reduced.begin(320, 240);
+		RandomSource random = new RandomSource(4);
+		for (int i = 0; i < 2000; i++) {
+			int color = random.nextInt(palette.length);
+			double x = 320 * random.nextDouble();
+			double y = 240 * random.nextDouble();
+			double r = 0.5 + 12 * random.nextDouble() * random.nextDouble();
+			full.add(color, x, y, r);
+			reduced.add(color, x, y, r);
+		}
+		full.render();
+		reduced.render();
+
+		int block = 8;
+		double total = 0;
+		double worstBlock = 0;
+		for (int by = 0; by < 240; by += block) {
+			for (int bx = 0; bx < 320; bx += block) {
+				double blockSum = 0;
+				for (int y = by; y < by + block; y++) {
+					for (int x = bx; x < bx + block; x++) {
+						blockSum += difference(full.getPixel(x, y), reduced.getPixel(x, y));
+					}
+				}
+				total += blockSum;
+				worstBlock = Math.max(worstBlock, blockSum / (block * block));
+			}
+		}
+		// out of 255, about 1.5% over the frame and 12% in the worst part
+		assertTrue(total / (320 * 240) < 4, "mean difference " + total / (320 * 240));
+		assertTrue(worstBlock < 32, "worst difference " + worstBlock);
+	}
+
+	/**
+	 * @return mean absolute difference of the four channels of two pixels
+	 */
+	private static double difference(int a, int b) {
+		double sum = 0;
+		for (int shift = 0; shift < 32; shift += 8) {
+			sum += Math.abs((a >>> shift & 0xff) - (b >>> shift & 0xff));
+		}
+		return sum / 4;
+	}
+}
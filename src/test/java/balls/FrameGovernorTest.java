@@ -0,0 +1,90 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class FrameGovernorTest {
+	private static final long STEP = 1_000_000_000L / 60;
+
+	@Test
+	void testStepsKeepUpWithTime() {
+		FrameGovernor governor = new FrameGovernor(60, 60);
+		int steps = 0;
+		for (int frame = 0; frame < 600; frame++) {
+			int n = governor.stepsFor(STEP);
+			for (int i = 0; i < n; i++) {
+				governor.stepTaken(STEP / 10);
+			}
+			steps += n;
+		}
+		// one step was due at the start
+		assertEquals(601, steps);
+		assertEquals(0, governor.getDroppedNanos());
+	}
+
+	@Test
+	void testCatchesUpAfterAPause() {
+		FrameGovernor governor = new FrameGovernor(60, 60);
+		governor.stepTaken(STEP / 10);
+		assertEquals(6, governor.stepsFor(5 * STEP));
+		assertEquals(0, governor.getDroppedNanos());
+	}
+
+	/**
+	 * Checks that slow steps give one step per round and lets time go, instead
+	 * of asking for more and more steps
+	 */
+	@Test
+	void testNoSpiralOfDeath() {
+		FrameGovernor governor = new FrameGovernor(60, 60);
+		governor.stepTaken(3 * STEP);
+		long elapsed = STEP;
+		for (int round = 0; round < 100; round++) {
+			int n = governor.stepsFor(elapsed);
+			assertTrue(n <= 1, "round " + round + " took " + n + " steps");
+			for (int i = 0; i < n; i++) {
+				governor.stepTaken(3 * STEP);
+			}
+			elapsed = Math.max(1, n) * 3 * STEP;
+		}
+		assertTrue(governor.getDroppedNanos() > 0);
+	}
+
+	@Test
+	void testShedsAndRestoresLoad() {
+		BallSimulation simulation = new BallSimulation(640, 480, new RandomSource(1));
+		simulation.setMaxNumberOfBalls(1000);
+		FrameGovernor governor = new FrameGovernor(60, 60);
+		for (int i = 0; i < 300; i++) {
+			governor.stepTaken(STEP);
+			governor.apply(simulation);
+		}
+		assertTrue(simulation.getSpawnInterval() > 16);
+		assertTrue(simulation.getMaxNumberOfBalls() < 1000);
+		assertTrue(simulation.getMaxNumberOfBalls() >= 100);
+
+		for (int i = 0; i < 3000; i++) {
+			governor.stepTaken(STEP / 10);
+			governor.apply(simulation);
+		}
+		assertEquals(16, simulation.getSpawnInterval());
+		assertEquals(1000, simulation.getMaxNumberOfBalls());
+	}
+
+	@Test
+	void testSkipsFrames() {
+		FrameGovernor governor = new FrameGovernor(60, 60);
+		assertFalse(governor.shouldDraw(false));
+		assertTrue(governor.shouldDraw(true));
+		governor.drawTaken(STEP / 2);
+		assertTrue(governor.shouldDraw(true));
+		// a frame that takes three frame intervals
+		governor.drawTaken(3 * STEP + 1);
+		assertFalse(governor.shouldDraw(true));
+		assertFalse(governor.shouldDraw(true));
+		assertFalse(governor.shouldDraw(true));
+		assertTrue(governor.shouldDraw(true));
+		assertEquals(3, governor.getSkippedFrames());
+	}
+}
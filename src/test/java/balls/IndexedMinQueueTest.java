@@ -0,0 +1,71 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+class IndexedMinQueueTest {
+
+	/**
+	 * Checks random changes against a plain array of priorities
+	 */
+	@Test
+	void testRandomOperations() {
+		IndexedMinQueue queue = new IndexedMinQueue(1);
+		long[] priorities = new long[100];
+		java.util.Arrays.fill(priorities, -1);
+		SplittableRandom random = new SplittableRandom(4);
+		for (int n = 0; n < 20000; n++) {
+			int key = random.nextInt(priorities.length);
+			switch (random.nextInt(4)) {
+			case 0:
+			case 1:
+				long priority = random.nextInt(1000);
+				queue.set(key, priority);
+				priorities[key] = priority;
+				break;
+			case 2:
+				queue.remove(key);
+				priorities[key] = -1;
+				break;
+			default:
+				if (queue.isEmpty())
+					break;
+				long lowest = queue.peekPriority();
+				int polled = queue.poll();
+				assertEquals(lowest, priorities[polled]);
+				for (long p : priorities) {
+					assertTrue(p < 0 || p >= lowest);
+				}
+				priorities[polled] = -1;
+			}
+			int size = 0;
+			for (int k = 0; k < priorities.length; k++) {
+				assertEquals(priorities[k] >= 0, queue.contains(k));
+				if (priorities[k] >= 0) {
+					assertEquals(priorities[k], queue.getPriority(k));
+					size++;
+				}
+			}
+			assertEquals(size, queue.size());
+		}
+	}
+
+	@Test
+	void testRename() {
+		IndexedMinQueue queue = new IndexedMinQueue(4);
+		queue.set(3, 5);
+		queue.set(1, 7);
+		queue.rename(3, 10);
+		assertFalse(queue.contains(3));
+		assertEquals(5, queue.getPriority(10));
+		assertThrows(IllegalArgumentException.class, () -> queue.rename(10, 1));
+		assertEquals(10, queue.poll());
+		assertEquals(1, queue.poll());
+		assertTrue(queue.isEmpty());
+		assertEquals(Long.MAX_VALUE, queue.peekPriority());
+		assertThrows(IllegalStateException.class, queue::poll);
+	}
+}
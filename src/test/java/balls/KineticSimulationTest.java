@@ -0,0 +1,66 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+class KineticSimulationTest {
+
+	private static BallSimulation createSimulation() {
+		BallSimulation simulation = new BallSimulation(640, 480, new RandomSource(3));
+		simulation.setSpawnInterval(7);
+		simulation.setMaxNumberOfBalls(2000);
+		simulation.setup();
+		return simulation;
+	}
+
+	/**
+	 * Checks that jumping between events gives the same balls as stepping,
+	 * with positions that differ only by rounding
+	 */
+	@Test
+	void testSameAsStepping() {
+		BallSimulation stepped = createSimulation();
+		KineticSimulation kinetic = new KineticSimulation(createSimulation());
+		SplittableRandom random = new SplittableRandom(1);
+		while (kinetic.getStep() < 2000) {
+			int step = Math.min(2000, kinetic.getStep() + random.nextInt(60));
+			kinetic.advanceTo(step);
+			while (stepped.getStepCount() < step) {
+				stepped.step();
+			}
+
+			BallWorld expected = stepped.getWorld();
+			BallWorld actual = kinetic.getSimulation().getWorld();
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.getId(i), actual.getId(i));
+				assertEquals(expected.getX(i), kinetic.getX(i), 1e-6);
+				assertEquals(expected.getY(i), kinetic.getY(i), 1e-6);
+			}
+		}
+		assertEquals(stepped.getBallsCreated(), kinetic.getSimulation().getBallsCreated());
+		assertEquals(stepped.getBallsExploded(), kinetic.getSimulation().getBallsExploded());
+		assertTrue(kinetic.getEventCount() > 0);
+
+		kinetic.sync();
+		BallWorld expected = stepped.getWorld();
+		BallWorld actual = kinetic.getSimulation().getWorld();
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.getSteps(i), actual.getSteps(i));
+			assertEquals(expected.getX(i), actual.getX(i), 1e-6);
+			assertEquals(expected.getY(i), actual.getY(i), 1e-6);
+			assertEquals(expected.getSpeedX(i), actual.getSpeedX(i), 1e-6);
+			assertEquals(expected.getSpeedY(i), actual.getSpeedY(i), 1e-6);
+		}
+	}
+
+	@Test
+	void testCollisionsNotAllowed() {
+		BallSimulation simulation = createSimulation();
+		simulation.setCollisionsEnabled(true);
+		assertThrows(IllegalStateException.class, () -> new KineticSimulation(simulation));
+	}
+}
@@ -0,0 +1,76 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+	@Test
+	void testPercentilesAreClose() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		Random random = new Random(1);
+		long[] times = new long[10_000];
+		for (int i = 0; i < times.length; i++) {
+			times[i] = (long) (1_000_000 * Math.exp(2 * random.nextGaussian()));
+			histogram.record(times[i]);
+		}
+		Arrays.sort(times);
+		for (double p : new double[] { 1, 50, 90, 99, 99.9 }) {
+			long exact = times[(int) Math.ceil(p / 100 * times.length) - 1];
+			long estimate = histogram.getPercentile(p);
+			assertTrue(estimate >= exact, "p" + p);
+			assertTrue(estimate <= exact * 1.07, "p" + p + ": " + estimate + " vs " + exact);
+		}
+		assertEquals(times[times.length - 1], histogram.getMax());
+		assertEquals(times[times.length - 1], histogram.getPercentile(100));
+		assertEquals(times.length, histogram.getCount());
+	}
+
+	@Test
+	void testBuckets() {
+		long last = -1;
+		for (int bucket = 0; bucket < 400; bucket++) {
+			long highest = LatencyHistogram.highestIn(bucket);
+			assertTrue(highest > last);
+			assertEquals(bucket, LatencyHistogram.bucket(highest));
+			assertEquals(bucket, LatencyHistogram.bucket(last + 1));
+			last = highest;
+		}
+		assertEquals(LatencyHistogram.bucket(Long.MAX_VALUE), LatencyHistogram.bucket(Long.MAX_VALUE - 1));
+	}
+
+	@Test
+	void testSince() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 100; i++) {
+			histogram.record(1000);
+		}
+		LatencyHistogram earlier = histogram.copy();
+		for (int i = 0; i < 10; i++) {
+			histogram.record(50_000);
+		}
+		LatencyHistogram since = histogram.since(earlier);
+		assertEquals(10, since.getCount());
+		assertEquals(50_000, since.getMean());
+		assertTrue(since.getPercentile(50) >= 50_000 && since.getPercentile(50) < 53_000);
+		assertEquals(100, earlier.getCount());
+		assertEquals(1000, earlier.getMax());
+	}
+
+	@Test
+	void testReset() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(123);
+		histogram.record(-5);
+		assertEquals(0, histogram.getPercentile(0));
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(99));
+		assertThrows(IllegalArgumentException.class, () -> histogram.getPercentile(101));
+	}
+}
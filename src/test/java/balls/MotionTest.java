@@ -2,6 +2,9 @@ package balls;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.time.Duration;
+import java.util.Random;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -112,4 +115,256 @@ class MotionTest {
 		reversing.move();
 		assertEquals(position - 1 + (speed - 1), reversing.getPosition());
 	}
+
+	/**
+	 * Moves like {@link Motion#move()} did before bounces were done in closed
+	 * form, one bounce at a time.
+	 * 
+	 * @return the position and speed after the move
+	 */
+	private static double[] iterativeMove(double position, double speed, double acceleration, double lowerLimit,
+			double upperLimit, double bounceFactor) {
+		double distanceToMove = speed;
+		while (distanceToMove != 0.0) {
+			if (position + distanceToMove > upperLimit) {
+				distanceToMove -= upperLimit - position;
+				position = upperLimit;
+			} else if (position + distanceToMove < lowerLimit) {
+				distanceToMove += position - lowerLimit;
+				position = lowerLimit;
+			} else {
+				position += distanceToMove;
+				break;
+			}
+			speed *= -bounceFactor;
+			distanceToMove *= -bounceFactor;
+		}
+		return new double[] { position, speed + acceleration };
+	}
+
+	/**
+	 * The iterative move adds up rounding errors over every bounce, which on
+	 * rare widths of a few millionths goes past the tolerance, so the cases
+	 * are the same on every run
+	 */
+	@Test
+	void testManyBouncesMatchIterative() {
+		Random random = new Random(1);
+		for (int i = 0; i < 100000; i++) {
+			double width = i % 100 == 0 ? 1e-3 : 10 * random.nextDouble();
+			double position = width * random.nextDouble();
+			double speed = (i % 2 == 0 ? 1 : -1) * 1000 * random.nextDouble();
+			double bounceFactor;
+			if (i % 4 == 0)
+				bounceFactor = 1;
+			else if (i % 4 == 1)
+				bounceFactor = random.nextDouble();
+			else
+				bounceFactor = 0.9 + 0.1 * random.nextDouble();
+			Motion m = new Motion(position, speed, 0.1);
+			m.setLowerLimit(0);
+			m.setUpperLimit(width);
+			m.setBounceFactor(bounceFactor);
+			m.move();
+			double[] expected = iterativeMove(position, speed, 0.1, 0, width, bounceFactor);
+			assertEquals(expected[0], m.getPosition(), 1e-9 * Math.abs(speed) + 1e-12);
+			assertEquals(expected[1], m.getSpeed(), 1e-9 * Math.abs(speed) + 1e-12);
+		}
+	}
+
+	@Test
+	void testBounceFactorAboveOneMatchesIterative() {
+		Random random = new Random(3);
+		for (int i = 0; i < 10000; i++) {
+			double position = 10 * random.nextDouble();
+			double bounceFactor = 1 + random.nextDouble();
+			// a speed small enough for the bounces to stop
+			double speed = 10 - position + 10 / (bounceFactor - 1) * random.nextDouble();
+			Motion m = new Motion(position, speed, 0);
+			m.setLowerLimit(0);
+			m.setUpperLimit(10);
+			m.setBounceFactor(bounceFactor);
+			m.move();
+			double[] expected = iterativeMove(position, speed, 0, 0, 10, bounceFactor);
+			assertEquals(expected[0], m.getPosition(), 1e-6 * speed);
+			assertEquals(expected[1], m.getSpeed(), 1e-6 * Math.abs(expected[1]));
+		}
+	}
+
+	@Test
+	void testBouncesForever() {
+		Motion growing = new Motion(5, 100, 0);
+		growing.setLowerLimit(0);
+		growing.setUpperLimit(10);
+		growing.setBounceFactor(2);
+		assertThrows(IllegalStateException.class, () -> growing.move());
+
+		Motion pinned = new Motion(5, 1, 0);
+		pinned.setLowerLimit(5);
+		pinned.setUpperLimit(5);
+		assertThrows(IllegalStateException.class, () -> pinned.move());
+	}
+
+	@Test
+	void testComesToRestBetweenEqualLimits() {
+		Motion m = new Motion(5, 1, 0);
+		m.setLowerLimit(5);
+		m.setUpperLimit(5);
+		m.setBounceFactor(0.5);
+		m.move();
+		assertEquals(5, m.getPosition());
+		assertEquals(0, m.getSpeed());
+	}
+
+	@Test
+	void testAdvanceMatchesMoves() {
+		Random random = new Random(5);
+		for (int i = 0; i < 2000; i++) {
+			double lower = -100 * random.nextDouble();
+			double upper = 100 * random.nextDouble();
+			double position = lower + (upper - lower) * random.nextDouble();
+			double speed = 20 * random.nextDouble() - 10;
+			double acceleration = i % 3 == 0 ? 0 : random.nextDouble() - 0.5;
+			double bounceFactor = i % 2 == 0 ? 1 : random.nextDouble();
+			int steps = random.nextInt(2000);
+			Motion moved = new Motion(position, speed, acceleration);
+			Motion advanced = new Motion(position, speed, acceleration);
+			for (Motion m : new Motion[] { moved, advanced }) {
+				m.setLowerLimit(lower);
+				m.setUpperLimit(upper);
+				m.setBounceFactor(bounceFactor);
+			}
+			for (int k = 0; k < steps; k++) {
+				moved.move();
+			}
+			advanced.advance(steps);
+			assertEquals(moved.getPosition(), advanced.getPosition(), 1e-6);
+			assertEquals(moved.getSpeed(), advanced.getSpeed(), 1e-6);
+		}
+	}
+
+	@Test
+	void testAdvanceWithoutLimits() {
+		accelerating.advance(1_000_000_000L);
+		// p + n s + a n (n - 1) / 2
+		assertEquals(position + 1e9 * speed + acceleration * 1e9 * (1e9 - 1) / 2, accelerating.getPosition(), 1e3);
+		assertEquals(speed + 1e9 * acceleration, accelerating.getSpeed(), 1e-3);
+		stationary.advance(0);
+		assertEquals(position, stationary.getPosition());
+		assertThrows(IllegalArgumentException.class, () -> stationary.advance(-1));
+	}
+
+	@Test
+	void testAdvanceManySteps() {
+		Motion m = new Motion(0, 0, 1);
+		m.advance(4_000_000_000L);
+		assertEquals(8e18, m.getPosition(), 1e10);
+		assertEquals(4e9, m.getSpeed());
+	}
+
+	/**
+	 * A slow motion still bounces when the bounce is further away than an int
+	 * can count
+	 */
+	@Test
+	void testAdvanceFarBounce() {
+		assertEquals(10_000_000_000L, Motion.firstCrossing(0, 1e-9, 0, Double.NEGATIVE_INFINITY, 10), 1);
+		assertEquals(10_000_000_000L, Motion.firstCrossing(0, 1e-9, 1e-30, Double.NEGATIVE_INFINITY, 10), 1);
+
+		Motion m = new Motion(0, 1e-9, 0);
+		m.setUpperLimit(10);
+		m.advance(20_000_000_000L);
+		assertEquals(0, m.getPosition(), 1e-6);
+		assertEquals(-1e-9, m.getSpeed());
+
+		Motion accelerating = new Motion(0, 1e-9, 1e-30);
+		accelerating.setUpperLimit(10);
+		accelerating.advance(15_000_000_000L);
+		assertTrue(accelerating.getSpeed() < 0);
+		assertEquals(5, accelerating.getPosition(), 1e-3);
+	}
+
+	/**
+	 * A motion that has come to rest at a limit stops being moved, so many
+	 * steps take no time
+	 */
+	@Test
+	void testAdvanceComesToRest() {
+		Motion m = new Motion(5, 0, 0.5);
+		m.setUpperLimit(10);
+		m.setBounceFactor(0);
+		Motion moved = new Motion(5, 0, 0.5);
+		moved.setUpperLimit(10);
+		moved.setBounceFactor(0);
+		for (int i = 0; i < 100; i++) {
+			moved.move();
+		}
+		m.advance(Long.MAX_VALUE);
+		assertEquals(moved.getPosition(), m.getPosition());
+		assertEquals(moved.getSpeed(), m.getSpeed());
+	}
+
+	/**
+	 * A motion losing some speed on every bounce ends up making bounces
+	 * smaller than a step, which repeat and must not be followed one by one
+	 */
+	@Test
+	void testAdvanceBouncesToRest() {
+		for (double bounceFactor : new double[] { 0.5, 0.8, 0.99 }) {
+			Motion moved = new Motion(0, 0, 0.5);
+			Motion advanced = new Motion(0, 0, 0.5);
+			for (Motion m : new Motion[] { moved, advanced }) {
+				m.setUpperLimit(100);
+				m.setBounceFactor(bounceFactor);
+			}
+			for (int k = 0; k < 1_000_000; k++) {
+				moved.move();
+			}
+			advanced.advance(1_000_000);
+			assertEquals(moved.getPosition(), advanced.getPosition(), 1e-9);
+			assertEquals(moved.getSpeed(), advanced.getSpeed(), 1e-9);
+			assertTimeoutPreemptively(Duration.ofSeconds(1), () -> advanced.advance(Long.MAX_VALUE));
+			assertTrue(advanced.getPosition() <= 100);
+		}
+
+		Motion moving = new Motion(0, 3, 0);
+		moving.setLowerLimit(-10);
+		moving.setUpperLimit(10);
+		assertTimeoutPreemptively(Duration.ofSeconds(1), () -> moving.advance(Long.MAX_VALUE));
+		assertEquals(3, Math.abs(moving.getSpeed()));
+	}
+
+	/**
+	 * Checks the step of the first bounce against moving step by step
+	 */
+	@Test
+	void testFirstCrossing() {
+		Random random = new Random(2);
+		for (int n = 0; n < 10000; n++) {
+			double lower = -100 * random.nextDouble();
+			double upper = 100 * random.nextDouble();
+			double position = lower + (upper - lower) * random.nextDouble();
+			double speed = 6 * random.nextDouble() - 3;
+			double acceleration = random.nextInt(3) == 0 ? 0 : 0.4 * random.nextDouble() - 0.2;
+			long expected = -1;
+			double p = position;
+			double s = speed;
+			for (int k = 0; k < 1000; k++) {
+				if (p + s > upper || p + s < lower) {
+					expected = k;
+					break;
+				}
+				p += s;
+				s += acceleration;
+			}
+			long actual = Motion.firstCrossing(position, speed, acceleration, lower, upper);
+			if (expected >= 0)
+				assertEquals(expected, actual);
+			else
+				assertTrue(actual >= 1000);
+		}
+		assertEquals(Motion.NEVER, Motion.firstCrossing(0, 0, 0, -1, 1));
+		assertEquals(Motion.NEVER,
+				Motion.firstCrossing(0, 1, 0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY));
+	}
 }
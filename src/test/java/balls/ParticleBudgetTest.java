@@ -0,0 +1,141 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import javafx.scene.paint.Color;
+
+class ParticleBudgetTest {
+
+	/**
+	 * Checks that the cap is never passed and the limit on balls made in a
+	 * step is kept, when many balls explode at once
+	 */
+	@Test
+	void testCapAndEmissionLimit() {
+		BallSimulation simulation = new BallSimulation(640, 480, new RandomSource(8));
+		simulation.setSpawnInterval(1);
+		simulation.setLifetimes(20);
+		ParticleBudget budget = new ParticleBudget(500, 100, ParticleBudget.Eviction.NONE);
+		simulation.setBudget(budget);
+		simulation.setup();
+		long created = simulation.getBallsCreated();
+		for (int i = 0; i < 1000; i++) {
+			simulation.step();
+			assertTrue(simulation.getWorld().size() <= 500);
+			assertTrue(simulation.getBallsCreated() - created <= 100);
+			created = simulation.getBallsCreated();
+		}
+		assertTrue(budget.getRejected() > 0);
+		assertEquals(0, budget.getEvicted());
+	}
+
+	/**
+	 * Checks that with eviction new balls keep coming when the world is full
+	 */
+	@Test
+	void testEvictionMakesRoom() {
+		BallSimulation simulation = new BallSimulation(640, 480, new RandomSource(9));
+		simulation.setSpawnInterval(1);
+		simulation.setLifetimes(20);
+		ParticleBudget budget = new ParticleBudget(300, 1000, ParticleBudget.Eviction.OLDEST);
+		simulation.setBudget(budget);
+		simulation.setup();
+		for (int i = 0; i < 1000; i++) {
+			simulation.step();
+			assertTrue(simulation.getWorld().size() <= 300);
+		}
+		assertTrue(budget.getEvicted() > 0);
+		// the world is full, and the balls in it are the newest ones
+		assertEquals(300, simulation.getWorld().size());
+	}
+
+	/**
+	 * Checks that a frame governor lowering the max number of balls still
+	 * limits a simulation with a budget
+	 */
+	@Test
+	void testGovernorLowersCap() {
+		BallSimulation simulation = new BallSimulation(640, 480, new RandomSource(10));
+		simulation.setLifetimes(20);
+		simulation.setMaxNumberOfBalls(1000);
+		ParticleBudget budget = new ParticleBudget(1000, 1000, ParticleBudget.Eviction.OLDEST);
+		simulation.setBudget(budget);
+		FrameGovernor governor = new FrameGovernor(60, 60);
+		for (int i = 0; i < 300; i++) {
+			governor.stepTaken(1_000_000_000L);
+			governor.apply(simulation);
+		}
+		int max = simulation.getMaxNumberOfBalls();
+		assertTrue(max < 1000);
+		simulation.setSpawnInterval(1);
+		simulation.setup();
+		for (int i = 0; i < 1000; i++) {
+			simulation.step();
+			assertTrue(simulation.getWorld().size() <= max);
+		}
+		assertEquals(max, simulation.getWorld().size());
+	}
+
+	private static BallWorld world() {
+		BallWorld world = new BallWorld();
+		// ids 0 to 5, radius 6 - id, the last two off screen
+		for (int i = 0; i < 6; i++) {
+			Ball b = world.newBall(Color.WHITE, 6 - i);
+			b.moveTo(i < 4 ? 100 : -100, 100);
+		}
+		return world;
+	}
+
+	private static boolean hasId(BallWorld world, int id) {
+		for (int slot = 0; slot < world.size(); slot++) {
+			if (world.getId(slot) == id)
+				return true;
+		}
+		return false;
+	}
+
+	@Test
+	void testEvictionPolicies() {
+		BallWorld world = world();
+		ParticleBudget oldest = new ParticleBudget(6, 10, ParticleBudget.Eviction.OLDEST);
+		assertEquals(2, oldest.admit(world, 2, world.size(), Integer.MAX_VALUE, world.get(0), 640, 480));
+		assertEquals(4, world.size());
+		assertTrue(hasId(world, 0));
+		assertFalse(hasId(world, 1));
+		assertFalse(hasId(world, 2));
+		assertEquals(2, oldest.getEvicted());
+
+		world = world();
+		ParticleBudget smallest = new ParticleBudget(6, 10, ParticleBudget.Eviction.SMALLEST);
+		assertEquals(1, smallest.admit(world, 1, world.size(), Integer.MAX_VALUE, null, 640, 480));
+		assertFalse(hasId(world, 5));
+		assertEquals(5, world.size());
+
+		world = world();
+		ParticleBudget offScreen = new ParticleBudget(6, 10, ParticleBudget.Eviction.OFF_SCREEN);
+		assertEquals(3, offScreen.admit(world, 3, world.size(), Integer.MAX_VALUE, null, 640, 480));
+		assertFalse(hasId(world, 4));
+		assertFalse(hasId(world, 5));
+		assertFalse(hasId(world, 0));
+		assertTrue(hasId(world, 1));
+
+		world = world();
+		ParticleBudget none = new ParticleBudget(7, 10, ParticleBudget.Eviction.NONE);
+		assertEquals(1, none.admit(world, 3, world.size(), Integer.MAX_VALUE, null, 640, 480));
+		assertEquals(2, none.getRejected());
+		assertEquals(6, world.size());
+	}
+
+	@Test
+	void testParse() {
+		ParticleBudget budget = ParticleBudget.parse("1000, 50, off_screen");
+		assertEquals(1000, budget.getCap());
+		assertEquals(50, budget.getEmissionLimit());
+		assertEquals(ParticleBudget.Eviction.OFF_SCREEN, budget.getEviction());
+		assertEquals(ParticleBudget.Eviction.SMALLEST, ParticleBudget.parse("1,1,smallest").getEviction());
+		assertThrows(IllegalArgumentException.class, () -> ParticleBudget.parse("1000,50"));
+		assertThrows(IllegalArgumentException.class, () -> new ParticleBudget(0, 1, ParticleBudget.Eviction.NONE));
+	}
+}
@@ -0,0 +1,114 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+
+class PixelRendererTest {
+
+	private static void assertColor(Color expected, int actual, int tolerance) {
+		double a = expected.getOpacity();
+		int[] channels = { (int) Math.round(a * 255), (int) Math.round(expected.getRed() * a * 255),
+				(int) Math.round(expected.getGreen() * a * 255), (int) Math.round(expected.getBlue() * a * 255) };
+		for (int c = 0; c < 4; c++) {
+			int value = actual >>> (24 - 8 * c) & 0xff;
+			assertTrue(Math.abs(channels[c] - value) <= tolerance,
+					String.format("expected %s but was %08x", expected, actual));
+		}
+	}
+
+	/**
+	 * Checks that a ball has the gradient of the palette: light at the
+	 * center of the gradient, the see-through color at the far side, and
+	 * nothing outside
+	 */
+	@Test
+	void testGradient() {
+		Paint[] palette = BallSimulation.createColors();
+		PixelRenderer renderer = new PixelRenderer(palette);
+		renderer.begin(100, 100);
+		renderer.add(3, 50, 50, 20);
+		renderer.render();
+
+		Color base = Color.RED.deriveColor(64 * 3.5 / palette.length - 32.0, 1.0, 1.0, .7);
+		Color light = base.deriveColor(0.0, .33, 3.0, 2.0);
+		// the gradient is centered at 30% of the box around the ball
+		assertColor(light, renderer.getPixel(42, 42), 8);
+		assertColor(base, renderer.getPixel(66, 58), 4);
+		assertEquals(0, renderer.getPixel(71, 50));
+		assertEquals(0, renderer.getPixel(0, 0));
+		// edge pixels are partly covered
+		int edge = renderer.getPixel(69, 49) >>> 24;
+		assertTrue(edge > 0 && edge < 178, "alpha " + edge);
+	}
+
+	/**
+	 * Checks that balls in front are blended over balls behind
+	 */
+	@Test
+	void testBlending() {
+		PixelRenderer renderer = new PixelRenderer(new Paint[] { Color.BLUE, Color.color(1, 0, 0, 0.5) });
+		renderer.begin(20, 20);
+		renderer.add(0, 10, 10, 8);
+		renderer.add(1, 10, 10, 4);
+		renderer.render();
+		assertColor(Color.color(0.5, 0, 0.5), renderer.getPixel(10, 10), 1);
+		assertColor(Color.BLUE, renderer.getPixel(10, 16), 0);
+	}
+
+	/**
+	 * Checks that the image is the same however it is split into tiles and
+	 * threads
+	 */
+	@Test
+	void testTilesDoNotShow() {
+		Paint[] palette = BallSimulation.createColors();
+		PixelRenderer whole = new PixelRenderer(palette, 1000);
+		PixelRenderer tiled = new PixelRenderer(palette, 7);
+		tiled.setParallelism(4);
+		RandomSource random = new RandomSource(1);
+		whole.begin(300, 200);
+		tiled.begin(300, 200);
+		for (int i = 0; i < 500; i++) {
+			int color = random.nextInt(palette.length);
+			double x = 340 * random.nextDouble() - 20;
+			double y = 240 * random.nextDouble() - 20;
+			double r = 0.2 + 30 * random.nextDouble() * random.nextDouble();
+			whole.add(color, x, y, r);
+			tiled.add(color, x, y, r);
+		}
+		whole.render();
+		tiled.render();
+		tiled.shutdown();
+		for (int y = 0; y < 200; y++) {
+			for (int x = 0; x < 300; x++) {
+				assertEquals(whole.getPixel(x, y), tiled.getPixel(x, y), x + "," + y);
+			}
+		}
+	}
+
+	/**
+	 * Checks that a frame starts out empty, also after resizing
+	 */
+	@Test
+	void testBegin() {
+		PixelRenderer renderer = new PixelRenderer(new Paint[] { Color.WHITE });
+		renderer.begin(30, 30);
+		renderer.add(0, 15, 15, 10);
+		renderer.render();
+		assertNotEquals(0, renderer.getPixel(15, 15));
+		renderer.begin(30, 30);
+		renderer.render();
+		assertEquals(0, renderer.getPixel(15, 15));
+		renderer.begin(40, 10);
+		renderer.add(0, 35, 5, 2);
+		renderer.render();
+		assertEquals(40, renderer.getWidth());
+		assertNotEquals(0, renderer.getPixel(35, 5));
+		assertEquals(0, renderer.getPixel(15, 5));
+		assertThrows(IllegalArgumentException.class, () -> renderer.add(1, 0, 0, 1));
+	}
+}
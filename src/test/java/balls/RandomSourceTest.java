@@ -0,0 +1,69 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class RandomSourceTest {
+
+	@Test
+	void testSameSeedSameNumbers() {
+		RandomSource a = new RandomSource(17);
+		RandomSource b = new RandomSource(17);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(a.nextDouble(), b.nextDouble());
+			assertEquals(a.nextInt(64), b.nextInt(64));
+		}
+		assertNotEquals(new RandomSource(17).nextDouble(), new RandomSource(18).nextDouble());
+	}
+
+	@Test
+	void testStreams() {
+		RandomSource source = new RandomSource(5);
+		assertEquals(source.stream(3).nextLong(), source.stream(3).nextLong());
+		assertNotEquals(source.stream(3).nextLong(), source.stream(4).nextLong());
+		// the first thread to use a source gets stream 0
+		assertEquals(source.stream(0).nextLong(), source.current().nextLong());
+		assertSame(source.current(), source.current());
+	}
+
+	/**
+	 * Checks that threads get streams of their own, numbered in the order they
+	 * first use the source
+	 */
+	@Test
+	void testThreadsGetTheirOwnStreams() throws Exception {
+		RandomSource source = new RandomSource(9);
+		SplittableRandom mine = source.current();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<SplittableRandom> theirs = executor.submit(source::current);
+			assertNotSame(mine, theirs.get());
+			assertEquals(source.stream(1).nextLong(), executor.submit(() -> source.current().nextLong()).get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Checks that the numbers after a reseed can be repeated from the seed
+	 */
+	@Test
+	void testReseed() {
+		RandomSource source = new RandomSource(11);
+		source.nextDouble();
+		long seed = source.reseed();
+		assertEquals(seed, source.getSeed());
+		long expected = source.nextInt(1000) * 1000L + source.nextInt(1000);
+
+		RandomSource other = new RandomSource(12);
+		other.nextDouble();
+		other.setSeed(seed);
+		assertEquals(expected, other.nextInt(1000) * 1000L + other.nextInt(1000));
+	}
+}
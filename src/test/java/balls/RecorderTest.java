@@ -0,0 +1,151 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RecorderTest {
+
+	@TempDir
+	Path directory;
+
+	/**
+	 * The balls of a world sorted by id, as a reader should see them
+	 */
+	private static double[][] capture(BallWorld world) {
+		double[][] balls = new double[world.size()][];
+		for (int i = 0; i < world.size(); i++) {
+			balls[i] = new double[] { world.getId(i), world.getX(i), world.getY(i), world.getSpeedX(i),
+					world.getSpeedY(i), world.getRadius(i), world.getColorIndex(i) };
+		}
+		Arrays.sort(balls, (a, b) -> Double.compare(a[0], b[0]));
+		return balls;
+	}
+
+	private static void assertFrame(double[][] expected, RecordingReader reader) {
+		assertEquals(expected.length, reader.size());
+		double tolerance = 1.0 / RecordingFormat.SCALE;
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i][0], reader.getId(i));
+			assertEquals(expected[i][1], reader.getX(i), tolerance);
+			assertEquals(expected[i][2], reader.getY(i), tolerance);
+			assertEquals(expected[i][3], reader.getSpeedX(i), tolerance);
+			assertEquals(expected[i][4], reader.getSpeedY(i), tolerance);
+			assertEquals(expected[i][5], reader.getRadius(i), tolerance);
+			assertEquals(expected[i][6], reader.getColorIndex(i));
+		}
+	}
+
+	/**
+	 * Records a simulation with explosions and checks that every frame reads
+	 * back the same, both in order and by seeking
+	 */
+	@Test
+	void testRoundTrip() throws IOException {
+		Path file = directory.resolve("run.balls");
+		BallSimulation simulation = new BallSimulation(640, 480, new RandomSource(1));
+		simulation.setup();
+		List<double[][]> frames = new ArrayList<>();
+		try (Recorder recorder = new Recorder(file, 50)) {
+			for (int i = 0; i < 600; i++) {
+				simulation.step();
+				recorder.record(simulation.getWorld(), simulation.getStepCount());
+				frames.add(capture(simulation.getWorld()));
+			}
+			assertEquals(600, recorder.getFrameCount());
+		}
+
+		try (RecordingReader reader = new RecordingReader(file)) {
+			assertTrue(reader.isComplete());
+			assertEquals(600, reader.getFrameCount());
+			assertEquals(1, reader.getFirstStep());
+			assertEquals(600, reader.getLastStep());
+			assertEquals(12, reader.getKeyframeCount());
+			int added = 0;
+			for (int i = 0; i < 600; i++) {
+				assertTrue(reader.next());
+				assertEquals(i + 1, reader.getStep());
+				assertFrame(frames.get(i), reader);
+				added += reader.getAddedCount();
+			}
+			assertFalse(reader.next());
+			assertEquals(simulation.getBallsCreated(), added);
+
+			for (int step : new int[] { 333, 1, 50, 51, 600, 349, 350 }) {
+				reader.seek(step);
+				assertEquals(step, reader.getStep());
+				assertFrame(frames.get(step - 1), reader);
+			}
+		}
+	}
+
+	/**
+	 * Checks that a recording that was never closed can be read up to where
+	 * it stopped
+	 */
+	@Test
+	void testUnclosedRecording() throws IOException {
+		Path file = directory.resolve("crashed.balls");
+		BallSimulation simulation = new BallSimulation(640, 480, new RandomSource(2));
+		simulation.setup();
+		Recorder recorder = new Recorder(file, 10);
+		for (int i = 0; i < 35; i++) {
+			simulation.step();
+			recorder.record(simulation.getWorld(), simulation.getStepCount());
+		}
+		double[][] last = capture(simulation.getWorld());
+
+		try (RecordingReader reader = new RecordingReader(file)) {
+			assertFalse(reader.isComplete());
+			assertEquals(35, reader.getFrameCount());
+			assertEquals(4, reader.getKeyframeCount());
+			reader.seek(35);
+			assertFrame(last, reader);
+		} finally {
+			recorder.close();
+		}
+	}
+
+	/**
+	 * Checks that balls that just fly take a few bytes a step
+	 */
+	@Test
+	void testDeltaFramesAreSmall() throws IOException {
+		Path file = directory.resolve("large.balls");
+		BallWorld world = new BallWorld();
+		RandomSource random = new RandomSource(3);
+		int n = 100_000;
+		for (int i = 0; i < n; i++) {
+			Ball b = world.newBall(javafx.scene.paint.Color.RED, 4);
+			b.moveTo(640 * random.nextDouble(), 400 * random.nextDouble());
+			b.setSpeed(4 * random.nextDouble() - 2, -8 * random.nextDouble());
+			b.setAcceleration(0, 0.098);
+		}
+		try (Recorder recorder = new Recorder(file, 1000)) {
+			recorder.record(world, 0);
+			long keyframe = recorder.getBytesWritten();
+			for (int step = 1; step <= 10; step++) {
+				world.move();
+				recorder.record(world, step);
+			}
+			double perBall = (double) (recorder.getBytesWritten() - keyframe) / 10 / n;
+			assertTrue(perBall < 5, perBall + " bytes per ball per step");
+		}
+		assertTrue(Files.size(file) < 2_000_000 + 10 * 5 * n);
+	}
+
+	@Test
+	void testNotARecording() throws IOException {
+		Path file = directory.resolve("other");
+		Files.write(file, new byte[100]);
+		assertThrows(IOException.class, () -> new RecordingReader(file));
+	}
+}
@@ -0,0 +1,104 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReplayPlayerTest {
+	private static final long SECOND = 1_000_000_000L;
+
+	@TempDir
+	Path directory;
+	Path file;
+
+	/**
+	 * Records steps 1 to 1000
+	 */
+	@BeforeEach
+	void record() throws IOException {
+		file = directory.resolve("run.balls");
+		BallSimulation simulation = new BallSimulation(640, 480, new RandomSource(1));
+		simulation.setup();
+		try (Recorder recorder = new Recorder(file, 100)) {
+			for (int i = 0; i < 1000; i++) {
+				simulation.step();
+				recorder.record(simulation.getWorld(), simulation.getStepCount());
+			}
+		}
+	}
+
+	@Test
+	void testPlaysAtSpeed() throws IOException {
+		try (RecordingReader reader = new RecordingReader(file)) {
+			ReplayPlayer player = new ReplayPlayer(reader, 60);
+			assertEquals(1, player.getStep());
+			assertFalse(player.update(SECOND / 120));
+			assertTrue(player.update(SECOND / 60));
+			assertEquals(2, player.getStep());
+			player.update(SECOND);
+			assertEquals(62, player.getStep());
+
+			player.setSpeed(100);
+			player.update(SECOND / 10);
+			assertEquals(662, player.getStep());
+			player.update(SECOND);
+			assertEquals(1000, player.getStep());
+			assertTrue(player.isFinished());
+			assertFalse(player.update(SECOND));
+
+			assertThrows(IllegalArgumentException.class, () -> player.setSpeed(101));
+			assertThrows(IllegalArgumentException.class, () -> player.setSpeed(0.5));
+		}
+	}
+
+	@Test
+	void testPauseAndSeek() throws IOException {
+		try (RecordingReader reader = new RecordingReader(file)) {
+			ReplayPlayer player = new ReplayPlayer(reader, 60);
+			player.pause();
+			assertFalse(player.update(SECOND));
+			assertEquals(1, player.getStep());
+
+			player.seek(500);
+			assertEquals(500, player.getStep());
+			player.seek(5000);
+			assertEquals(1000, player.getStep());
+			player.seek(-5);
+			assertEquals(1, player.getStep());
+
+			player.seek(1000);
+			player.play();
+			assertEquals(1, player.getStep());
+			assertTrue(player.update(SECOND));
+			assertEquals(61, player.getStep());
+		}
+	}
+
+	/**
+	 * Checks that a frame reached by playing fast shows the same balls as the
+	 * same frame reached by reading every frame
+	 */
+	@Test
+	void testFastPlaybackShowsRecordedFrames() throws IOException {
+		try (RecordingReader reader = new RecordingReader(file);
+				RecordingReader expected = new RecordingReader(file)) {
+			ReplayPlayer player = new ReplayPlayer(reader, 60);
+			player.setSpeed(37);
+			while (player.update(SECOND / 60)) {
+				expected.seek(player.getStep());
+				assertEquals(expected.size(), player.getFrame().size());
+				for (int i = 0; i < expected.size(); i++) {
+					assertEquals(expected.getId(i), player.getFrame().getId(i));
+					assertEquals(expected.getX(i), player.getFrame().getX(i));
+					assertEquals(expected.getY(i), player.getFrame().getY(i));
+				}
+			}
+			assertTrue(player.isFinished());
+		}
+	}
+}
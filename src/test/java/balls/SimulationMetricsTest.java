@@ -0,0 +1,133 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+class SimulationMetricsTest {
+	private static final SimulationMetrics.Phase[] PHASES = SimulationMetrics.Phase.values();
+
+	@Test
+	void testStepsAreMeasured() {
+		BallSimulation simulation = new BallSimulation(640, 480, new RandomSource(1));
+		SimulationMetrics metrics = new SimulationMetrics();
+		simulation.setMetrics(metrics);
+		simulation.setCollisionsEnabled(true);
+		simulation.setup();
+		for (int i = 0; i < 500; i++) {
+			simulation.step();
+		}
+
+		assertEquals(500, metrics.getStepTimes().getCount());
+		assertEquals(500, metrics.getStepCount());
+		assertEquals(simulation.getWorld().getLiveCount(), metrics.getLiveBalls());
+		long phases = 0;
+		for (SimulationMetrics.Phase phase : SimulationMetrics.Phase.values()) {
+			assertTrue(metrics.getPhaseNanos(phase) > 0, phase.name());
+			phases += metrics.getPhaseNanos(phase);
+		}
+		assertTrue(phases <= metrics.getStepTimes().getMean() * 500 + 1);
+		assertTrue(metrics.getStepP50Millis() <= metrics.getStepP99Millis());
+		assertTrue(metrics.getStepP99Millis() <= metrics.getStepMaxMillis());
+		assertTrue(metrics.getAllocatedBytesPerStep() >= 0);
+	}
+
+	/**
+	 * Checks that measuring steps and frames allocates nothing when no
+	 * recording is running. The fewest bytes of a few rounds are taken, since
+	 * other tests can leave the runtime doing some work of its own.
+	 */
+	@Test
+	void testMeasuringDoesNotAllocate() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		SimulationMetrics metrics = new SimulationMetrics();
+		measure(metrics, 100000);
+
+		long allocated = Long.MAX_VALUE;
+		for (int round = 0; round < 5; round++) {
+			long before = threads.getCurrentThreadAllocatedBytes();
+			measure(metrics, 10000);
+			allocated = Math.min(allocated, threads.getCurrentThreadAllocatedBytes() - before);
+		}
+		assertEquals(0, allocated);
+		assertEquals(150000, metrics.getStepTimes().getCount());
+	}
+
+	private static void measure(SimulationMetrics metrics, int steps) {
+		for (int i = 0; i < steps; i++) {
+			metrics.beginStep();
+			for (SimulationMetrics.Phase phase : PHASES) {
+				metrics.endPhase(phase);
+			}
+			metrics.endStep(i, 10, i, i);
+			metrics.beginFrame();
+			metrics.endFrame(10);
+		}
+	}
+
+	@Test
+	void testBallsAreCounted() {
+		BallSimulation simulation = new BallSimulation(640, 480, new RandomSource(2));
+		SimulationMetrics metrics = new SimulationMetrics();
+		simulation.setMetrics(metrics);
+		simulation.setup();
+		for (int i = 0; i < 1000; i++) {
+			simulation.step();
+		}
+		assertTrue(metrics.getBallsExploded() > 0);
+		// every ball created is either alive or has exploded
+		assertEquals(metrics.getBallsCreated(), metrics.getLiveBalls() + metrics.getBallsExploded());
+		assertEquals(simulation.getBallsCreated(), metrics.getBallsCreated());
+	}
+
+	@Test
+	void testFramesAndReset() {
+		SimulationMetrics metrics = new SimulationMetrics();
+		for (int i = 0; i < 3; i++) {
+			metrics.beginFrame();
+			metrics.endFrame(10);
+		}
+		assertEquals(3, metrics.getFrameCount());
+		metrics.reset();
+		assertEquals(0, metrics.getFrameCount());
+		assertEquals(0, metrics.getDrawMillis());
+	}
+
+	@Test
+	void testRegister() throws Exception {
+		SimulationMetrics metrics = new SimulationMetrics();
+		metrics.register();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(SimulationMetrics.OBJECT_NAME);
+		try {
+			assertEquals(0L, server.getAttribute(name, "StepCount"));
+			new SimulationMetrics().register();
+			assertTrue(server.isRegistered(name));
+		} finally {
+			metrics.unregister();
+		}
+		assertFalse(server.isRegistered(name));
+	}
+
+	@Test
+	void testReporter() {
+		BallSimulation simulation = new BallSimulation(640, 480, new RandomSource(3));
+		SimulationMetrics metrics = new SimulationMetrics();
+		simulation.setMetrics(metrics);
+		simulation.setup();
+		MetricsReporter reporter = new MetricsReporter(metrics, System.out);
+		for (int i = 0; i < 100; i++) {
+			simulation.step();
+		}
+		String line = reporter.report();
+		assertTrue(line.startsWith(metrics.getLiveBalls() + " balls"), line);
+		assertTrue(line.contains("step p50"), line);
+		assertFalse(line.contains("frame"), line);
+	}
+}
@@ -0,0 +1,29 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class SimulationThreadTest {
+
+	@Test
+	void testRunsAndStops() throws InterruptedException {
+		BallSimulation simulation = new BallSimulation(640, 480, new RandomSource(1));
+		simulation.setup();
+		SimulationThread thread = new SimulationThread(simulation, 1000);
+		thread.start();
+		// the thread may already have taken a step and added a ball
+		assertTrue(thread.acquireSnapshot().size() >= 10);
+		long start = System.nanoTime();
+		while (thread.acquireSnapshot().getStepCount() < 100) {
+			assertTrue(System.nanoTime() - start < 10_000_000_000L, "Too slow");
+			Thread.sleep(1);
+		}
+		thread.execute(() -> simulation.setSize(100, 100));
+		thread.stop();
+		int steps = simulation.getStepCount();
+		assertEquals(100, simulation.getWidth());
+		Thread.sleep(20);
+		assertEquals(steps, simulation.getStepCount());
+	}
+}
@@ -0,0 +1,118 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import javafx.scene.paint.Color;
+
+class SnapshotBufferTest {
+
+	@Test
+	void testAcquireReturnsLatest() {
+		BallWorld world = new BallWorld();
+		world.newBall(Color.WHITE, 3).moveTo(1, 2);
+		SnapshotBuffer buffer = new SnapshotBuffer();
+		assertEquals(0, buffer.acquire().size());
+
+		buffer.publish(world, 1);
+		world.newBall(Color.WHITE, 4);
+		buffer.publish(world, 2);
+		Snapshot snapshot = buffer.acquire();
+		// the snapshot of step 1 was skipped
+		assertEquals(2, snapshot.getStepCount());
+		assertEquals(2, snapshot.size());
+		assertEquals(1, snapshot.getX(0));
+		assertEquals(2, snapshot.getY(0));
+		assertEquals(3, snapshot.getRadius(0));
+		assertEquals(world.getColorIndex(1), snapshot.getColorIndex(1));
+		// nothing new, so the same snapshot
+		assertSame(snapshot, buffer.acquire());
+		// changes to the world after publishing do not change the snapshot
+		world.get(0).moveTo(5, 5);
+		assertEquals(1, snapshot.getX(0));
+	}
+
+	/**
+	 * Checks that the previous position of a ball is found also when the
+	 * ball has moved to another slot
+	 */
+	@Test
+	void testPreviousPositions() {
+		BallWorld world = new BallWorld();
+		for (int i = 0; i < 10; i++) {
+			world.newBall(Color.WHITE, 1).moveTo(i, 0);
+		}
+		SnapshotBuffer buffer = new SnapshotBuffer();
+		buffer.publish(world, 0);
+		world.recycle(world.get(3));
+		for (int i = 0; i < world.size(); i++) {
+			world.get(i).moveTo(world.getX(i), 10);
+		}
+		world.newBall(Color.WHITE, 1).moveTo(20, 20);
+		buffer.publish(world, 1);
+
+		Snapshot snapshot = buffer.acquire();
+		assertEquals(10, snapshot.size());
+		// ball 9 is now in slot 3
+		assertEquals(9, snapshot.getX(3, 0));
+		assertEquals(0, snapshot.getY(3, 0));
+		assertEquals(5, snapshot.getY(3, 0.5));
+		assertEquals(10, snapshot.getY(3, 1));
+		// the new ball has no previous position
+		assertEquals(20, snapshot.getY(9, 0));
+	}
+
+	@Test
+	void testAlpha() throws InterruptedException {
+		SnapshotBuffer buffer = new SnapshotBuffer();
+		BallWorld world = new BallWorld();
+		buffer.publish(world, 0);
+		Thread.sleep(2);
+		buffer.publish(world, 1);
+		Snapshot snapshot = buffer.acquire();
+		long now = snapshot.getNanoTime();
+		assertEquals(0, snapshot.getAlpha(now - 1000));
+		assertEquals(0, snapshot.getAlpha(now));
+		assertEquals(1, snapshot.getAlpha(now + 1_000_000_000_000L));
+	}
+
+	/**
+	 * Publishes from one thread while reading from another, and checks that
+	 * every snapshot read is consistent and newer than the one before
+	 */
+	@Test
+	void testConcurrentPublish() throws InterruptedException {
+		SnapshotBuffer buffer = new SnapshotBuffer();
+		int steps = 20_000;
+		Thread writer = new Thread(() -> {
+			Random random = new Random();
+			BallWorld world = new BallWorld();
+			for (int step = 1; step <= steps; step++) {
+				// every ball of a step is at x = step
+				if (random.nextBoolean() || world.size() == 0)
+					world.newBall(Color.WHITE, 1);
+				else
+					world.recycle(world.get(random.nextInt(world.size())));
+				for (int i = 0; i < world.size(); i++) {
+					world.get(i).moveTo(step, step);
+				}
+				buffer.publish(world, step);
+			}
+		});
+		writer.start();
+		int last = 0;
+		while (last < steps) {
+			Snapshot snapshot = buffer.acquire();
+			int step = snapshot.getStepCount();
+			assertTrue(step >= last);
+			for (int i = 0; i < snapshot.size(); i++) {
+				assertEquals(step, snapshot.getX(i));
+			}
+			last = step;
+		}
+		writer.join();
+	}
+}
@@ -0,0 +1,83 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import javafx.scene.paint.Color;
+
+class TimingWheelTest {
+
+	/**
+	 * Checks that balls scheduled near and far ahead are due at their step and
+	 * not before
+	 */
+	@Test
+	void testBallsAreDueAtTheirStep() {
+		BallWorld world = new BallWorld();
+		for (int i = 0; i < 1000; i++) {
+			world.newBall(Color.WHITE, 1);
+		}
+		int start = 4000;
+		TimingWheel wheel = new TimingWheel(world, start);
+		Random random = new Random(6);
+		int[] expected = new int[world.size()];
+		for (int slot = 0; slot < world.size(); slot++) {
+			// steps up to more than three levels ahead
+			int ahead = slot % 4 == 0 ? random.nextInt(64) : random.nextInt(300_000);
+			expected[slot] = start + ahead;
+			wheel.schedule(slot, expected[slot]);
+		}
+		assertEquals(1000, wheel.size());
+		int found = 0;
+		for (int step = start; step <= start + 300_000; step++) {
+			assertEquals(step, wheel.getCurrentStep());
+			int due = wheel.advance();
+			for (int i = 0; i < due; i++) {
+				assertEquals(step, expected[wheel.getDue(i)]);
+				found++;
+				// schedule some again, for a step already past
+				if (i % 2 == 0 && step < start + 100) {
+					expected[wheel.getDue(i)] = step + 1;
+					wheel.schedule(wheel.getDue(i), step - 5);
+					found--;
+				}
+			}
+		}
+		assertEquals(1000, found);
+		assertEquals(0, wheel.size());
+	}
+
+	/**
+	 * Checks that removed balls are left out, also when their handle has
+	 * been reused for a new ball
+	 */
+	@Test
+	void testRemovedBallsAreLeftOut() {
+		BallWorld world = new BallWorld();
+		List<Ball> balls = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			balls.add(world.newBall(Color.WHITE, 1));
+		}
+		TimingWheel wheel = new TimingWheel(world, 0);
+		for (int slot = 0; slot < 10; slot++) {
+			wheel.schedule(slot, 100);
+		}
+		world.remove(balls.get(3));
+		world.recycle(balls.get(5));
+		Ball reused = world.newBall(Color.WHITE, 2);
+		assertSame(balls.get(5), reused);
+		while (wheel.getCurrentStep() < 100) {
+			assertEquals(0, wheel.advance());
+		}
+		assertEquals(8, wheel.advance());
+		for (int i = 0; i < 8; i++) {
+			assertEquals(1, world.getRadius(wheel.getDue(i)));
+		}
+		assertThrows(IndexOutOfBoundsException.class, () -> wheel.getDue(8));
+	}
+}
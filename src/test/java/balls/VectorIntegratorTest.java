@@ -0,0 +1,63 @@
+package balls;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class VectorIntegratorTest {
+	private static final int N = 1003;
+	private Random random = new Random();
+
+	/**
+	 * Moves the same motions with {@link Motion#move()} and with
+	 * {@link VectorIntegrator} and checks that the results are identical,
+	 * including motions that need more than one bounce.
+	 */
+	@Test
+	void testMatchesMotion() {
+		Motion[] motions = new Motion[N];
+		double[] position = new double[N];
+		double[] speed = new double[N];
+		double[] acceleration = new double[N];
+		double[] lowerLimit = new double[N];
+		double[] upperLimit = new double[N];
+		double[] bounceFactor = new double[N];
+		for (int i = 0; i < N; i++) {
+			position[i] = 10 * random.nextDouble();
+			speed[i] = (i % 10 == 0 ? 100 : 10) * (random.nextDouble() - 0.5);
+			acceleration[i] = random.nextDouble() - 0.5;
+			lowerLimit[i] = i % 7 == 0 ? Double.NEGATIVE_INFINITY : 0;
+			upperLimit[i] = i % 5 == 0 ? Double.POSITIVE_INFINITY : 10;
+			bounceFactor[i] = i % 3 == 0 ? 1 : random.nextDouble();
+			motions[i] = new Motion(position[i], speed[i], acceleration[i]);
+			motions[i].setBounceFactor(bounceFactor[i]);
+			if (i % 7 != 0)
+				motions[i].setLowerLimit(lowerLimit[i]);
+			if (i % 5 != 0)
+				motions[i].setUpperLimit(upperLimit[i]);
+		}
+
+		for (int step = 0; step < 100; step++) {
+			VectorIntegrator.move(position, speed, acceleration, lowerLimit, upperLimit, bounceFactor, 0, N);
+			for (int i = 0; i < N; i++) {
+				motions[i].move();
+				assertEquals(motions[i].getPosition(), position[i]);
+				assertEquals(motions[i].getSpeed(), speed[i]);
+			}
+		}
+	}
+
+	@Test
+	void testOutOfBoundsThrows() {
+		double[] position = new double[N];
+		double[] speed = new double[N];
+		double[] limit = new double[N];
+		double[] bounceFactor = new double[N];
+		position[N / 2] = 5;
+		limit[N / 2] = 1;
+		assertThrows(IllegalStateException.class, () -> VectorIntegrator.move(position, speed, new double[N],
+				new double[N], limit, bounceFactor, 0, N));
+	}
+}